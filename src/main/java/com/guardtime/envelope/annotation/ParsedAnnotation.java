@@ -21,6 +21,9 @@ package com.guardtime.envelope.annotation;
 
 import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStoreReference;
+import com.guardtime.envelope.util.DataHashException;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.HashAlgorithm;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -50,6 +53,15 @@ class ParsedAnnotation extends AbstractAnnotation {
         this.parsingStoreReference = reference;
     }
 
+    @Override
+    public DataHash getDataHash(HashAlgorithm algorithm) throws DataHashException {
+        DataHash dataHash = parsingStoreReference.getDataHash(algorithm);
+        if (dataHash != null) {
+            return dataHash;
+        }
+        return super.getDataHash(algorithm);
+    }
+
     @Override
     public InputStream getInputStream() throws IOException {
         return parsingStoreReference.getStoredContent();
@@ -21,6 +21,9 @@ package com.guardtime.envelope.document;
 
 import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStoreReference;
+import com.guardtime.envelope.util.DataHashException;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.HashAlgorithm;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -48,6 +51,15 @@ class ParsedDocument extends AbstractDocument implements UnknownDocument {
         this.parsingStoreReference = reference;
     }
 
+    @Override
+    public DataHash getDataHash(HashAlgorithm algorithm) throws DataHashException {
+        DataHash dataHash = parsingStoreReference.getDataHash(algorithm);
+        if (dataHash != null) {
+            return dataHash;
+        }
+        return super.getDataHash(algorithm);
+    }
+
     @Override
     public InputStream getInputStream() throws IOException {
         return parsingStoreReference.getStoredContent();
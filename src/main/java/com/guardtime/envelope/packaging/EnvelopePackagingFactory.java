@@ -37,7 +37,11 @@ import com.guardtime.envelope.manifest.tlv.TlvEnvelopeManifestFactory;
 import com.guardtime.envelope.packaging.exception.EnvelopeMergingException;
 import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
 import com.guardtime.envelope.packaging.exception.InvalidEnvelopeException;
+import com.guardtime.envelope.packaging.parsing.EnvelopePushParser;
+import com.guardtime.envelope.packaging.parsing.EnvelopeReadListener;
 import com.guardtime.envelope.packaging.parsing.EnvelopeReader;
+import com.guardtime.envelope.packaging.parsing.EnvelopeSummary;
+import com.guardtime.envelope.packaging.parsing.ParsingLimits;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
 import com.guardtime.envelope.signature.EnvelopeSignature;
 import com.guardtime.envelope.signature.SignatureException;
@@ -59,6 +63,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -68,6 +77,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import static com.guardtime.envelope.packaging.EntryNameProvider.META_INF;
 import static com.guardtime.envelope.packaging.Envelope.copySignatureContents;
@@ -125,6 +135,247 @@ public final class EnvelopePackagingFactory {
         }
     }
 
+    /**
+     * Parses an {@link InputStream} to produce an {@link Envelope} and provides each {@link SignatureContent} to listener
+     * as soon as all entries it consists of have been read.
+     *
+     * @param inputStream    an {@link InputStream} that contains a valid/parsable {@link Envelope}. This InputStream will be
+     *                       closed after reading.
+     * @param listener       the {@link EnvelopeReadListener} to receive {@link SignatureContent}s while reading.
+     *
+     * @return An instance of {@link Envelope} based on the data from {@link InputStream}. Does not verify
+     *         the envelope/signature(s).
+     *
+     * @throws InvalidEnvelopeException      when the {@link InputStream} does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException      when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     */
+    public Envelope read(InputStream inputStream, EnvelopeReadListener listener) throws InvalidEnvelopeException {
+        Util.notNull(inputStream, "Input stream");
+        Util.notNull(listener, "Envelope read listener");
+        try {
+            return envelopeReader.read(inputStream, listener);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse InputStream", e);
+        }
+    }
+
+    /**
+     * Parses a file to produce an {@link Envelope}. Content of documents is read from the file only when it is accessed,
+     * so the file is kept open until the {@link Envelope} and all its documents have been closed. Packaging formats that
+     * keep envelopes as directory trees read a directory instead.
+     *
+     * @param path           path to a file or directory that contains a valid/parsable {@link Envelope}. The content must
+     *                       not be modified while the {@link Envelope} is in use.
+     *
+     * @return An instance of {@link Envelope} based on the data from the file. Does not verify the envelope/signature(s).
+     *
+     * @throws InvalidEnvelopeException      when the file does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException      when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     */
+    public Envelope read(Path path) throws InvalidEnvelopeException {
+        Util.notNull(path, "Path");
+        try {
+            return envelopeReader.read(path);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse '" + path + "'", e);
+        }
+    }
+
+    /**
+     * Parses a {@link SeekableByteChannel} to produce an {@link Envelope}. Content of documents is read from the channel
+     * only when it is accessed.
+     *
+     * @param channel        a {@link SeekableByteChannel} that contains a valid/parsable {@link Envelope}. The channel
+     *                       will be closed once the {@link Envelope} and all its documents have been closed. The content
+     *                       of the channel must not be modified while the {@link Envelope} is in use.
+     *
+     * @return An instance of {@link Envelope} based on the data from the channel. Does not verify the envelope/signature(s).
+     *
+     * @throws InvalidEnvelopeException      when the channel does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException      when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     */
+    public Envelope read(SeekableByteChannel channel) throws InvalidEnvelopeException {
+        Util.notNull(channel, "Channel");
+        try {
+            return envelopeReader.read(channel);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse channel", e);
+        }
+    }
+
+    /**
+     * Parses a {@link SeekableByteChannel} to produce an {@link Envelope} and provides each {@link SignatureContent} to
+     * listener as soon as all entries it consists of have been read. See {@link #read(SeekableByteChannel)} for details on
+     * handling of the channel.
+     *
+     * @param channel        a {@link SeekableByteChannel} that contains a valid/parsable {@link Envelope}.
+     * @param listener       the {@link EnvelopeReadListener} to receive {@link SignatureContent}s while reading.
+     *
+     * @return An instance of {@link Envelope} based on the data from the channel. Does not verify the envelope/signature(s).
+     *
+     * @throws InvalidEnvelopeException      when the channel does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException      when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     */
+    public Envelope read(SeekableByteChannel channel, EnvelopeReadListener listener) throws InvalidEnvelopeException {
+        Util.notNull(channel, "Channel");
+        Util.notNull(listener, "Envelope read listener");
+        try {
+            return envelopeReader.read(channel, listener);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse channel", e);
+        }
+    }
+
+    /**
+     * Parses the remaining bytes of a {@link ByteBuffer} to produce an {@link Envelope}. Content of entries that are stored
+     * without compression is not copied but read from the buffer when it is accessed.
+     *
+     * @param buffer         a {@link ByteBuffer} that contains a valid/parsable {@link Envelope} between its position and
+     *                       limit. The content of the buffer must not be modified while the {@link Envelope} is in use.
+     *
+     * @return An instance of {@link Envelope} based on the data from the buffer. Does not verify the envelope/signature(s).
+     *
+     * @throws InvalidEnvelopeException      when the buffer does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException      when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     */
+    public Envelope read(ByteBuffer buffer) throws InvalidEnvelopeException {
+        Util.notNull(buffer, "Buffer");
+        try {
+            return envelopeReader.read(buffer);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse buffer", e);
+        }
+    }
+
+    /**
+     * Parses only the manifests and signatures from an {@link InputStream} to produce an {@link EnvelopeSummary}, e.g. for
+     * listing documents, annotation domains and signatures of an {@link Envelope}. Document and annotation data is skipped.
+     *
+     * @param inputStream    an {@link InputStream} that contains a valid/parsable {@link Envelope}. This InputStream will be
+     *                       closed after reading.
+     *
+     * @return An instance of {@link EnvelopeSummary} based on the data from {@link InputStream}. Does not verify
+     *         the envelope/signature(s).
+     *
+     * @throws InvalidEnvelopeException      when the {@link InputStream} does not contain a parsable {@link Envelope}.
+     */
+    public EnvelopeSummary inspect(InputStream inputStream) throws InvalidEnvelopeException {
+        Util.notNull(inputStream, "Input stream");
+        try {
+            return envelopeReader.inspect(inputStream);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse InputStream", e);
+        }
+    }
+
+    /**
+     * Parses only the manifests and signatures from a file to produce an {@link EnvelopeSummary}. Document and annotation
+     * data is not read from the file.
+     *
+     * @param path           path to a file that contains a valid/parsable {@link Envelope}.
+     *
+     * @return An instance of {@link EnvelopeSummary} based on the data from the file. Does not verify the
+     *         envelope/signature(s).
+     *
+     * @throws InvalidEnvelopeException      when the file does not contain a parsable {@link Envelope}.
+     */
+    public EnvelopeSummary inspect(Path path) throws InvalidEnvelopeException {
+        Util.notNull(path, "Path");
+        try {
+            return envelopeReader.inspect(Files.newByteChannel(path, StandardOpenOption.READ));
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse file '" + path + "'", e);
+        }
+    }
+
+    /**
+     * Provides content of a single document from a file containing an {@link Envelope} without reading or storing any other
+     * document of the {@link Envelope}.
+     *
+     * @param path           path to a file that contains a valid/parsable {@link Envelope}. The file is kept open until
+     *                       the returned {@link InputStream} is closed.
+     * @param documentName   name of the document as referenced in the documents manifest.
+     * @param verifyHash     if true, the content is verified against its hash in the documents manifest while it is read
+     *                       and an {@link IOException} is thrown at the end of the content on mismatch.
+     *
+     * @return An {@link InputStream} of the document content that must be closed by the caller.
+     *
+     * @throws InvalidEnvelopeException      when the file does not contain a parsable {@link Envelope} or the
+     *         {@link Envelope} does not contain the requested document.
+     */
+    public InputStream extractDocument(Path path, String documentName, boolean verifyHash) throws InvalidEnvelopeException {
+        Util.notNull(path, "Path");
+        Util.notNull(documentName, "Document name");
+        try {
+            return envelopeReader.extractDocument(Files.newByteChannel(path, StandardOpenOption.READ), documentName, verifyHash);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse file '" + path + "'", e);
+        }
+    }
+
+    /**
+     * Checks the structure of an {@link Envelope} in a file without reading its documents, so that malformed files can be
+     * rejected before reading them. See {@link EnvelopeReader#preValidate(SeekableByteChannel)} for details.
+     *
+     * @param path           path to a file that contains an {@link Envelope}.
+     *
+     * @throws InvalidEnvelopeException      when the file does not contain a structurally valid {@link Envelope}.
+     */
+    public void preValidate(Path path) throws InvalidEnvelopeException {
+        Util.notNull(path, "Path");
+        try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+            envelopeReader.preValidate(channel);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse file '" + path + "'", e);
+        }
+    }
+
+    /**
+     * Checks the structure of an {@link Envelope} in a {@link SeekableByteChannel} without reading its documents. See
+     * {@link EnvelopeReader#preValidate(SeekableByteChannel)} for details.
+     *
+     * @param channel        a {@link SeekableByteChannel} that contains an {@link Envelope}. The channel is not closed,
+     *                       but its position may change.
+     *
+     * @throws InvalidEnvelopeException      when the channel does not contain a structurally valid {@link Envelope}.
+     */
+    public void preValidate(SeekableByteChannel channel) throws InvalidEnvelopeException {
+        Util.notNull(channel, "Channel");
+        try {
+            envelopeReader.preValidate(channel);
+        } catch (IOException e) {
+            throw new InvalidEnvelopeException("Failed to parse channel", e);
+        }
+    }
+
+    /**
+     * Creates an {@link EnvelopePushParser} for parsing an {@link Envelope} from data that is pushed to it piece by piece,
+     * e.g. from a non-blocking channel, without blocking a thread while waiting for more data.
+     *
+     * @return A new {@link EnvelopePushParser} for parsing a single {@link Envelope}.
+     */
+    public EnvelopePushParser createPushParser() {
+        return envelopeReader.createPushParser();
+    }
+
+    /**
+     * Creates an {@link EnvelopePushParser} that provides each {@link SignatureContent} to listener as soon as all entries
+     * it consists of have been fed to the parser.
+     *
+     * @param listener       the {@link EnvelopeReadListener} to receive {@link SignatureContent}s while parsing.
+     *
+     * @return A new {@link EnvelopePushParser} for parsing a single {@link Envelope}.
+     */
+    public EnvelopePushParser createPushParser(EnvelopeReadListener listener) {
+        Util.notNull(listener, "Envelope read listener");
+        return envelopeReader.createPushParser(listener);
+    }
+
     /**
      * Creates a {@link Envelope} with the input documents and annotations and a signature covering them.
      *
@@ -400,6 +651,9 @@ public final class EnvelopePackagingFactory {
         protected ParsingStore parsingStore;
         protected EnvelopeReader envelopeReader;
         protected VerificationPolicy verificationPolicy = new InternalVerificationPolicy();
+        protected Executor signatureContentExecutor;
+        protected Executor entryInflationExecutor;
+        protected ParsingLimits parsingLimits = ParsingLimits.UNLIMITED;
 
         public Builder withSignatureFactory(SignatureFactory factory) {
             this.signatureFactory = factory;
@@ -441,6 +695,54 @@ public final class EnvelopePackagingFactory {
             return this;
         }
 
+        /**
+         * Sets the executor on which {@link SignatureContent}s of a parsed {@link Envelope} are composed concurrently.
+         * Used by envelope readers created by format specific builders. The executor is not shut down by the built
+         * packaging factory.
+         * <p>
+         * NB! 'null' is the default and composes contents sequentially on the reading thread.
+         * </p>
+         *
+         * @param executor the executor for composing signature contents.
+         * @return The same builder.
+         */
+        public Builder withSignatureContentExecutor(Executor executor) {
+            this.signatureContentExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the executor on which entries of an {@link Envelope} read from a file are inflated and copied into the
+         * {@link ParsingStore} concurrently. Used by envelope readers created by format specific builders. The executor is
+         * not shut down by the built packaging factory.
+         * <p>
+         * NB! 'null' is the default and reads entries of a file only when their content is accessed.
+         * </p>
+         *
+         * @param executor the executor for reading envelope entries.
+         * @return The same builder.
+         */
+        public Builder withEntryInflationExecutor(Executor executor) {
+            this.entryInflationExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the limits for entries stored while parsing a single {@link Envelope}, e.g. to protect the
+         * {@link ParsingStore} from decompression bombs. Used by envelope readers created by format specific builders.
+         * <p>
+         * NB! {@link ParsingLimits#UNLIMITED} is the default.
+         * </p>
+         *
+         * @param limits the parsing limits.
+         * @return The same builder.
+         */
+        public Builder withParsingLimits(ParsingLimits limits) {
+            Util.notNull(limits, "Parsing limits");
+            this.parsingLimits = limits;
+            return this;
+        }
+
         public EnvelopePackagingFactory build() throws IOException {
             return new EnvelopePackagingFactory(this);
         }
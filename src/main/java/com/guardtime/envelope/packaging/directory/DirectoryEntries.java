@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.directory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Maps envelope entry names to files in the directory of an envelope.
+ */
+final class DirectoryEntries {
+
+    static final String TEMP_FILE_PREFIX = ".ksie";
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private DirectoryEntries() {
+    }
+
+    /**
+     * @return true if the file is a temporary file of {@link DirectoryEnvelopeWriter} and not an envelope entry.
+     */
+    static boolean isTemporaryFile(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.startsWith(TEMP_FILE_PREFIX) && fileName.endsWith(TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * @return Name of the envelope entry that is kept in provided file, using '/' as separator.
+     */
+    static String getEntryName(Path directory, Path file) {
+        StringBuilder name = new StringBuilder();
+        for (Path element : directory.relativize(file)) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(element.toString());
+        }
+        return name.toString();
+    }
+
+    /**
+     * @return The file in which the envelope entry with provided name is kept.
+     * @throws IOException when the name refers to a location outside of the directory.
+     */
+    static Path getEntryFile(Path directory, String name) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        Path file = root;
+        for (String element : name.split("/")) {
+            if (!element.isEmpty()) {
+                file = file.resolve(element);
+            }
+        }
+        file = file.normalize();
+        if (file.equals(root) || !file.startsWith(root)) {
+            throw new IOException("Entry '" + name + "' is not located inside envelope directory!");
+        }
+        return file;
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.directory;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.packaging.EnvelopePackagingFactory;
+
+import java.io.IOException;
+
+/**
+ * Builds {@link EnvelopePackagingFactory} for generating {@link Envelope} instances that are stored as a directory tree with
+ * the same entry layout as ZIP envelopes. Use {@link DirectoryEnvelopeWriter} for storing and
+ * {@link EnvelopePackagingFactory#read(java.nio.file.Path)} for reading the envelopes.
+ * Will overwrite any MIME type and EnvelopeReader already set for builder.
+ */
+public class DirectoryEnvelopePackagingFactoryBuilder extends EnvelopePackagingFactory.Builder {
+
+    public static final String MIME_TYPE = "application/guardtime.ksie10+directory";
+
+    @Override
+    public EnvelopePackagingFactory build() throws IOException {
+        envelopeReader = new DirectoryEnvelopeReader(manifestFactory, signatureFactory, parsingStore, signatureContentExecutor,
+                parsingLimits);
+        return super.build();
+    }
+}
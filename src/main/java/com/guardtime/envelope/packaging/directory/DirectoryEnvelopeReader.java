@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.directory;
+
+import com.guardtime.envelope.manifest.EnvelopeManifestFactory;
+import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
+import com.guardtime.envelope.packaging.parsing.EnvelopeReader;
+import com.guardtime.envelope.packaging.parsing.ParsingLimits;
+import com.guardtime.envelope.packaging.parsing.ParsingStoreSession;
+import com.guardtime.envelope.packaging.parsing.store.ContentSource;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreException;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreReference;
+import com.guardtime.envelope.packaging.parsing.store.SourceBackedParsingStore;
+import com.guardtime.envelope.signature.SignatureFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executor;
+
+/**
+ * Directory implementation for {@link EnvelopeReader} which reads the entries of an envelope from files in a directory
+ * tree. MIME type, manifests and signatures are stored, documents and annotation data are read from their files each
+ * time their content is accessed.
+ */
+class DirectoryEnvelopeReader extends EnvelopeReader {
+
+    DirectoryEnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                            ParsingStore store) {
+        this(manifestFactory, signatureFactory, store, null, ParsingLimits.UNLIMITED);
+    }
+
+    DirectoryEnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                            ParsingStore store, Executor signatureContentExecutor, ParsingLimits parsingLimits) {
+        super(manifestFactory, signatureFactory, store, signatureContentExecutor, parsingLimits);
+    }
+
+    @Override
+    protected void parseInputStream(InputStream input, ParsingStoreSession storeSession,
+                                    EnvelopeReadingException readingException) throws IOException {
+        input.close();
+        throw new IOException("Directory envelope can only be read from a directory!");
+    }
+
+    @Override
+    protected void parseDirectory(final Path directory, final ParsingStoreSession storeSession,
+                                  final EnvelopeReadingException readingException) throws IOException {
+        final SourceBackedParsingStore fileStore = new SourceBackedParsingStore();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, BasicFileAttributes attributes) throws IOException {
+                if (!attributes.isRegularFile() || DirectoryEntries.isTemporaryFile(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = DirectoryEntries.getEntryName(directory, file);
+                if (!storeSession.accepts(name)) {
+                    LOGGER.trace("Skipping file '{}'", name);
+                    return FileVisitResult.CONTINUE;
+                }
+                if (storeSession.isLimitExceeded()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                try {
+                    if (isMetadataEntry(name)) {
+                        LOGGER.debug("Reading file '{}'.", name);
+                        try (InputStream input = Files.newInputStream(file)) {
+                            storeSession.store(name, input, attributes.size());
+                        }
+                    } else {
+                        LOGGER.debug("Registering file '{}' for reading on demand.", name);
+                        storeSession.countStoredBytes(name, attributes.size(), attributes.size());
+                        ParsingStoreReference reference = fileStore.store(new ContentSource() {
+                            @Override
+                            public InputStream open() throws IOException {
+                                return Files.newInputStream(file);
+                            }
+                        }, name);
+                        storeSession.store(name, reference);
+                    }
+                } catch (ParsingStoreException e) {
+                    readingException.addException(e);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    protected String getMimeType() {
+        return DirectoryEnvelopePackagingFactoryBuilder.MIME_TYPE;
+    }
+
+}
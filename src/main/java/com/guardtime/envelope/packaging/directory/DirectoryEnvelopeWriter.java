@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.directory;
+
+import com.guardtime.envelope.annotation.Annotation;
+import com.guardtime.envelope.document.Document;
+import com.guardtime.envelope.document.UnknownDocument;
+import com.guardtime.envelope.manifest.AnnotationsManifest;
+import com.guardtime.envelope.manifest.DocumentsManifest;
+import com.guardtime.envelope.manifest.Manifest;
+import com.guardtime.envelope.manifest.SingleAnnotationManifest;
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.packaging.SignatureContent;
+import com.guardtime.envelope.signature.EnvelopeSignature;
+import com.guardtime.envelope.util.Util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.guardtime.envelope.packaging.EnvelopeWriter.MIME_TYPE_ENTRY_NAME;
+
+/**
+ * Writes an {@link Envelope} to a directory tree, keeping each entry of the envelope in a file at the path of the entry.
+ * <p>
+ * Entries are never renamed or reused for other content, so files of entries that already exist in the directory are
+ * left untouched and only the new entries are written, e.g. the new META-INF files when a signature has been added to an
+ * envelope read from the same directory. Existing files are compared to the content of the entry and writing fails if
+ * they differ. Signatures are rewritten when they differ as they may have been extended. Each file is written to a
+ * temporary file first and then moved in place.
+ * </p>
+ * Stateless and reusable.
+ */
+public class DirectoryEnvelopeWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryEnvelopeWriter.class);
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Writes the entries of envelope that do not exist yet in directory.
+     *
+     * @param envelope  the {@link Envelope} to write.
+     * @param directory the directory to write the envelope to. Created if missing.
+     * @throws IOException when writing fails or the envelope refers to entries outside of the directory.
+     */
+    public void write(Envelope envelope, Path directory) throws IOException {
+        Util.notNull(envelope, "Envelope");
+        Util.notNull(directory, "Directory");
+        if (envelope.isClosed()) {
+            throw new IOException("Can't write closed object!");
+        }
+        Files.createDirectories(directory);
+        Set<String> writtenFiles = new HashSet<>();
+        try {
+            writeMimeTypeEntry(directory, writtenFiles);
+            writeSignatureContents(envelope.getSignatureContents(), directory, writtenFiles);
+            writeUnknownFiles(envelope.getUnknownFiles(), directory, writtenFiles);
+        } catch (NullPointerException e) {
+            throw new IOException("Aborting Envelope writing. Encountered missing value!", e);
+        }
+    }
+
+    private void writeMimeTypeEntry(Path directory, Set<String> writtenFiles) throws IOException {
+        byte[] data = DirectoryEnvelopePackagingFactoryBuilder.MIME_TYPE.getBytes(StandardCharsets.UTF_8);
+        writeEntry(MIME_TYPE_ENTRY_NAME, new ByteArrayInputStream(data), directory, writtenFiles);
+    }
+
+    private void writeSignatureContents(List<SignatureContent> signatureContents, Path directory, Set<String> writtenFiles)
+            throws IOException {
+        for (SignatureContent signatureContent : signatureContents) {
+            Manifest manifest = signatureContent.getManifest();
+            DocumentsManifest documentsManifest = signatureContent.getDocumentsManifest();
+            AnnotationsManifest annotationsManifest = signatureContent.getAnnotationsManifest();
+            writeEntry(manifest.getPath(), manifest.getInputStream(), directory, writtenFiles);
+            writeEntry(documentsManifest.getPath(), documentsManifest.getInputStream(), directory, writtenFiles);
+            writeEntry(annotationsManifest.getPath(), annotationsManifest.getInputStream(), directory, writtenFiles);
+            writeSignature(signatureContent.getEnvelopeSignature(), manifest, directory, writtenFiles);
+            writeSingleAnnotationManifests(signatureContent.getSingleAnnotationManifests(), directory, writtenFiles);
+            writeAnnotations(signatureContent.getAnnotations(), directory, writtenFiles);
+            writeDocuments(signatureContent.getDocuments(), directory, writtenFiles);
+        }
+    }
+
+    private void writeUnknownFiles(List<UnknownDocument> unknownFiles, Path directory, Set<String> writtenFiles)
+            throws IOException {
+        for (UnknownDocument file : unknownFiles) {
+            if (writtenFiles.contains(file.getFileName())) {
+                continue;
+            }
+            try (InputStream inputStream = file.getInputStream()) {
+                writeEntry(file.getFileName(), inputStream, directory, writtenFiles);
+            }
+        }
+    }
+
+    private void writeSingleAnnotationManifests(Map<String, SingleAnnotationManifest> singleAnnotationManifestMap,
+                                                Path directory, Set<String> writtenFiles) throws IOException {
+        for (String uri : singleAnnotationManifestMap.keySet()) {
+            SingleAnnotationManifest singleAnnotationManifest = singleAnnotationManifestMap.get(uri);
+            writeEntry(uri, singleAnnotationManifest.getInputStream(), directory, writtenFiles);
+        }
+    }
+
+    private void writeAnnotations(Map<String, Annotation> annotations, Path directory, Set<String> writtenFiles)
+            throws IOException {
+        for (String uri : annotations.keySet()) {
+            if (writtenFiles.contains(uri)) {
+                continue;
+            }
+            Annotation annotation = annotations.get(uri);
+            try (InputStream inputStream = annotation.getInputStream()) {
+                writeEntry(uri, inputStream, directory, writtenFiles);
+            }
+        }
+    }
+
+    private void writeSignature(EnvelopeSignature signature, Manifest manifest, Path directory, Set<String> writtenFiles)
+            throws IOException {
+        String signatureUri = manifest.getSignatureReference().getUri();
+        if (writtenFiles.contains(signatureUri)) {
+            // Skip since the file has already been written from another SignatureContent
+            return;
+        }
+        Path file = DirectoryEntries.getEntryFile(directory, signatureUri);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        signature.writeTo(output);
+        byte[] data = output.toByteArray();
+        if (Files.exists(file) && Arrays.equals(data, Files.readAllBytes(file))) {
+            logger.debug("Skipping unchanged signature: '{}'", signatureUri);
+        } else {
+            writeFile(new ByteArrayInputStream(data), file);
+        }
+        writtenFiles.add(signatureUri);
+    }
+
+    private void writeDocuments(Map<String, Document> documents, Path directory, Set<String> writtenFiles)
+            throws IOException {
+        for (String uri : documents.keySet()) {
+            Document document = documents.get(uri);
+            if (invalidDocumentName(document.getFileName())) {
+                throw new IOException(document.getFileName() + " is an invalid document file name!");
+            }
+            if (document.isWritable() && !writtenFiles.contains(uri)) {
+                try (InputStream inputStream = document.getInputStream()) {
+                    writeEntry(uri, inputStream, directory, writtenFiles);
+                }
+            }
+        }
+    }
+
+    /**
+     * Filename can't be directory for an {@link Document}. KSIE-54
+     */
+    private boolean invalidDocumentName(String fileName) {
+        return fileName.endsWith("/");
+    }
+
+    private void writeEntry(String path, InputStream input, Path directory, Set<String> writtenFiles) throws IOException {
+        try (InputStream inputStream = input) {
+            if (writtenFiles.contains(path)) {
+                // Skip since the file has already been written from another SignatureContent
+                logger.debug("Skipping already written file: '{}'", path);
+                return;
+            }
+            Path file = DirectoryEntries.getEntryFile(directory, path);
+            if (Files.exists(file)) {
+                if (!hasContent(file, inputStream)) {
+                    throw new IOException("File of entry '" + path + "' already exists in directory with different content!");
+                }
+                logger.debug("Skipping file already present in directory: '{}'", path);
+                writtenFiles.add(path);
+                return;
+            }
+            writeFile(inputStream, file);
+            writtenFiles.add(path);
+        }
+    }
+
+    /**
+     * @return true if the file contains exactly the data of input.
+     */
+    private boolean hasContent(Path file, InputStream input) throws IOException {
+        try (InputStream fileInput = Files.newInputStream(file)) {
+            byte[] expected = new byte[BUFFER_SIZE];
+            byte[] actual = new byte[BUFFER_SIZE];
+            while (true) {
+                int count = readFully(input, expected);
+                if (readFully(fileInput, actual) != count) {
+                    return false;
+                }
+                for (int i = 0; i < count; i++) {
+                    if (expected[i] != actual[i]) {
+                        return false;
+                    }
+                }
+                if (count < BUFFER_SIZE) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private int readFully(InputStream input, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int count = input.read(buffer, total, buffer.length - total);
+            if (count == -1) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    private void writeFile(InputStream input, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tempFile =
+                Files.createTempFile(file.getParent(), DirectoryEntries.TEMP_FILE_PREFIX, DirectoryEntries.TEMP_FILE_SUFFIX);
+        try {
+            Files.copy(input, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            moveInPlace(tempFile, file);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void moveInPlace(Path tempFile, Path file) throws IOException {
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.indexed;
+
+import com.guardtime.envelope.util.ByteBufferChannel;
+import com.guardtime.envelope.util.ChannelInputStream;
+import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.DataHasher;
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layout of the indexed envelope container and access to the entries of a container by random access.
+ * <p>
+ * The container starts with {@link #MAGIC}, followed by the uncompressed data of all entries. Data of the entries is
+ * followed by the index: {@link #INDEX_SIGNATURE} and a fixed-size record for each entry holding the length of the entry
+ * name, the UTF-8 encoded name padded to {@link #MAX_NAME_LENGTH} bytes, the offset and length of the entry data and the
+ * {@link #DIGEST_ALGORITHM} digest of the data. The container ends with a fixed-size trailer holding the offset of the
+ * index, the number of entries and {@link #TRAILER_SIGNATURE}. All numbers are big-endian.
+ * </p>
+ */
+final class IndexedContainer {
+
+    static final byte[] MAGIC = "KSIEIDX1".getBytes(StandardCharsets.US_ASCII);
+    static final int INDEX_SIGNATURE = 0x4B534958;
+    static final int TRAILER_SIGNATURE = 0x4B534954;
+    static final int MAX_NAME_LENGTH = 256;
+    static final HashAlgorithm DIGEST_ALGORITHM = HashAlgorithm.SHA2_256;
+    static final int DIGEST_LENGTH = 32;
+    static final int RECORD_LENGTH = 2 + MAX_NAME_LENGTH + 8 + 8 + DIGEST_LENGTH;
+    static final int TRAILER_LENGTH = 8 + 4 + 4;
+    static final long MAP_THRESHOLD = 64 * 1024;
+    static final int MAX_ENTRY_COUNT = (Integer.MAX_VALUE - 4) / RECORD_LENGTH;
+
+    private final SeekableByteChannel channel;
+    private final Map<String, Entry> entries;
+
+    private IndexedContainer(SeekableByteChannel channel, Map<String, Entry> entries) {
+        this.channel = channel;
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Reads the index of the container in channel.
+     *
+     * @throws IndexedContainerException when the channel does not contain a readable indexed container.
+     * @throws IOException               when reading the channel fails.
+     */
+    static IndexedContainer read(SeekableByteChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < MAGIC.length + 4 + TRAILER_LENGTH || !Arrays.equals(MAGIC, readFully(channel, 0, MAGIC.length).array())) {
+            throw new IndexedContainerException("Not an indexed envelope container");
+        }
+        ByteBuffer trailer = readFully(channel, size - TRAILER_LENGTH, TRAILER_LENGTH);
+        long indexOffset = trailer.getLong(0);
+        int entryCount = trailer.getInt(8);
+        if (trailer.getInt(12) != TRAILER_SIGNATURE) {
+            throw new IndexedContainerException("Indexed container trailer not found");
+        }
+        if (entryCount < 0 || entryCount > MAX_ENTRY_COUNT || indexOffset < MAGIC.length || indexOffset > size ||
+                indexOffset + 4 + (long) entryCount * RECORD_LENGTH != size - TRAILER_LENGTH) {
+            throw new IndexedContainerException("Invalid indexed container index location");
+        }
+        ByteBuffer index = readFully(channel, indexOffset, 4 + entryCount * RECORD_LENGTH);
+        if (index.getInt(0) != INDEX_SIGNATURE) {
+            throw new IndexedContainerException("Invalid indexed container index signature");
+        }
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            Entry entry = readEntry(index, 4 + i * RECORD_LENGTH);
+            if (entry.offset < MAGIC.length || entry.length < 0 || entry.length > indexOffset - entry.offset) {
+                throw new IndexedContainerException("Entry '" + entry.name + "' exceeds container bounds");
+            }
+            if (entries.put(entry.name, entry) != null) {
+                throw new IndexedContainerException("Duplicate entry '" + entry.name + "' in container index");
+            }
+        }
+        return new IndexedContainer(channel, entries);
+    }
+
+    private static Entry readEntry(ByteBuffer index, int start) throws IndexedContainerException {
+        int nameLength = index.getShort(start) & 0xFFFF;
+        if (nameLength == 0 || nameLength > MAX_NAME_LENGTH) {
+            throw new IndexedContainerException("Invalid entry name length in container index");
+        }
+        byte[] name = new byte[nameLength];
+        index.position(start + 2);
+        index.get(name);
+        int numbers = start + 2 + MAX_NAME_LENGTH;
+        byte[] digest = new byte[DIGEST_LENGTH];
+        index.position(numbers + 16);
+        index.get(digest);
+        return new Entry(new String(name, StandardCharsets.UTF_8), index.getLong(numbers), index.getLong(numbers + 8), digest);
+    }
+
+    private static ByteBuffer readFully(SeekableByteChannel channel, long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > channel.size()) {
+            throw new IndexedContainerException("Unexpected end of indexed container");
+        }
+        byte[] bytes = new byte[length];
+        try (InputStream input = new ChannelInputStream(channel, offset, length)) {
+            int read = 0;
+            while (read < length) {
+                read += input.read(bytes, read, length - read);
+            }
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * @return All entries listed in the index, in the order of listing.
+     */
+    List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * @return The entry with provided name or null if the container has no such entry.
+     */
+    Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return {@link InputStream} that provides the data of the entry. Data of large entries in a {@link FileChannel} is
+     * memory-mapped. The digest of the data is checked once the end of stream is reached.
+     * @throws IOException when mapping the data fails.
+     */
+    InputStream getInputStream(Entry entry) throws IOException {
+        InputStream raw;
+        if (channel instanceof FileChannel && entry.length >= MAP_THRESHOLD && entry.length <= Integer.MAX_VALUE) {
+            ByteBuffer mapped = ((FileChannel) channel).map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length);
+            raw = Channels.newInputStream(new ByteBufferChannel(mapped));
+        } else {
+            raw = new ChannelInputStream(channel, entry.offset, entry.length);
+        }
+        return new CheckedEntryInputStream(raw, entry);
+    }
+
+    /**
+     * Entry as listed in the index of the container.
+     */
+    static final class Entry {
+        private final String name;
+        private final long offset;
+        private final long length;
+        private final byte[] digest;
+
+        private Entry(String name, long offset, long length, byte[] digest) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.digest = digest;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return The position in the container where the data of the entry starts.
+         */
+        long getOffset() {
+            return offset;
+        }
+
+        long getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Verifies the digest of the entry data once it has been fully read.
+     */
+    private static final class CheckedEntryInputStream extends FilterInputStream {
+        private final Entry entry;
+        private final DataHasher hasher = new DataHasher(DIGEST_ALGORITHM);
+        private boolean verified = false;
+
+        private CheckedEntryInputStream(InputStream input, Entry entry) {
+            super(input);
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read == -1) {
+                verify();
+                return -1;
+            }
+            hasher.addData(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            return Util.skipByReading(this, count);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void verify() throws IndexedContainerException {
+            if (verified) {
+                return;
+            }
+            verified = true;
+            if (!Arrays.equals(entry.digest, hasher.getHash().getValue())) {
+                throw new IndexedContainerException("Invalid digest of container entry '" + entry.name + "'");
+            }
+        }
+    }
+
+}
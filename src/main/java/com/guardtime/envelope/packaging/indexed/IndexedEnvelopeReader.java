@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.indexed;
+
+import com.guardtime.envelope.manifest.EnvelopeManifestFactory;
+import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
+import com.guardtime.envelope.packaging.parsing.EnvelopeReader;
+import com.guardtime.envelope.packaging.parsing.ParsingLimits;
+import com.guardtime.envelope.packaging.parsing.ParsingStoreSession;
+import com.guardtime.envelope.packaging.parsing.store.ContentSource;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreException;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreReference;
+import com.guardtime.envelope.packaging.parsing.store.SourceBackedParsingStore;
+import com.guardtime.envelope.signature.SignatureFactory;
+import com.guardtime.envelope.util.ByteBufferChannel;
+import com.guardtime.ksi.util.Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Indexed container implementation for {@link EnvelopeReader}. Reads the index at the end of the container and stores
+ * MIME type, manifests and signatures. Other entries are left in the container and read only when their content is
+ * accessed.
+ * <p>
+ * NB! The index can only be reached by random access, so an {@link InputStream} is read into memory before parsing. Read
+ * large envelopes from a file, channel or buffer instead.
+ * </p>
+ */
+class IndexedEnvelopeReader extends EnvelopeReader {
+
+    IndexedEnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                          ParsingStore store) {
+        this(manifestFactory, signatureFactory, store, null, ParsingLimits.UNLIMITED);
+    }
+
+    IndexedEnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                          ParsingStore store, Executor signatureContentExecutor, ParsingLimits parsingLimits) {
+        super(manifestFactory, signatureFactory, store, signatureContentExecutor, parsingLimits);
+    }
+
+    @Override
+    protected void parseInputStream(InputStream input, ParsingStoreSession storeSession,
+                                    EnvelopeReadingException readingException) throws IOException {
+        byte[] bytes;
+        try (InputStream in = input) {
+            bytes = Util.toByteArray(in);
+        }
+        parseIndex(new ByteBufferChannel(ByteBuffer.wrap(bytes)), storeSession, readingException);
+    }
+
+    @Override
+    protected void parseChannel(SeekableByteChannel channel, ParsingStoreSession storeSession,
+                                EnvelopeReadingException readingException) throws IOException {
+        parseIndex(channel, storeSession, readingException);
+    }
+
+    @Override
+    protected void parseBuffer(ByteBuffer buffer, ParsingStoreSession storeSession,
+                               EnvelopeReadingException readingException) throws IOException {
+        parseIndex(new ByteBufferChannel(buffer), storeSession, readingException);
+    }
+
+    private void parseIndex(SeekableByteChannel channel, ParsingStoreSession storeSession,
+                            EnvelopeReadingException readingException) throws IOException {
+        SourceBackedParsingStore channelStore = new SourceBackedParsingStore(channel);
+        boolean channelInUse = false;
+        try {
+            final IndexedContainer container = IndexedContainer.read(channel);
+            for (final IndexedContainer.Entry entry : container.getEntries()) {
+                if (storeSession.isLimitExceeded()) {
+                    break;
+                }
+                String name = entry.getName();
+                if (!storeSession.accepts(name)) {
+                    LOGGER.trace("Skipping container entry '{}'", name);
+                    continue;
+                }
+                try {
+                    if (isMetadataEntry(name)) {
+                        LOGGER.debug("Reading container entry '{}'.", name);
+                        storeSession.countArchiveBytes(entry.getLength());
+                        try (InputStream input = container.getInputStream(entry)) {
+                            storeSession.store(name, input, entry.getLength());
+                        }
+                    } else {
+                        LOGGER.debug("Registering container entry '{}' for reading on demand.", name);
+                        storeSession.countArchiveBytes(entry.getLength());
+                        storeSession.countStoredBytes(name, entry.getLength(), entry.getLength());
+                        ParsingStoreReference reference = channelStore.store(new ContentSource() {
+                            @Override
+                            public InputStream open() throws IOException {
+                                return container.getInputStream(entry);
+                            }
+                        }, name);
+                        channelInUse = true;
+                        storeSession.store(name, reference);
+                    }
+                } catch (ParsingStoreException e) {
+                    readingException.addException(e);
+                }
+            }
+        } finally {
+            if (!channelInUse) {
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    protected String getMimeType() {
+        return IndexedEnvelopePackagingFactoryBuilder.MIME_TYPE;
+    }
+
+}
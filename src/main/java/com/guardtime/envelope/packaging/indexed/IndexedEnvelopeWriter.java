@@ -0,0 +1,261 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.indexed;
+
+import com.guardtime.envelope.annotation.Annotation;
+import com.guardtime.envelope.document.Document;
+import com.guardtime.envelope.document.UnknownDocument;
+import com.guardtime.envelope.manifest.AnnotationsManifest;
+import com.guardtime.envelope.manifest.DocumentsManifest;
+import com.guardtime.envelope.manifest.Manifest;
+import com.guardtime.envelope.manifest.SingleAnnotationManifest;
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.packaging.EnvelopeWriter;
+import com.guardtime.envelope.packaging.SignatureContent;
+import com.guardtime.envelope.signature.EnvelopeSignature;
+import com.guardtime.ksi.hashing.DataHasher;
+import com.guardtime.ksi.util.Util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.guardtime.envelope.packaging.indexed.IndexedContainer.DIGEST_ALGORITHM;
+import static com.guardtime.envelope.packaging.indexed.IndexedContainer.INDEX_SIGNATURE;
+import static com.guardtime.envelope.packaging.indexed.IndexedContainer.MAGIC;
+import static com.guardtime.envelope.packaging.indexed.IndexedContainer.MAX_NAME_LENGTH;
+import static com.guardtime.envelope.packaging.indexed.IndexedContainer.TRAILER_SIGNATURE;
+
+/**
+ * Writes an {@link Envelope} as an indexed container, see {@link IndexedContainer} for the layout. Entries are written
+ * uncompressed, in the same order as {@link com.guardtime.envelope.packaging.zip.ZipEnvelopeWriter} writes them.
+ */
+public class IndexedEnvelopeWriter implements EnvelopeWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexedEnvelopeWriter.class);
+
+    @Override
+    public void write(Envelope envelope, OutputStream output) throws IOException {
+        if (envelope.isClosed()) {
+            throw new IOException("Can't write closed object!");
+        }
+        try (ContainerOutputStream containerOutput = new ContainerOutputStream(new BufferedOutputStream(output))) {
+            writeMimeTypeEntry(containerOutput);
+            writeSignatureContents(envelope.getSignatureContents(), containerOutput);
+            writeUnknownFiles(envelope.getUnknownFiles(), containerOutput);
+            containerOutput.finish();
+        } catch (NullPointerException e) {
+            throw new IOException("Aborting Envelope writing. Encountered missing value!", e);
+        }
+    }
+
+    private void writeMimeTypeEntry(ContainerOutputStream output) throws IOException {
+        byte[] data = IndexedEnvelopePackagingFactoryBuilder.MIME_TYPE.getBytes(StandardCharsets.UTF_8);
+        writeEntry(MIME_TYPE_ENTRY_NAME, new ByteArrayInputStream(data), output);
+    }
+
+    private void writeSignatureContents(List<SignatureContent> signatureContents, ContainerOutputStream output)
+            throws IOException {
+        for (SignatureContent signatureContent : signatureContents) {
+            Manifest manifest = signatureContent.getManifest();
+            DocumentsManifest documentsManifest = signatureContent.getDocumentsManifest();
+            AnnotationsManifest annotationsManifest = signatureContent.getAnnotationsManifest();
+            writeEntry(manifest.getPath(), manifest.getInputStream(), output);
+            writeEntry(documentsManifest.getPath(), documentsManifest.getInputStream(), output);
+            writeEntry(annotationsManifest.getPath(), annotationsManifest.getInputStream(), output);
+            writeSignature(signatureContent.getEnvelopeSignature(), manifest, output);
+            writeSingleAnnotationManifests(signatureContent.getSingleAnnotationManifests(), output);
+            writeAnnotations(signatureContent.getAnnotations(), output);
+            writeDocuments(signatureContent.getDocuments(), output);
+        }
+    }
+
+    private void writeUnknownFiles(List<UnknownDocument> unknownFiles, ContainerOutputStream output) throws IOException {
+        for (UnknownDocument file : unknownFiles) {
+            try (InputStream inputStream = file.getInputStream()) {
+                writeEntry(file.getFileName(), inputStream, output);
+            }
+        }
+    }
+
+    private void writeSingleAnnotationManifests(Map<String, SingleAnnotationManifest> singleAnnotationManifestMap,
+                                                ContainerOutputStream output) throws IOException {
+        for (String uri : singleAnnotationManifestMap.keySet()) {
+            SingleAnnotationManifest singleAnnotationManifest = singleAnnotationManifestMap.get(uri);
+            writeEntry(uri, singleAnnotationManifest.getInputStream(), output);
+        }
+    }
+
+    private void writeAnnotations(Map<String, Annotation> annotations, ContainerOutputStream output) throws IOException {
+        for (String uri : annotations.keySet()) {
+            Annotation annotation = annotations.get(uri);
+            try (InputStream inputStream = annotation.getInputStream()) {
+                writeEntry(uri, inputStream, output);
+            }
+        }
+    }
+
+    private void writeSignature(EnvelopeSignature signature, Manifest manifest, ContainerOutputStream output)
+            throws IOException {
+        String signatureUri = manifest.getSignatureReference().getUri();
+        if (!output.putNextEntry(signatureUri)) {
+            // Skip since the file has already been written from another SignatureContent
+            return;
+        }
+        signature.writeTo(output);
+        output.closeEntry();
+    }
+
+    private void writeDocuments(Map<String, Document> documents, ContainerOutputStream output) throws IOException {
+        for (String uri : documents.keySet()) {
+            Document document = documents.get(uri);
+            if (invalidDocumentName(document.getFileName())) {
+                throw new IOException(document.getFileName() + " is an invalid document file name!");
+            }
+            if (document.isWritable()) {
+                try (InputStream inputStream = document.getInputStream()) {
+                    writeEntry(uri, inputStream, output);
+                }
+            }
+        }
+    }
+
+    /**
+     * Filename can't be directory for an {@link Document}. KSIE-54
+     */
+    private boolean invalidDocumentName(String fileName) {
+        return fileName.endsWith("/");
+    }
+
+    private void writeEntry(String path, InputStream input, ContainerOutputStream output) throws IOException {
+        if (!output.putNextEntry(path)) {
+            // Skip since the file has already been written from another SignatureContent
+            logger.debug("Skipping already written file: '{}'", path);
+            return;
+        }
+        Util.copyData(input, output);
+        output.closeEntry();
+    }
+
+    /**
+     * Keeps track of the offsets and digests of the written entries and writes the index and trailer of the container.
+     */
+    private static final class ContainerOutputStream extends FilterOutputStream {
+        private final DataOutputStream dataOutput;
+        private final Set<String> writtenFiles = new HashSet<>();
+        private final List<IndexRecord> records = new ArrayList<>();
+        private long position = 0;
+        private String entryName;
+        private byte[] entryNameBytes;
+        private long entryOffset;
+        private DataHasher hasher;
+
+        private ContainerOutputStream(OutputStream output) throws IOException {
+            super(new DataOutputStream(output));
+            this.dataOutput = (DataOutputStream) out;
+            dataOutput.write(MAGIC);
+            position = MAGIC.length;
+        }
+
+        /**
+         * @return false if an entry with provided name has already been written.
+         */
+        boolean putNextEntry(String name) throws IOException {
+            if (writtenFiles.contains(name)) {
+                return false;
+            }
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length == 0 || nameBytes.length > MAX_NAME_LENGTH) {
+                throw new IOException("Entry name '" + name + "' can not be stored in indexed container!");
+            }
+            entryName = name;
+            entryNameBytes = nameBytes;
+            entryOffset = position;
+            hasher = new DataHasher(DIGEST_ALGORITHM);
+            return true;
+        }
+
+        void closeEntry() {
+            records.add(new IndexRecord(entryNameBytes, entryOffset, position - entryOffset, hasher.getHash().getValue()));
+            writtenFiles.add(entryName);
+            entryName = null;
+            hasher = null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (hasher == null) {
+                throw new IOException("No container entry has been started!");
+            }
+            dataOutput.write(bytes, offset, length);
+            hasher.addData(bytes, offset, length);
+            position += length;
+        }
+
+        void finish() throws IOException {
+            long indexOffset = position;
+            dataOutput.writeInt(INDEX_SIGNATURE);
+            for (IndexRecord record : records) {
+                dataOutput.writeShort(record.name.length);
+                dataOutput.write(record.name);
+                dataOutput.write(new byte[MAX_NAME_LENGTH - record.name.length]);
+                dataOutput.writeLong(record.offset);
+                dataOutput.writeLong(record.length);
+                dataOutput.write(record.digest);
+            }
+            dataOutput.writeLong(indexOffset);
+            dataOutput.writeInt(records.size());
+            dataOutput.writeInt(TRAILER_SIGNATURE);
+        }
+    }
+
+    private static final class IndexRecord {
+        private final byte[] name;
+        private final long offset;
+        private final long length;
+        private final byte[] digest;
+
+        private IndexRecord(byte[] name, long offset, long length, byte[] digest) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.digest = digest;
+        }
+    }
+
+}
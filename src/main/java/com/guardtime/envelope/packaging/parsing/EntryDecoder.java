@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes entries of an envelope from data that is pushed to it piece by piece and stores them into
+ * {@link ParsingStoreSession}. Used by {@link EnvelopePushParser}.
+ */
+public interface EntryDecoder {
+
+    /**
+     * Consumes all remaining bytes of data. Entries are added to the {@link ParsingStoreSession} as soon as they are
+     * complete.
+     *
+     * @throws IOException when the data can not be decoded.
+     */
+    void decode(ByteBuffer data) throws IOException;
+
+    /**
+     * Called once all data has been provided.
+     *
+     * @throws IOException when the provided data ended unexpectedly.
+     */
+    void finish() throws IOException;
+
+    /**
+     * Releases all resources held by the decoder when decoding is abandoned.
+     */
+    void abort();
+
+}
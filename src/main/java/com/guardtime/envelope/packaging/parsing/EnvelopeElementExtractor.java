@@ -72,13 +72,17 @@ class EnvelopeElementExtractor {
     Set<String> getManifestUris() {
         Set<String> returnable = new HashSet<>();
         for (String key : parsingStoreSession.getStoredKeys()) {
-            if (manifestHandler.isSupported(key)) {
+            if (isManifest(key)) {
                 returnable.add(key);
             }
         }
         return returnable;
     }
 
+    boolean isManifest(String path) {
+        return manifestHandler.isSupported(path);
+    }
+
     SingleAnnotationManifest getSingleAnnotationManifest(String uri) throws ContentParsingException {
         return parseAndUnstore(singleAnnotationManifestHandler, uri);
     }
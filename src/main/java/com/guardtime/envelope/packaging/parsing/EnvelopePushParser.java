@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
+import com.guardtime.envelope.packaging.exception.InvalidEnvelopeException;
+import com.guardtime.envelope.util.Util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses an {@link Envelope} from data that is pushed to it piece by piece, e.g. from a non-blocking channel, instead of
+ * pulling it from an {@link java.io.InputStream}. No thread is blocked while waiting for more data.
+ * <p>
+ * Instances are not thread-safe, all calls for one envelope must be made sequentially. Either {@link #finish()} or
+ * {@link #close()} must be called to release the stored data.
+ * </p>
+ */
+public final class EnvelopePushParser implements AutoCloseable {
+
+    private final EnvelopeReader reader;
+    private final ParsingStoreSession parsingStoreSession;
+    private final EnvelopeReadingException readingException;
+    private final SignatureContentEmitter emitter;
+    private final EntryDecoder decoder;
+    private boolean closed = false;
+
+    EnvelopePushParser(EnvelopeReader reader, ParsingStoreSession parsingStoreSession,
+                       EnvelopeReadingException readingException, SignatureContentEmitter emitter, EntryDecoder decoder) {
+        this.reader = reader;
+        this.parsingStoreSession = parsingStoreSession;
+        this.readingException = readingException;
+        this.emitter = emitter;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Consumes all remaining bytes of data.
+     *
+     * @param data next piece of the {@link Envelope}.
+     * @throws IOException when the data can not be parsed. The parser is closed in that case.
+     */
+    public void feed(ByteBuffer data) throws IOException {
+        Util.notNull(data, "Data");
+        checkOpen();
+        parsingStoreSession.countArchiveBytes(data.remaining());
+        try {
+            decoder.decode(data);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Completes parsing once all data has been fed to the parser.
+     *
+     * @return An instance of {@link Envelope} based on the data fed to the parser. Does not verify the
+     *         envelope/signature(s).
+     * @throws InvalidEnvelopeException when the data does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     * @throws IOException              when the data ended unexpectedly.
+     */
+    public Envelope finish() throws IOException, InvalidEnvelopeException {
+        checkOpen();
+        try {
+            decoder.finish();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        closed = true;
+        return reader.compose(parsingStoreSession, readingException, emitter);
+    }
+
+    /**
+     * Abandons parsing and releases all stored data. Has no effect once the parser has finished.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            decoder.abort();
+            parsingStoreSession.clear();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Envelope push parser has already been closed!");
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.packaging.SignatureContent;
+
+/**
+ * Receives {@link SignatureContent}s of an {@link Envelope} while the {@link Envelope} is still being read.
+ */
+public interface EnvelopeReadListener {
+
+    /**
+     * Called on the reading thread as soon as all entries a {@link SignatureContent} consists of have been read. Contents
+     * that are incomplete or broken are provided once the whole {@link Envelope} has been read. Each
+     * {@link SignatureContent} is provided once and will also be part of the {@link Envelope} returned by the read, so it
+     * must not be closed by the listener. If reading fails with an exception other than
+     * {@link com.guardtime.envelope.packaging.exception.EnvelopeReadingException}, the contents already provided are not
+     * part of any {@link Envelope} and must be closed by the listener.
+     *
+     * @param signatureContent the {@link SignatureContent} that has been parsed.
+     */
+    void onSignatureContent(SignatureContent signatureContent);
+
+}
@@ -20,7 +20,11 @@
 package com.guardtime.envelope.packaging.parsing;
 
 import com.guardtime.envelope.document.UnknownDocument;
+import com.guardtime.envelope.hash.HashAlgorithmProvider;
+import com.guardtime.envelope.manifest.DocumentsManifest;
 import com.guardtime.envelope.manifest.EnvelopeManifestFactory;
+import com.guardtime.envelope.manifest.FileReference;
+import com.guardtime.envelope.manifest.Manifest;
 import com.guardtime.envelope.packaging.Envelope;
 import com.guardtime.envelope.packaging.EnvelopePackagingFactory;
 import com.guardtime.envelope.packaging.SignatureContent;
@@ -28,18 +32,51 @@ import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
 import com.guardtime.envelope.packaging.exception.InvalidEnvelopeException;
 import com.guardtime.envelope.packaging.parsing.handler.ContentParsingException;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreException;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreReference;
 import com.guardtime.envelope.signature.SignatureFactory;
+import com.guardtime.envelope.util.ByteBufferChannel;
 import com.guardtime.envelope.util.Pair;
 import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.HashAlgorithm;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.guardtime.envelope.packaging.EntryNameProvider.META_INF;
+import static com.guardtime.envelope.packaging.EnvelopeWriter.MIME_TYPE_ENTRY_NAME;
 
 /**
  * Provides stream parsing logic for {@link EnvelopePackagingFactory}.
@@ -48,19 +85,47 @@ import java.util.Set;
 public abstract class EnvelopeReader {
 
     protected static final Logger LOGGER = LoggerFactory.getLogger(EnvelopeReader.class);
+    private static final String ANNOTATION_DATA_SUFFIX = ".dat";
 
     private final EnvelopeManifestFactory manifestFactory;
     private final SignatureFactory signatureFactory;
     private final ParsingStore parsingStore;
+    private final Executor signatureContentExecutor;
+    private final ParsingLimits parsingLimits;
 
     public EnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
                           ParsingStore store) {
+        this(manifestFactory, signatureFactory, store, null);
+    }
+
+    /**
+     * @param signatureContentExecutor executor on which {@link SignatureContent}s of an envelope are composed concurrently
+     *                                 once all entries have been read. Parsing store and signature factory must be
+     *                                 thread-safe when used. If null, contents are composed sequentially on the reading
+     *                                 thread.
+     */
+    public EnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                          ParsingStore store, Executor signatureContentExecutor) {
+        this(manifestFactory, signatureFactory, store, signatureContentExecutor, ParsingLimits.UNLIMITED);
+    }
+
+    /**
+     * @param signatureContentExecutor executor on which {@link SignatureContent}s of an envelope are composed concurrently,
+     *                                 see {@link #EnvelopeReader(EnvelopeManifestFactory, SignatureFactory, ParsingStore,
+     *                                 Executor)}. Can be null.
+     * @param parsingLimits            limits for entries stored while parsing a single envelope.
+     */
+    public EnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                          ParsingStore store, Executor signatureContentExecutor, ParsingLimits parsingLimits) {
         Util.notNull(manifestFactory, "Manifest factory");
         Util.notNull(signatureFactory, "Signature factory");
         Util.notNull(store, "Parsing store");
+        Util.notNull(parsingLimits, "Parsing limits");
         this.manifestFactory = manifestFactory;
         this.signatureFactory = signatureFactory;
         this.parsingStore = store;
+        this.signatureContentExecutor = signatureContentExecutor;
+        this.parsingLimits = parsingLimits;
     }
 
     /**
@@ -76,19 +141,375 @@ public abstract class EnvelopeReader {
      * @throws IOException              when errors occur accessing data in provided {@link InputStream}.
      */
     public Envelope read(InputStream input) throws IOException, InvalidEnvelopeException {
+        return readInputStream(input, null);
+    }
+
+    /**
+     * Parses an {@link InputStream} to produce an {@link Envelope} and provides each {@link SignatureContent} to listener as
+     * soon as all entries it consists of have been read from the {@link InputStream}.
+     *
+     * @param input    an {@link InputStream} that contains a valid/parsable {@link Envelope}. This InputStream will be
+     *                 closed after reading.
+     * @param listener the {@link EnvelopeReadListener} to receive {@link SignatureContent}s while reading.
+     * @return An instance of {@link Envelope} based on the data from {@link InputStream}. Does not verify
+     *         the envelope/signature(s).
+     * @throws InvalidEnvelopeException when the {@link InputStream} does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     * @throws IOException              when errors occur accessing data in provided {@link InputStream}.
+     */
+    public Envelope read(InputStream input, EnvelopeReadListener listener) throws IOException, InvalidEnvelopeException {
+        Util.notNull(listener, "Envelope read listener");
+        return readInputStream(input, listener);
+    }
+
+    /**
+     * Parses a {@link SeekableByteChannel} to produce an {@link Envelope}. Implementations that support random access
+     * read only the entries that are needed for parsing the structure of the {@link Envelope} and leave the content of
+     * documents to be read from the channel when it is accessed.
+     *
+     * @param channel a {@link SeekableByteChannel} that contains a valid/parsable {@link Envelope}. The channel will be
+     *                closed once no content of the envelope refers to it. The content of the channel must not be
+     *                modified while the {@link Envelope} is in use.
+     * @return An instance of {@link Envelope} based on the data from {@link SeekableByteChannel}. Does not verify
+     *         the envelope/signature(s).
+     * @throws InvalidEnvelopeException when the {@link SeekableByteChannel} does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     * @throws IOException              when errors occur accessing data in provided {@link SeekableByteChannel}.
+     */
+    public Envelope read(SeekableByteChannel channel) throws IOException, InvalidEnvelopeException {
+        return readChannel(channel, null);
+    }
+
+    /**
+     * Parses a {@link SeekableByteChannel} to produce an {@link Envelope} and provides each {@link SignatureContent} to
+     * listener as soon as all entries it consists of have been read from the channel. See
+     * {@link #read(SeekableByteChannel)} for details on handling of the channel.
+     *
+     * @param channel  a {@link SeekableByteChannel} that contains a valid/parsable {@link Envelope}.
+     * @param listener the {@link EnvelopeReadListener} to receive {@link SignatureContent}s while reading.
+     * @return An instance of {@link Envelope} based on the data from {@link SeekableByteChannel}. Does not verify
+     *         the envelope/signature(s).
+     * @throws InvalidEnvelopeException when the {@link SeekableByteChannel} does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     * @throws IOException              when errors occur accessing data in provided {@link SeekableByteChannel}.
+     */
+    public Envelope read(SeekableByteChannel channel, EnvelopeReadListener listener)
+            throws IOException, InvalidEnvelopeException {
+        Util.notNull(listener, "Envelope read listener");
+        return readChannel(channel, listener);
+    }
+
+    /**
+     * Parses a file or a directory to produce an {@link Envelope}. Files are read as {@link SeekableByteChannel}, see
+     * {@link #read(SeekableByteChannel)}. Directories are read by implementations that keep the entries of an
+     * {@link Envelope} as files in a directory tree.
+     *
+     * @param path path to a file or a directory that contains a valid/parsable {@link Envelope}. The content must not be
+     *             modified while the {@link Envelope} is in use.
+     * @return An instance of {@link Envelope} based on the data from provided path. Does not verify
+     *         the envelope/signature(s).
+     * @throws InvalidEnvelopeException when the path does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     * @throws IOException              when errors occur accessing data in provided path.
+     */
+    public Envelope read(Path path) throws IOException, InvalidEnvelopeException {
+        Util.notNull(path, "Path");
+        if (!Files.isDirectory(path)) {
+            return read(Files.newByteChannel(path, StandardOpenOption.READ));
+        }
+        EnvelopeReadingException readingException = new EnvelopeReadingException("Reading envelope encountered errors!");
+        ParsingStoreSession parsingStoreSession = createSession();
+        try {
+            parseDirectory(path, parsingStoreSession, readingException);
+        } catch (IOException | RuntimeException e) {
+            parsingStoreSession.clear();
+            throw e;
+        }
+        return compose(parsingStoreSession, readingException, null);
+    }
+
+    /**
+     * Parses the remaining bytes of a {@link ByteBuffer} to produce an {@link Envelope}. Implementations that support random
+     * access avoid copying the content of entries that are stored uncompressed and refer to the buffer instead.
+     *
+     * @param buffer a {@link ByteBuffer} that contains a valid/parsable {@link Envelope} between its position and limit.
+     *               The position of the buffer is not changed. The content of the buffer must not be modified while the
+     *               {@link Envelope} is in use.
+     * @return An instance of {@link Envelope} based on the data from {@link ByteBuffer}. Does not verify
+     *         the envelope/signature(s).
+     * @throws InvalidEnvelopeException when the {@link ByteBuffer} does not contain a parsable {@link Envelope}.
+     * @throws EnvelopeReadingException when there were issues parsing some elements of the {@link Envelope}. The parsed
+     *         envelope and all encountered exceptions can be retrieved from this exception.
+     * @throws IOException              when errors occur accessing data in provided {@link ByteBuffer}.
+     */
+    public Envelope read(ByteBuffer buffer) throws IOException, InvalidEnvelopeException {
+        Util.notNull(buffer, "Buffer");
+        EnvelopeReadingException readingException = new EnvelopeReadingException("Reading envelope encountered errors!");
+        ParsingStoreSession parsingStoreSession = createSession();
+        try {
+            parseBuffer(buffer.duplicate(), parsingStoreSession, readingException);
+        } catch (IOException | RuntimeException e) {
+            parsingStoreSession.clear();
+            throw e;
+        }
+        return compose(parsingStoreSession, readingException, null);
+    }
+
+    /**
+     * Parses only the MIME type, manifests and signatures from an {@link InputStream} to produce an {@link EnvelopeSummary}.
+     * Document and annotation data entries are skipped without storing them.
+     *
+     * @param input an {@link InputStream} that contains a valid/parsable {@link Envelope}. This InputStream will be closed
+     *              after reading.
+     * @return An instance of {@link EnvelopeSummary} based on the data from {@link InputStream}. Does not verify
+     *         the envelope/signature(s).
+     * @throws InvalidEnvelopeException when the {@link InputStream} does not contain a parsable {@link Envelope}.
+     * @throws IOException              when errors occur accessing data in provided {@link InputStream}.
+     */
+    public EnvelopeSummary inspect(InputStream input) throws IOException, InvalidEnvelopeException {
+        EnvelopeReadingException readingException = new EnvelopeReadingException("Reading envelope encountered errors!");
+        ParsingStoreSession parsingStoreSession = createInspectionSession();
+        try {
+            parseInputStream(parsingStoreSession.trackArchiveBytes(input), parsingStoreSession, readingException);
+        } catch (IOException | RuntimeException e) {
+            parsingStoreSession.clear();
+            throw e;
+        }
+        return summarize(parsingStoreSession, readingException);
+    }
+
+    /**
+     * Parses only the MIME type, manifests and signatures from a {@link SeekableByteChannel} to produce an
+     * {@link EnvelopeSummary}. Document and annotation data entries are skipped without reading them where the format
+     * allows. The channel is closed once the summary has been composed.
+     *
+     * @param channel a {@link SeekableByteChannel} that contains a valid/parsable {@link Envelope}.
+     * @return An instance of {@link EnvelopeSummary} based on the data from the channel. Does not verify the
+     *         envelope/signature(s).
+     * @throws InvalidEnvelopeException when the {@link SeekableByteChannel} does not contain a parsable {@link Envelope}.
+     * @throws IOException              when errors occur accessing data in provided {@link SeekableByteChannel}.
+     */
+    public EnvelopeSummary inspect(SeekableByteChannel channel) throws IOException, InvalidEnvelopeException {
+        Util.notNull(channel, "Channel");
+        EnvelopeReadingException readingException = new EnvelopeReadingException("Reading envelope encountered errors!");
+        ParsingStoreSession parsingStoreSession = createInspectionSession();
+        try (SeekableByteChannel input = channel) {
+            parseChannel(input, parsingStoreSession, readingException);
+        } catch (IOException | RuntimeException e) {
+            parsingStoreSession.clear();
+            throw e;
+        }
+        return summarize(parsingStoreSession, readingException);
+    }
+
+    /**
+     * Provides content of a single document from a {@link SeekableByteChannel} containing an {@link Envelope}. Only the
+     * manifests and the requested document are accessed, no other document is read or stored. The document must be
+     * referenced by a documents manifest of the {@link Envelope}.
+     *
+     * @param channel      a {@link SeekableByteChannel} that contains a valid/parsable {@link Envelope}. The channel will be
+     *                     closed once the returned {@link InputStream} is closed or when extracting fails.
+     * @param documentName name of the document to be extracted.
+     * @param verifyHash   if true, the content of the document is verified against its hash in the documents manifest
+     *                     while it is read and an {@link IOException} is thrown at the end of the content on mismatch.
+     * @return An {@link InputStream} of the document content that must be closed by the caller.
+     * @throws InvalidEnvelopeException when the {@link SeekableByteChannel} does not contain a parsable {@link Envelope} or
+     *                                  the {@link Envelope} does not contain the requested document.
+     * @throws IOException              when errors occur accessing data in provided {@link SeekableByteChannel}.
+     */
+    public InputStream extractDocument(SeekableByteChannel channel, final String documentName, boolean verifyHash)
+            throws IOException, InvalidEnvelopeException {
+        Util.notNull(channel, "Channel");
+        Util.notNull(documentName, "Document name");
         EnvelopeReadingException readingException = new EnvelopeReadingException("Reading envelope encountered errors!");
         ParsingStoreSession parsingStoreSession = new ParsingStoreSession(parsingStore);
-        parseInputStream(input, parsingStoreSession, readingException);
+        parsingStoreSession.setLimits(parsingLimits);
+        parsingStoreSession.setEntryFilter(new ParsingStoreSession.EntryFilter() {
+            @Override
+            public boolean accepts(String name) {
+                return name.equals(documentName) || isMetadataEntry(name);
+            }
+        });
+        ParsingStoreReference documentReference = null;
+        boolean extracted = false;
+        try {
+            parseChannel(channel, parsingStoreSession, readingException);
+            checkParsingLimits(parsingStoreSession);
+            EnvelopeElementExtractor envelopeElementExtractor =
+                    new EnvelopeElementExtractor(manifestFactory, signatureFactory, parsingStoreSession);
+            validateMimeType(envelopeElementExtractor);
+            FileReference fileReference = findDocumentReference(envelopeElementExtractor, documentName);
+            if (fileReference == null) {
+                throw new InvalidEnvelopeException("No document '" + documentName + "' referenced in envelope!");
+            }
+            if (!parsingStoreSession.contains(documentName)) {
+                throw new InvalidEnvelopeException("Document '" + documentName + "' is not present in envelope!");
+            }
+            DataHash expectedHash = verifyHash ? getTrustedHash(fileReference) : null;
+            documentReference = parsingStoreSession.getReference(documentName);
+            InputStream input = new ExtractedDocumentInputStream(documentReference, channel, documentName, expectedHash);
+            extracted = true;
+            return input;
+        } finally {
+            if (!extracted && documentReference != null) {
+                documentReference.unstore();
+            }
+            parsingStoreSession.clear();
+            if (!extracted) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Checks the structure of an {@link Envelope} in a {@link SeekableByteChannel} without storing any of its entries, so
+     * that malformed envelopes can be rejected before reading them. Checks that the MIME type is valid and that there is
+     * at least one manifest and each manifest can be parsed and refers to a documents manifest and a signature that are
+     * present. Content of documents, annotations and signatures is not verified. Default implementation inspects the
+     * envelope sequentially, implementations should only access the entries needed for the checks.
+     *
+     * @param channel a {@link SeekableByteChannel} that contains an {@link Envelope}. The channel is not closed, but its
+     *                position may change.
+     * @throws InvalidEnvelopeException when the structure of the {@link Envelope} is not valid.
+     * @throws IOException              when errors occur accessing data in provided {@link SeekableByteChannel}.
+     */
+    public void preValidate(SeekableByteChannel channel) throws IOException, InvalidEnvelopeException {
+        Util.notNull(channel, "Channel");
+        EnvelopeSummary summary = inspect(new FilterInputStream(Channels.newInputStream(channel)) {
+            @Override
+            public void close() {
+                // Channel is left open for the caller.
+            }
+        });
+        for (EnvelopeSummary.SignatureContentSummary content : summary.getSignatureContents()) {
+            if (content.getDocumentsManifest() == null || content.getSignature() == null) {
+                throw new InvalidEnvelopeException("Manifest '" + content.getManifestUri() + "' refers to missing entries!");
+            }
+        }
+        if (!summary.getExceptions().isEmpty()) {
+            throw new InvalidEnvelopeException("Parsing manifests of envelope failed!", summary.getExceptions().get(0));
+        }
+    }
+
+    /**
+     * Creates an {@link EnvelopePushParser} for parsing an {@link Envelope} from data that is pushed to it piece by piece.
+     */
+    public EnvelopePushParser createPushParser() {
+        return createPushParser(null);
+    }
+
+    /**
+     * Creates an {@link EnvelopePushParser} for parsing an {@link Envelope} from data that is pushed to it piece by piece.
+     * Each {@link SignatureContent} is provided to listener as soon as all entries it consists of have been fed to the
+     * parser.
+     *
+     * @param listener the {@link EnvelopeReadListener} to receive {@link SignatureContent}s while parsing, can be null.
+     */
+    public EnvelopePushParser createPushParser(EnvelopeReadListener listener) {
+        EnvelopeReadingException readingException = new EnvelopeReadingException("Reading envelope encountered errors!");
+        ParsingStoreSession parsingStoreSession = createSession();
+        SignatureContentEmitter emitter = createEmitter(parsingStoreSession, listener, readingException);
+        EntryDecoder decoder = createEntryDecoder(parsingStoreSession, readingException);
+        return new EnvelopePushParser(this, parsingStoreSession, readingException, emitter, decoder);
+    }
+
+    private Envelope readInputStream(InputStream input, EnvelopeReadListener listener)
+            throws IOException, InvalidEnvelopeException {
+        EnvelopeReadingException readingException = new EnvelopeReadingException("Reading envelope encountered errors!");
+        ParsingStoreSession parsingStoreSession = createSession();
+        SignatureContentEmitter emitter = createEmitter(parsingStoreSession, listener, readingException);
+        try {
+            parseInputStream(parsingStoreSession.trackArchiveBytes(input), parsingStoreSession, readingException);
+        } catch (IOException | RuntimeException e) {
+            parsingStoreSession.clear();
+            throw e;
+        }
+        return compose(parsingStoreSession, readingException, emitter);
+    }
+
+    private Envelope readChannel(SeekableByteChannel channel, EnvelopeReadListener listener)
+            throws IOException, InvalidEnvelopeException {
+        Util.notNull(channel, "Channel");
+        EnvelopeReadingException readingException = new EnvelopeReadingException("Reading envelope encountered errors!");
+        ParsingStoreSession parsingStoreSession = createSession();
+        SignatureContentEmitter emitter = createEmitter(parsingStoreSession, listener, readingException);
+        try {
+            parseChannel(channel, parsingStoreSession, readingException);
+        } catch (IOException | RuntimeException e) {
+            parsingStoreSession.clear();
+            throw e;
+        }
+        return compose(parsingStoreSession, readingException, emitter);
+    }
+
+    private ParsingStoreSession createSession() {
+        HashAlgorithmProvider algorithmProvider = manifestFactory.getHashAlgorithmProvider();
+        Set<HashAlgorithm> algorithms = new LinkedHashSet<>(algorithmProvider.getDocumentReferenceHashAlgorithms());
+        algorithms.add(algorithmProvider.getAnnotationDataReferenceHashAlgorithm());
+        ParsingStoreSession session = new ParsingStoreSession(parsingStore, new ArrayList<>(algorithms));
+        session.setLimits(parsingLimits);
+        return session;
+    }
+
+    private ParsingStoreSession createInspectionSession() {
+        ParsingStoreSession session = new ParsingStoreSession(parsingStore);
+        session.setLimits(parsingLimits);
+        session.setEntryFilter(new ParsingStoreSession.EntryFilter() {
+            @Override
+            public boolean accepts(String name) {
+                return isMetadataEntry(name);
+            }
+        });
+        return session;
+    }
+
+    private SignatureContentEmitter createEmitter(ParsingStoreSession parsingStoreSession, EnvelopeReadListener listener,
+                                                  EnvelopeReadingException readingException) {
+        if (listener == null) {
+            return null;
+        }
         EnvelopeElementExtractor envelopeElementExtractor =
                 new EnvelopeElementExtractor(manifestFactory, signatureFactory, parsingStoreSession);
+        SignatureContentEmitter emitter = new SignatureContentEmitter(
+                envelopeElementExtractor,
+                parsingStoreSession,
+                listener,
+                readingException,
+                getMimeType()
+        );
+        parsingStoreSession.setStoreListener(emitter);
+        return emitter;
+    }
 
-        validateMimeType(envelopeElementExtractor);
-        List<SignatureContent> contents = buildSignatures(envelopeElementExtractor, readingException, parsingStoreSession);
-        if (contents.isEmpty()) {
-            throw new InvalidEnvelopeException("No valid signature content parsed!");
+    Envelope compose(ParsingStoreSession parsingStoreSession, EnvelopeReadingException readingException,
+                             SignatureContentEmitter emitter) throws InvalidEnvelopeException {
+        List<SignatureContent> contents;
+        List<UnknownDocument> unknownFiles;
+        try {
+            parsingStoreSession.setStoreListener(null);
+            checkParsingLimits(parsingStoreSession);
+            EnvelopeElementExtractor envelopeElementExtractor =
+                    new EnvelopeElementExtractor(manifestFactory, signatureFactory, parsingStoreSession);
+
+            validateMimeType(envelopeElementExtractor);
+            if (emitter == null) {
+                contents = buildSignatures(envelopeElementExtractor, readingException, parsingStoreSession,
+                        Collections.<String>emptySet());
+            } else {
+                contents = emitter.complete(buildSignatures(envelopeElementExtractor, readingException, parsingStoreSession,
+                        emitter.getComposedManifests()));
+            }
+            if (contents.isEmpty()) {
+                throw new InvalidEnvelopeException("No valid signature content parsed!");
+            }
+            unknownFiles = getAndLogUnknownFiles(parsingStoreSession);
+        } finally {
+            parsingStoreSession.clear();
         }
-        List<UnknownDocument> unknownFiles = getAndLogUnknownFiles(parsingStoreSession);
-        parsingStoreSession.clear();
         Envelope envelope = new Envelope(contents, unknownFiles);
         readingException.setEnvelope(envelope);
 
@@ -102,6 +523,69 @@ public abstract class EnvelopeReader {
         return envelope;
     }
 
+    private EnvelopeSummary summarize(ParsingStoreSession parsingStoreSession, EnvelopeReadingException readingException)
+            throws InvalidEnvelopeException {
+        List<Throwable> exceptions = new LinkedList<>(readingException.getExceptions());
+        List<EnvelopeSummary.SignatureContentSummary> contents = new LinkedList<>();
+        try {
+            checkParsingLimits(parsingStoreSession);
+            EnvelopeElementExtractor envelopeElementExtractor =
+                    new EnvelopeElementExtractor(manifestFactory, signatureFactory, parsingStoreSession);
+            validateMimeType(envelopeElementExtractor);
+            SignatureContentSummarizer summarizer = new SignatureContentSummarizer(envelopeElementExtractor);
+            for (String manifestUri : envelopeElementExtractor.getManifestUris()) {
+                try {
+                    contents.add(summarizer.summarize(manifestUri, exceptions));
+                } catch (ContentParsingException e) {
+                    LOGGER.debug("Parsing SignatureContent failed for '{}'. Reason: '{}'", manifestUri, e.getMessage());
+                    exceptions.add(e);
+                }
+            }
+        } finally {
+            parsingStoreSession.clear();
+        }
+        if (contents.isEmpty()) {
+            throw new InvalidEnvelopeException("No valid signature content parsed!");
+        }
+        return new EnvelopeSummary(contents, exceptions);
+    }
+
+    private void checkParsingLimits(ParsingStoreSession parsingStoreSession) throws InvalidEnvelopeException {
+        ParsingStoreException violation = parsingStoreSession.getLimitViolation();
+        if (violation != null) {
+            throw new InvalidEnvelopeException("Envelope exceeds parsing limits!", violation);
+        }
+    }
+
+    private FileReference findDocumentReference(EnvelopeElementExtractor envelopeElementExtractor, String documentName) {
+        for (String manifestUri : new TreeSet<>(envelopeElementExtractor.getManifestUris())) {
+            try {
+                Manifest manifest = envelopeElementExtractor.getManifest(manifestUri);
+                DocumentsManifest documentsManifest =
+                        envelopeElementExtractor.getDocumentsManifest(manifest.getDocumentsManifestReference().getUri());
+                for (FileReference reference : documentsManifest.getDocumentReferences()) {
+                    if (documentName.equals(reference.getUri())) {
+                        return reference;
+                    }
+                }
+            } catch (ContentParsingException e) {
+                LOGGER.debug("Parsing documents manifest failed for '{}'. Reason: '{}'", manifestUri, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private DataHash getTrustedHash(FileReference reference) throws InvalidEnvelopeException {
+        if (reference.getHashList() != null) {
+            for (DataHash hash : reference.getHashList()) {
+                if (hash.getAlgorithm().getStatus() == HashAlgorithm.Status.NORMAL) {
+                    return hash;
+                }
+            }
+        }
+        throw new InvalidEnvelopeException("No trusted hash for document '" + reference.getUri() + "' in documents manifest!");
+    }
+
     private List<UnknownDocument> getAndLogUnknownFiles(ParsingStoreSession session) {
         List<UnknownDocument> result = session.getUnrequestedFiles();
         for (UnknownDocument doc : result) {
@@ -121,6 +605,81 @@ public abstract class EnvelopeReader {
                                              EnvelopeReadingException readingException)
             throws IOException;
 
+    /**
+     * Processes channel containing envelope and stores each entry in envelope to parsing store. Default implementation
+     * reads the channel sequentially with {@link #parseInputStream(InputStream, ParsingStoreSession, EnvelopeReadingException)}.
+     * @param channel          {@link SeekableByteChannel} containing {@link Envelope}. Implementation must make sure the
+     *                         channel gets closed once the content stored from it is no longer in use.
+     * @param storeSession     stores all parsed entries.
+     * @param readingException holds all expectable exceptions if any occurs.
+     * @throws IOException     when error occurs during accessing of channel.
+     */
+    protected void parseChannel(SeekableByteChannel channel, ParsingStoreSession storeSession,
+                                EnvelopeReadingException readingException) throws IOException {
+        parseInputStream(storeSession.trackArchiveBytes(Channels.newInputStream(channel)), storeSession, readingException);
+    }
+
+    /**
+     * Processes buffer containing envelope and stores each entry in envelope to parsing store. Default implementation
+     * reads the buffer sequentially with {@link #parseInputStream(InputStream, ParsingStoreSession, EnvelopeReadingException)}.
+     * @param buffer           {@link ByteBuffer} containing {@link Envelope} between its position and limit. Implementation
+     *                         may keep references to the buffer in stored entries instead of copying their content.
+     * @param storeSession     stores all parsed entries.
+     * @param readingException holds all expectable exceptions if any occurs.
+     * @throws IOException     when error occurs during accessing of buffer.
+     */
+    protected void parseBuffer(ByteBuffer buffer, ParsingStoreSession storeSession,
+                               EnvelopeReadingException readingException) throws IOException {
+        parseInputStream(storeSession.trackArchiveBytes(Channels.newInputStream(new ByteBufferChannel(buffer))), storeSession,
+                readingException);
+    }
+
+    /**
+     * Processes directory containing the entries of an envelope as files and stores each entry to parsing store. Default
+     * implementation does not support directories.
+     * @param directory        {@link Path} of the directory containing {@link Envelope}.
+     * @param storeSession     stores all parsed entries.
+     * @param readingException holds all expectable exceptions if any occurs.
+     * @throws IOException     when error occurs during accessing of directory or when directories are not supported.
+     */
+    protected void parseDirectory(Path directory, ParsingStoreSession storeSession,
+                                  EnvelopeReadingException readingException) throws IOException {
+        throw new IOException("Reading envelope from directory '" + directory + "' is not supported!");
+    }
+
+    /**
+     * Creates {@link EntryDecoder} for {@link EnvelopePushParser}. Default implementation collects all data in memory and
+     * parses it with {@link #parseInputStream(InputStream, ParsingStoreSession, EnvelopeReadingException)} once all data
+     * has been provided; implementations should decode entries incrementally instead.
+     * @param storeSession     stores all parsed entries.
+     * @param readingException holds all expectable exceptions if any occurs.
+     */
+    protected EntryDecoder createEntryDecoder(final ParsingStoreSession storeSession,
+                                              final EnvelopeReadingException readingException) {
+        return new EntryDecoder() {
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            @Override
+            public void decode(ByteBuffer data) {
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                buffer.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                byte[] bytes = buffer.toByteArray();
+                buffer = null;
+                parseInputStream(new ByteArrayInputStream(bytes), storeSession, readingException);
+            }
+
+            @Override
+            public void abort() {
+                buffer = null;
+            }
+        };
+    }
+
     private boolean containsValidContents(List<SignatureContent> signatureContents) {
         for (SignatureContent content : signatureContents) {
             if (containsManifest(content) ||
@@ -162,10 +721,25 @@ public abstract class EnvelopeReader {
 
     protected abstract String getMimeType();
 
+    /**
+     * @return true if entry with provided name holds MIME type, a manifest or a signature of the {@link Envelope} and not
+     * document or annotation data.
+     */
+    protected boolean isMetadataEntry(String name) {
+        return name.equals(MIME_TYPE_ENTRY_NAME) ||
+                (name.startsWith(META_INF + "/") && !name.endsWith(ANNOTATION_DATA_SUFFIX));
+    }
+
     private List<SignatureContent> buildSignatures(EnvelopeElementExtractor envelopeElementExtractor,
                                                    EnvelopeReadingException readingException,
-                                                   ParsingStoreSession parsingStoreSession) {
+                                                   ParsingStoreSession parsingStoreSession,
+                                                   Set<String> composedManifestUris) throws InvalidEnvelopeException {
         Set<String> parsedManifestUriSet = envelopeElementExtractor.getManifestUris();
+        parsedManifestUriSet.removeAll(composedManifestUris);
+        if (signatureContentExecutor != null && parsedManifestUriSet.size() > 1) {
+            return buildSignaturesConcurrently(envelopeElementExtractor, readingException, parsingStoreSession,
+                    parsedManifestUriSet);
+        }
         SignatureContentComposer signatureContentComposer = new SignatureContentComposer(envelopeElementExtractor);
         List<SignatureContent> signatures = new LinkedList<>();
         for (String manifestUri : parsedManifestUriSet) {
@@ -182,4 +756,141 @@ public abstract class EnvelopeReader {
         return signatures;
     }
 
+    private List<SignatureContent> buildSignaturesConcurrently(final EnvelopeElementExtractor envelopeElementExtractor,
+                                                               EnvelopeReadingException readingException,
+                                                               final ParsingStoreSession parsingStoreSession,
+                                                               Set<String> manifestUris) throws InvalidEnvelopeException {
+        Map<String, SignatureContentTask> tasks = new LinkedHashMap<>();
+        for (final String manifestUri : manifestUris) {
+            SignatureContentTask task = new SignatureContentTask(
+                    new Callable<Pair<SignatureContent, List<Throwable>>>() {
+                        @Override
+                        public Pair<SignatureContent, List<Throwable>> call() throws ContentParsingException {
+                            return new SignatureContentComposer(envelopeElementExtractor)
+                                    .compose(manifestUri, parsingStoreSession);
+                        }
+                    });
+            tasks.put(manifestUri, task);
+            try {
+                signatureContentExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                closeSignatureContents(discard(tasks.values()));
+                throw e;
+            }
+        }
+
+        List<SignatureContent> signatures = new LinkedList<>();
+        RuntimeException failure = null;
+        Iterator<Map.Entry<String, SignatureContentTask>> iterator = tasks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, SignatureContentTask> task = iterator.next();
+            try {
+                Pair<SignatureContent, List<Throwable>> signatureContentVectorPair = task.getValue().get();
+                signatures.add(signatureContentVectorPair.getLeft());
+                readingException.addExceptions(signatureContentVectorPair.getRight());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ContentParsingException) {
+                    LOGGER.debug("Parsing SignatureContent failed for '{}'. Reason: '{}'", task.getKey(), cause.getMessage());
+                    readingException.addException(cause);
+                } else if (failure == null) {
+                    failure = cause instanceof RuntimeException ?
+                            (RuntimeException) cause : new IllegalStateException("Composing SignatureContent failed!", cause);
+                }
+            } catch (InterruptedException e) {
+                List<SignatureContentTask> remaining = new LinkedList<>();
+                remaining.add(task.getValue());
+                while (iterator.hasNext()) {
+                    remaining.add(iterator.next().getValue());
+                }
+                signatures.addAll(discard(remaining));
+                closeSignatureContents(signatures);
+                Thread.currentThread().interrupt();
+                throw new InvalidEnvelopeException("Interrupted while parsing signature contents!", e);
+            }
+        }
+        if (failure != null) {
+            closeSignatureContents(signatures);
+            throw failure;
+        }
+        return signatures;
+    }
+
+    /**
+     * Prevents tasks that have not started from running and waits for the running ones to finish.
+     *
+     * @return {@link SignatureContent}s composed by the tasks that had already started.
+     */
+    private List<SignatureContent> discard(Collection<SignatureContentTask> tasks) {
+        List<SignatureContent> signatures = new LinkedList<>();
+        for (SignatureContentTask task : tasks) {
+            SignatureContent signatureContent = task.discard();
+            if (signatureContent != null) {
+                signatures.add(signatureContent);
+            }
+        }
+        return signatures;
+    }
+
+    private void closeSignatureContents(List<SignatureContent> signatures) {
+        for (SignatureContent signatureContent : signatures) {
+            try {
+                signatureContent.close();
+            } catch (Exception e) {
+                LOGGER.debug("Failed to close SignatureContent!", e);
+            }
+        }
+    }
+
+    private static final class SignatureContentTask extends FutureTask<Pair<SignatureContent, List<Throwable>>> {
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private SignatureContentTask(Callable<Pair<SignatureContent, List<Throwable>>> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Prevents the task from running or, when it has already started, waits for it to finish.
+         *
+         * @return Composed {@link SignatureContent} or null when the task did not run or failed.
+         */
+        private SignatureContent discard() {
+            if (started.compareAndSet(false, true)) {
+                cancel(false);
+                return null;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            try {
+                return get().getLeft();
+            } catch (ExecutionException | InterruptedException | CancellationException e) {
+                return null;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
 }
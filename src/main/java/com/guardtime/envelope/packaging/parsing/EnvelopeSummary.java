@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing;
+
+import com.guardtime.envelope.manifest.AnnotationsManifest;
+import com.guardtime.envelope.manifest.DocumentsManifest;
+import com.guardtime.envelope.manifest.FileReference;
+import com.guardtime.envelope.manifest.Manifest;
+import com.guardtime.envelope.manifest.SingleAnnotationManifest;
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.signature.EnvelopeSignature;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lightweight description of an {@link Envelope} that is built from its manifests and signatures only. Does not contain
+ * any document or annotation data.
+ */
+public class EnvelopeSummary {
+
+    private final List<SignatureContentSummary> signatureContents;
+    private final List<Throwable> exceptions;
+
+    EnvelopeSummary(List<SignatureContentSummary> signatureContents, List<Throwable> exceptions) {
+        this.signatureContents = Collections.unmodifiableList(new ArrayList<>(signatureContents));
+        this.exceptions = Collections.unmodifiableList(new ArrayList<>(exceptions));
+    }
+
+    public List<SignatureContentSummary> getSignatureContents() {
+        return signatureContents;
+    }
+
+    /**
+     * @return Exceptions encountered while parsing manifests or signatures of the envelope.
+     */
+    public List<Throwable> getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * Manifests and signature of a single signature content of an {@link Envelope}. Elements that could not be parsed are
+     * null.
+     */
+    public static class SignatureContentSummary {
+
+        private final String manifestUri;
+        private final Manifest manifest;
+        private final DocumentsManifest documentsManifest;
+        private final AnnotationsManifest annotationsManifest;
+        private final List<SingleAnnotationManifest> singleAnnotationManifests;
+        private final EnvelopeSignature signature;
+
+        SignatureContentSummary(String manifestUri, Manifest manifest, DocumentsManifest documentsManifest,
+                                AnnotationsManifest annotationsManifest,
+                                List<SingleAnnotationManifest> singleAnnotationManifests, EnvelopeSignature signature) {
+            this.manifestUri = manifestUri;
+            this.manifest = manifest;
+            this.documentsManifest = documentsManifest;
+            this.annotationsManifest = annotationsManifest;
+            this.singleAnnotationManifests = Collections.unmodifiableList(new ArrayList<>(singleAnnotationManifests));
+            this.signature = signature;
+        }
+
+        public String getManifestUri() {
+            return manifestUri;
+        }
+
+        public Manifest getManifest() {
+            return manifest;
+        }
+
+        public DocumentsManifest getDocumentsManifest() {
+            return documentsManifest;
+        }
+
+        public AnnotationsManifest getAnnotationsManifest() {
+            return annotationsManifest;
+        }
+
+        public List<SingleAnnotationManifest> getSingleAnnotationManifests() {
+            return singleAnnotationManifests;
+        }
+
+        public EnvelopeSignature getSignature() {
+            return signature;
+        }
+
+        /**
+         * @return References to documents, containing document names, MIME types and hashes, or an empty list if documents
+         * manifest could not be parsed.
+         */
+        public List<? extends FileReference> getDocumentReferences() {
+            if (documentsManifest == null) {
+                return Collections.emptyList();
+            }
+            return documentsManifest.getDocumentReferences();
+        }
+
+        /**
+         * @return Domains of all annotations whose manifests could be parsed.
+         */
+        public List<String> getAnnotationDomains() {
+            List<String> domains = new ArrayList<>();
+            for (SingleAnnotationManifest annotationManifest : singleAnnotationManifests) {
+                domains.add(annotationManifest.getAnnotationReference().getDomain());
+            }
+            return domains;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing;
+
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreReference;
+import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.DataHasher;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+
+/**
+ * Provides content of a single document extracted from an envelope. Optionally verifies the content against the expected
+ * {@link DataHash} once the end of the content is reached. Closing the stream releases the stored content and closes the
+ * source the envelope was read from.
+ */
+class ExtractedDocumentInputStream extends FilterInputStream {
+
+    private final ParsingStoreReference reference;
+    private final Closeable source;
+    private final String documentName;
+    private final DataHash expectedHash;
+    private final DataHasher hasher;
+    private boolean verified = false;
+    private boolean closed = false;
+
+    /**
+     * @param source       source of the envelope, closed once the stream is closed.
+     * @param expectedHash hash to verify the content against, can be null if content is not verified.
+     */
+    ExtractedDocumentInputStream(ParsingStoreReference reference, Closeable source, String documentName,
+                                 DataHash expectedHash) throws IOException {
+        super(reference.getStoredContent());
+        this.reference = reference;
+        this.source = source;
+        this.documentName = documentName;
+        this.expectedHash = expectedHash;
+        this.hasher = expectedHash == null ? null : new DataHasher(expectedHash.getAlgorithm());
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value == -1) {
+            verify();
+        } else if (hasher != null) {
+            hasher.addData(new byte[]{(byte) value}, 0, 1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int count = super.read(bytes, offset, length);
+        if (count == -1) {
+            verify();
+        } else if (hasher != null) {
+            hasher.addData(bytes, offset, count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        if (hasher == null) {
+            return super.skip(count);
+        }
+        return Util.skipByReading(this, count);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        // Not supported, hash would not match the content.
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            reference.unstore();
+            source.close();
+        }
+    }
+
+    private void verify() throws IOException {
+        if (hasher == null || verified) {
+            return;
+        }
+        if (!expectedHash.equals(hasher.getHash())) {
+            throw new IOException("Content of document '" + documentName + "' does not match its hash in documents manifest!");
+        }
+        verified = true;
+    }
+
+}
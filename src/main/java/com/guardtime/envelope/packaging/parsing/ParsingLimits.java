@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing;
+
+import com.guardtime.envelope.packaging.Envelope;
+
+/**
+ * Limits for resources used for storing the entries of a single parsed {@link Envelope}. Parsing is stopped and the
+ * {@link Envelope} is rejected as soon as any of the limits is exceeded.
+ */
+public final class ParsingLimits {
+
+    /**
+     * Limits that allow any number of entries of any size.
+     */
+    public static final ParsingLimits UNLIMITED = new Builder().build();
+
+    private final int maxEntryCount;
+    private final long maxEntrySize;
+    private final long maxTotalSize;
+    private final double maxCompressionRatio;
+
+    private ParsingLimits(Builder builder) {
+        this.maxEntryCount = builder.maxEntryCount;
+        this.maxEntrySize = builder.maxEntrySize;
+        this.maxTotalSize = builder.maxTotalSize;
+        this.maxCompressionRatio = builder.maxCompressionRatio;
+    }
+
+    public int getMaxEntryCount() {
+        return maxEntryCount;
+    }
+
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    public double getMaxCompressionRatio() {
+        return maxCompressionRatio;
+    }
+
+    public static class Builder {
+        private int maxEntryCount = Integer.MAX_VALUE;
+        private long maxEntrySize = Long.MAX_VALUE;
+        private long maxTotalSize = Long.MAX_VALUE;
+        private double maxCompressionRatio = Double.POSITIVE_INFINITY;
+
+        /**
+         * @param count maximum number of entries stored for an {@link Envelope}.
+         */
+        public Builder withMaxEntryCount(int count) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Maximum entry count can not be negative!");
+            }
+            this.maxEntryCount = count;
+            return this;
+        }
+
+        /**
+         * @param size maximum number of uncompressed bytes stored for a single entry.
+         */
+        public Builder withMaxEntrySize(long size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("Maximum entry size can not be negative!");
+            }
+            this.maxEntrySize = size;
+            return this;
+        }
+
+        /**
+         * @param size maximum number of uncompressed bytes stored for all entries of an {@link Envelope}.
+         */
+        public Builder withMaxTotalSize(long size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("Maximum total size can not be negative!");
+            }
+            this.maxTotalSize = size;
+            return this;
+        }
+
+        /**
+         * @param ratio maximum ratio of stored uncompressed bytes to the bytes read from the archive. Checked once more than
+         *              {@link ParsingStoreSession#COMPRESSION_RATIO_THRESHOLD} bytes have been stored, so that small
+         *              well compressed entries are not rejected.
+         */
+        public Builder withMaxCompressionRatio(double ratio) {
+            if (!(ratio >= 1)) {
+                throw new IllegalArgumentException("Maximum compression ratio must be at least 1!");
+            }
+            this.maxCompressionRatio = ratio;
+            return this;
+        }
+
+        public ParsingLimits build() {
+            return new ParsingLimits(this);
+        }
+    }
+
+}
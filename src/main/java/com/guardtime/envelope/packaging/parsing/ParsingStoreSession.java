@@ -24,28 +24,57 @@ import com.guardtime.envelope.document.UnknownDocument;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStoreException;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStoreReference;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreSink;
 import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.HashAlgorithm;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Keeps track of content passed to {@link ParsingStore} and allows for easier retrieval of such content.
+ * Keeps track of content passed to {@link ParsingStore} and allows for easier retrieval of such content. Thread-safe, so
+ * stored content can be retrieved concurrently.
  */
 public class ParsingStoreSession {
+    /**
+     * Number of stored bytes after which {@link ParsingLimits#getMaxCompressionRatio()} is enforced.
+     */
+    public static final long COMPRESSION_RATIO_THRESHOLD = 1024 * 1024;
+
     private final ParsingStore store;
-    private final Map<String, ParsingStoreReference> references = new HashMap<>();
-    private final Set<String> requestedKeys = new HashSet<>();
+    private final List<HashAlgorithm> hashAlgorithms;
+    private final ConcurrentMap<String, ParsingStoreReference> references = new ConcurrentHashMap<>();
+    private final Set<String> requestedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     private DocumentFactory documentFactory;
+    private StoreListener storeListener;
+    private EntryFilter entryFilter;
+    private ParsingLimits limits = ParsingLimits.UNLIMITED;
+    private final AtomicInteger entryCount = new AtomicInteger();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong archiveBytes = new AtomicLong();
+    private volatile ParsingStoreException limitViolation;
 
     ParsingStoreSession(ParsingStore store) {
+        this(store, Collections.<HashAlgorithm>emptyList());
+    }
+
+    /**
+     * @param hashAlgorithms {@link HashAlgorithm}s to hash all stored data with while it is being stored.
+     */
+    ParsingStoreSession(ParsingStore store, List<HashAlgorithm> hashAlgorithms) {
         Util.notNull(store, "Parsing store");
+        Util.notNull(hashAlgorithms, "Hash algorithms");
         this.store = store;
+        this.hashAlgorithms = new ArrayList<>(hashAlgorithms);
         this.documentFactory = new DocumentFactory(store);
     }
 
@@ -63,6 +92,14 @@ public class ParsingStoreSession {
         return new ArrayList<>(references.keySet());
     }
 
+    /**
+     * @return false if entry with provided name is not needed by this session and should be skipped without storing it.
+     * Entries that are not accepted are silently ignored by the store methods of this session.
+     */
+    public boolean accepts(String name) {
+        return entryFilter == null || entryFilter.accepts(name);
+    }
+
     public boolean contains(String path) {
         return references.containsKey(path);
     }
@@ -73,7 +110,8 @@ public class ParsingStoreSession {
     }
 
     /**
-     * Stores provided data at key into {@link ParsingStore}.
+     * Stores provided data at key into {@link ParsingStore}. The data is hashed while it is being stored with the
+     * {@link HashAlgorithm}s of this session.
      * @param name  the key at which to store the data; usually a filename.
      * @param input data to be stored.
      * @throws ParsingStoreException When an error occurs storing the data. Can also mean that the key is already in use.
@@ -81,11 +119,204 @@ public class ParsingStoreSession {
      * envelope parsing there shouldn't occur any duplicate keys.
      */
     public void store(String name, InputStream input) throws ParsingStoreException {
+        store(name, input, ParsingStore.UNKNOWN_SIZE);
+    }
+
+    /**
+     * Stores provided data at key into {@link ParsingStore} as {@link #store(String, InputStream)} does.
+     * @param name         the key at which to store the data; usually a filename.
+     * @param input        data to be stored.
+     * @param expectedSize expected number of bytes in input, e.g. from the header of an envelope entry, or
+     *                     {@link ParsingStore#UNKNOWN_SIZE}.
+     * @throws ParsingStoreException When an error occurs storing the data or the key is already in use.
+     */
+    public void store(String name, InputStream input, long expectedSize) throws ParsingStoreException {
+        if (!accepts(name)) {
+            return;
+        }
+        if (contains(name)) {
+            throw new ParsingStoreException("Key '" + name + "' already used for storage!");
+        }
+        countEntry(name);
+        ParsingStoreReference ref;
+        try {
+            ref = store.store(new LimitedInputStream(input, name), name, hashAlgorithms, expectedSize);
+        } catch (ParsingStoreException e) {
+            throw limitViolation != null ? limitViolation : e;
+        }
+        if (references.putIfAbsent(name, ref) != null) {
+            ref.unstore();
+            throw new ParsingStoreException("Key '" + name + "' already used for storage!");
+        }
+        notifyStored(name);
+    }
+
+    /**
+     * Opens a {@link ParsingStoreSink} for storing data at key into {@link ParsingStore} as it becomes available. The data
+     * is hashed while it is being written with the {@link HashAlgorithm}s of this session. Once the sink is completed the
+     * resulting reference must be added to this session with {@link #store(String, ParsingStoreReference)}.
+     * @param name the key at which the data will be stored; usually a filename.
+     * @throws ParsingStoreException When the key is already in use or the store can not accept new data.
+     */
+    public ParsingStoreSink openSink(String name) throws ParsingStoreException {
+        return openSink(name, ParsingStore.UNKNOWN_SIZE);
+    }
+
+    /**
+     * Opens a {@link ParsingStoreSink} as {@link #openSink(String)} does, for data of expected size.
+     * @param name         the key at which the data will be stored; usually a filename.
+     * @param expectedSize expected number of bytes to be written or {@link ParsingStore#UNKNOWN_SIZE}.
+     * @throws ParsingStoreException When the key is already in use or the store can not accept new data.
+     */
+    public ParsingStoreSink openSink(String name, long expectedSize) throws ParsingStoreException {
         if (contains(name)) {
             throw new ParsingStoreException("Key '" + name + "' already used for storage!");
         }
-        ParsingStoreReference ref = store.store(input, name);
-        references.put(name, ref);
+        countEntry(name);
+        return store.openSink(name, hashAlgorithms, expectedSize);
+    }
+
+    /**
+     * Adds content that has already been stored to a {@link ParsingStore} to this session. The session takes ownership of
+     * the provided reference and unstores it once the session is cleared.
+     * @param name      the key at which to register the content; usually a filename.
+     * @param reference reference to stored content.
+     * @throws ParsingStoreException When the key is already in use. In that case the provided reference is unstored.
+     */
+    public void store(String name, ParsingStoreReference reference) throws ParsingStoreException {
+        Util.notNull(reference, "Parsing store reference");
+        if (!accepts(name)) {
+            reference.unstore();
+            return;
+        }
+        try {
+            countEntry(name);
+        } catch (ParsingStoreException e) {
+            reference.unstore();
+            throw e;
+        }
+        if (references.putIfAbsent(name, reference) != null) {
+            reference.unstore();
+            throw new ParsingStoreException("Key '" + name + "' already used for storage!");
+        }
+        notifyStored(name);
+    }
+
+    /**
+     * Sets the listener to be notified after each entry that is added to this session.
+     */
+    void setStoreListener(StoreListener listener) {
+        this.storeListener = listener;
+    }
+
+    /**
+     * Accounts for data of an entry written to a {@link ParsingStoreSink} opened with {@link #openSink(String)}. Must be
+     * called before the data is written to the sink.
+     * @param name       the key of the entry.
+     * @param entryBytes number of bytes of the entry including the data to be written.
+     * @param count      number of bytes to be written.
+     * @throws ParsingStoreException when writing the data would exceed {@link ParsingLimits} of this session.
+     */
+    public void countStoredBytes(String name, long entryBytes, long count) throws ParsingStoreException {
+        checkLimits();
+        if (entryBytes > limits.getMaxEntrySize()) {
+            throw violate("Entry '" + name + "' exceeds maximum size of " + limits.getMaxEntrySize() + " bytes!");
+        }
+        long total = storedBytes.addAndGet(count);
+        if (total > limits.getMaxTotalSize()) {
+            throw violate("Envelope exceeds maximum total size of " + limits.getMaxTotalSize() + " bytes!");
+        }
+        long archive = archiveBytes.get();
+        if (total > COMPRESSION_RATIO_THRESHOLD && archive > 0 && total > limits.getMaxCompressionRatio() * archive) {
+            throw violate("Envelope exceeds maximum compression ratio of " + limits.getMaxCompressionRatio() + "!");
+        }
+    }
+
+    /**
+     * Accounts for bytes read from the (compressed) archive of the envelope, used for enforcing
+     * {@link ParsingLimits#getMaxCompressionRatio()}.
+     */
+    public void countArchiveBytes(long count) {
+        archiveBytes.addAndGet(count);
+    }
+
+    /**
+     * @return {@link InputStream} that accounts for all bytes read from input with {@link #countArchiveBytes(long)}.
+     */
+    InputStream trackArchiveBytes(InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value != -1) {
+                    countArchiveBytes(1);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int count = super.read(bytes, offset, length);
+                if (count > 0) {
+                    countArchiveBytes(count);
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * @return true if any of the {@link ParsingLimits} of this session has been exceeded. No more entries are accepted
+     * for storing in that case and parsing should be stopped.
+     */
+    public boolean isLimitExceeded() {
+        return limitViolation != null;
+    }
+
+    /**
+     * @return the exception describing the first exceeded limit or null if no limit has been exceeded.
+     */
+    ParsingStoreException getLimitViolation() {
+        return limitViolation;
+    }
+
+    void setLimits(ParsingLimits limits) {
+        Util.notNull(limits, "Parsing limits");
+        this.limits = limits;
+    }
+
+    private void countEntry(String name) throws ParsingStoreException {
+        checkLimits();
+        if (entryCount.incrementAndGet() > limits.getMaxEntryCount()) {
+            throw violate("Envelope exceeds maximum entry count of " + limits.getMaxEntryCount() + " at '" + name + "'!");
+        }
+    }
+
+    private void checkLimits() throws ParsingStoreException {
+        ParsingStoreException violation = limitViolation;
+        if (violation != null) {
+            throw violation;
+        }
+    }
+
+    private synchronized ParsingStoreException violate(String message) {
+        if (limitViolation == null) {
+            limitViolation = new ParsingStoreException(message);
+        }
+        return limitViolation;
+    }
+
+    /**
+     * Sets the filter that decides which entries are stored in this session.
+     */
+    void setEntryFilter(EntryFilter filter) {
+        this.entryFilter = filter;
+    }
+
+    private void notifyStored(String name) {
+        if (storeListener != null) {
+            storeListener.stored(name);
+        }
     }
 
     /**
@@ -101,4 +332,59 @@ public class ParsingStoreSession {
     ParsingStore getParsingStore() {
         return store;
     }
+
+    /**
+     * Enforces {@link ParsingLimits} on data read through it.
+     */
+    private class LimitedInputStream extends FilterInputStream {
+        private final String name;
+        private long entryBytes;
+
+        LimitedInputStream(InputStream input, String name) {
+            super(input);
+            this.name = name;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = super.read(bytes, offset, length);
+            if (count > 0) {
+                count(count);
+            }
+            return count;
+        }
+
+        private void count(int count) throws IOException {
+            entryBytes += count;
+            try {
+                countStoredBytes(name, entryBytes, count);
+            } catch (ParsingStoreException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Listener for entries being added to {@link ParsingStoreSession}. Entries may be stored concurrently, so
+     * implementations must be thread-safe.
+     */
+    interface StoreListener {
+        void stored(String name);
+    }
+
+    /**
+     * Filter for entries to be stored in {@link ParsingStoreSession}.
+     */
+    interface EntryFilter {
+        boolean accepts(String name);
+    }
 }
@@ -93,9 +93,27 @@ class SignatureContentComposer {
             this.documentsManifest = getDocumentsManifest();
             this.annotationsManifest = getAnnotationsManifest();
 
-            populateAnnotationsWithManifests();
-            populateDocuments();
-            fetchSignature();
+            try {
+                populateAnnotationsWithManifests();
+                populateDocuments();
+                fetchSignature();
+            } catch (RuntimeException e) {
+                closeElements();
+                throw e;
+            }
+        }
+
+        private void closeElements() {
+            List<AutoCloseable> elements = new LinkedList<>();
+            elements.addAll(documents);
+            elements.addAll(annotations);
+            for (AutoCloseable element : elements) {
+                try {
+                    element.close();
+                } catch (Exception e) {
+                    logger.debug("Failed to close envelope element!", e);
+                }
+            }
         }
 
         private Manifest getManifest(String manifestPath) throws ContentParsingException {
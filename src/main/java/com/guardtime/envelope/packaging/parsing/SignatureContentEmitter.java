@@ -0,0 +1,223 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing;
+
+import com.guardtime.envelope.manifest.AnnotationsManifest;
+import com.guardtime.envelope.manifest.DocumentsManifest;
+import com.guardtime.envelope.manifest.FileReference;
+import com.guardtime.envelope.manifest.Manifest;
+import com.guardtime.envelope.manifest.SingleAnnotationManifest;
+import com.guardtime.envelope.packaging.SignatureContent;
+import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
+import com.guardtime.envelope.packaging.parsing.handler.ContentParsingException;
+import com.guardtime.envelope.util.Pair;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.guardtime.envelope.packaging.EnvelopeWriter.MIME_TYPE_ENTRY_NAME;
+
+/**
+ * Follows entries being added to {@link ParsingStoreSession} and composes a {@link SignatureContent} as soon as all the
+ * entries it refers to have been stored. Composed contents are passed on to {@link EnvelopeReadListener}.
+ * <p>
+ * Each manifest that can not yet be composed waits for the first missing entry it refers to, so a manifest is checked
+ * again only when that entry arrives. Manifests that fail to parse are left to be composed once reading has finished.
+ * </p>
+ */
+class SignatureContentEmitter implements ParsingStoreSession.StoreListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignatureContentEmitter.class);
+
+    private final EnvelopeElementExtractor extractor;
+    private final SignatureContentComposer composer;
+    private final ParsingStoreSession session;
+    private final EnvelopeReadListener listener;
+    private final EnvelopeReadingException readingException;
+    private final String mimeType;
+    private final Map<String, List<String>> waitingManifests = new HashMap<>();
+    private final Map<String, Object> parsedManifests = new HashMap<>();
+    private final Set<String> composedManifests = new LinkedHashSet<>();
+    private final List<SignatureContent> contents = new LinkedList<>();
+    private boolean validMimeType = false;
+
+    SignatureContentEmitter(EnvelopeElementExtractor extractor, ParsingStoreSession session, EnvelopeReadListener listener,
+                            EnvelopeReadingException readingException, String mimeType) {
+        this.extractor = extractor;
+        this.composer = new SignatureContentComposer(extractor);
+        this.session = session;
+        this.listener = listener;
+        this.readingException = readingException;
+        this.mimeType = mimeType;
+    }
+
+    @Override
+    public synchronized void stored(String name) {
+        if (name.equals(MIME_TYPE_ENTRY_NAME)) {
+            validMimeType = isValidMimeType();
+        }
+        if (extractor.isManifest(name)) {
+            tryCompose(name);
+        }
+        List<String> waiting = waitingManifests.remove(name);
+        if (waiting != null) {
+            for (String manifestUri : waiting) {
+                tryCompose(manifestUri);
+            }
+        }
+    }
+
+    /**
+     * @return URIs of manifests for which {@link SignatureContent} has been composed.
+     */
+    Set<String> getComposedManifests() {
+        return composedManifests;
+    }
+
+    /**
+     * @return All {@link SignatureContent}s composed so far, in the order they were provided to the listener.
+     */
+    List<SignatureContent> getContents() {
+        return contents;
+    }
+
+    /**
+     * Provides the contents composed after reading has finished to the listener.
+     *
+     * @param remaining {@link SignatureContent}s that were not composed while reading.
+     * @return All {@link SignatureContent}s of the envelope.
+     */
+    List<SignatureContent> complete(List<SignatureContent> remaining) {
+        for (SignatureContent content : remaining) {
+            listener.onSignatureContent(content);
+        }
+        List<SignatureContent> result = new LinkedList<>(contents);
+        result.addAll(remaining);
+        return result;
+    }
+
+    private boolean isValidMimeType() {
+        try {
+            return new String(extractor.getMimeTypeContent()).equals(mimeType);
+        } catch (ContentParsingException e) {
+            return false;
+        }
+    }
+
+    private void tryCompose(String manifestUri) {
+        String missing;
+        try {
+            missing = findMissingEntry(manifestUri);
+        } catch (ContentParsingException | RuntimeException e) {
+            logger.debug("Postponing SignatureContent for '{}' until end of envelope. Reason: '{}'", manifestUri, e.getMessage());
+            return;
+        }
+        if (missing != null) {
+            List<String> waiting = waitingManifests.get(missing);
+            if (waiting == null) {
+                waiting = new ArrayList<>();
+                waitingManifests.put(missing, waiting);
+            }
+            waiting.add(manifestUri);
+            return;
+        }
+        try {
+            Pair<SignatureContent, List<Throwable>> composed = composer.compose(manifestUri, session);
+            readingException.addExceptions(composed.getRight());
+            composedManifests.add(manifestUri);
+            contents.add(composed.getLeft());
+            listener.onSignatureContent(composed.getLeft());
+        } catch (ContentParsingException e) {
+            logger.debug("Postponing SignatureContent for '{}' until end of envelope. Reason: '{}'", manifestUri, e.getMessage());
+        }
+    }
+
+    /**
+     * @return Name of the first entry referred to by the manifest that has not been stored yet or null if all entries are
+     * present.
+     */
+    private String findMissingEntry(String manifestUri) throws ContentParsingException {
+        if (!validMimeType) {
+            return MIME_TYPE_ENTRY_NAME;
+        }
+        Manifest manifest = parse(manifestUri, Manifest.class);
+        String documentsManifestUri = manifest.getDocumentsManifestReference().getUri();
+        if (!session.contains(documentsManifestUri)) {
+            return documentsManifestUri;
+        }
+        DocumentsManifest documentsManifest = parse(documentsManifestUri, DocumentsManifest.class);
+        for (FileReference reference : documentsManifest.getDocumentReferences()) {
+            if (reference.getUri() != null && !session.contains(reference.getUri())) {
+                return reference.getUri();
+            }
+        }
+        String annotationsManifestUri = manifest.getAnnotationsManifestReference().getUri();
+        if (!session.contains(annotationsManifestUri)) {
+            return annotationsManifestUri;
+        }
+        AnnotationsManifest annotationsManifest = parse(annotationsManifestUri, AnnotationsManifest.class);
+        for (FileReference reference : annotationsManifest.getSingleAnnotationManifestReferences()) {
+            String singleAnnotationManifestUri = reference.getUri();
+            if (!session.contains(singleAnnotationManifestUri)) {
+                return singleAnnotationManifestUri;
+            }
+            SingleAnnotationManifest singleAnnotationManifest =
+                    parse(singleAnnotationManifestUri, SingleAnnotationManifest.class);
+            String annotationUri = singleAnnotationManifest.getAnnotationReference().getUri();
+            if (!session.contains(annotationUri)) {
+                return annotationUri;
+            }
+        }
+        String signatureUri = manifest.getSignatureReference().getUri();
+        if (!session.contains(signatureUri)) {
+            return signatureUri;
+        }
+        return null;
+    }
+
+    private <T> T parse(String uri, Class<T> type) throws ContentParsingException {
+        Object parsed = parsedManifests.get(uri);
+        if (parsed == null) {
+            if (type == Manifest.class) {
+                parsed = extractor.getManifest(uri);
+            } else if (type == DocumentsManifest.class) {
+                parsed = extractor.getDocumentsManifest(uri);
+            } else if (type == AnnotationsManifest.class) {
+                parsed = extractor.getAnnotationsManifest(uri);
+            } else {
+                parsed = extractor.getSingleAnnotationManifest(uri);
+            }
+            parsedManifests.put(uri, parsed);
+        }
+        if (!type.isInstance(parsed)) {
+            throw new ContentParsingException("Entry '" + uri + "' is not of expected type!");
+        }
+        return type.cast(parsed);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing;
+
+import com.guardtime.envelope.manifest.AnnotationsManifest;
+import com.guardtime.envelope.manifest.DocumentsManifest;
+import com.guardtime.envelope.manifest.FileReference;
+import com.guardtime.envelope.manifest.Manifest;
+import com.guardtime.envelope.manifest.SingleAnnotationManifest;
+import com.guardtime.envelope.packaging.parsing.handler.ContentParsingException;
+import com.guardtime.envelope.signature.EnvelopeSignature;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Composes {@link EnvelopeSummary.SignatureContentSummary} from manifests and signatures in {@link ParsingStoreSession}
+ * without accessing document or annotation data.
+ */
+class SignatureContentSummarizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignatureContentSummarizer.class);
+
+    private final EnvelopeElementExtractor handler;
+
+    SignatureContentSummarizer(EnvelopeElementExtractor envelopeElementExtractor) {
+        this.handler = envelopeElementExtractor;
+    }
+
+    EnvelopeSummary.SignatureContentSummary summarize(String manifestPath, List<Throwable> exceptions)
+            throws ContentParsingException {
+        Manifest manifest = handler.getManifest(manifestPath);
+        DocumentsManifest documentsManifest = null;
+        AnnotationsManifest annotationsManifest = null;
+        List<SingleAnnotationManifest> singleAnnotationManifests = new LinkedList<>();
+        EnvelopeSignature signature = null;
+        try {
+            documentsManifest = handler.getDocumentsManifest(manifest.getDocumentsManifestReference().getUri());
+        } catch (ContentParsingException e) {
+            exceptions.add(e);
+        }
+        try {
+            annotationsManifest = handler.getAnnotationsManifest(manifest.getAnnotationsManifestReference().getUri());
+            for (FileReference reference : annotationsManifest.getSingleAnnotationManifestReferences()) {
+                try {
+                    singleAnnotationManifests.add(handler.getSingleAnnotationManifest(reference.getUri()));
+                } catch (ContentParsingException e) {
+                    logger.debug("Failed to parse manifest for '{}'. Reason: {}", reference.getUri(), e.getMessage());
+                    exceptions.add(e);
+                }
+            }
+        } catch (ContentParsingException e) {
+            exceptions.add(e);
+        }
+        try {
+            signature = handler.getEnvelopeSignature(manifest.getSignatureReference().getUri());
+        } catch (ContentParsingException e) {
+            exceptions.add(e);
+        }
+        return new EnvelopeSummary.SignatureContentSummary(manifestPath, manifest, documentsManifest, annotationsManifest,
+                singleAnnotationManifests, signature);
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.packaging.Envelope;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps data of parsed in {@link Envelope} in memory compressed with deflate and inflates it on access. Whether an entry is
+ * compressed is decided by compressing a sample from its beginning, entries that are small or do not compress well, e.g.
+ * already compressed images, are kept as they are.
+ * <p>
+ * NB! There is no protection against large data. Use with care!
+ * </p>
+ */
+public class CompressedMemoryParsingStore extends ParsingStore {
+
+    public static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+    private static final int SAMPLE_SIZE = 4 * 1024;
+    private static final double MAXIMUM_SAMPLE_RATIO = 0.8;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final int minimumSize;
+    private final int compressionLevel;
+    private final Map<UUID, Entry> store = new ConcurrentHashMap<>();
+    private final AtomicLong storedSize = new AtomicLong();
+    private final AtomicLong contentSize = new AtomicLong();
+
+    public CompressedMemoryParsingStore() {
+        this(DEFAULT_MINIMUM_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param minimumSize      size in bytes below which entries are not compressed.
+     * @param compressionLevel {@link Deflater} compression level used for compressed entries.
+     */
+    public CompressedMemoryParsingStore(int minimumSize, int compressionLevel) {
+        if (minimumSize < 0) {
+            throw new IllegalArgumentException("Minimum size must not be negative");
+        }
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        this.minimumSize = minimumSize;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream) throws IOException {
+        byte[] head = readUpTo(stream, Math.max(SAMPLE_SIZE, minimumSize));
+        Entry entry;
+        if (head.length < minimumSize || !isCompressible(head)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(head.length);
+            buffer.write(head);
+            long length = head.length + copy(stream, buffer);
+            entry = new Entry(buffer.toByteArray(), false, length);
+        } else {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(head.length / 2);
+            Deflater deflater = new Deflater(compressionLevel);
+            try (DeflaterOutputStream output = new DeflaterOutputStream(buffer, deflater, COPY_BUFFER_SIZE)) {
+                output.write(head);
+                long length = head.length + copy(stream, output);
+                output.finish();
+                entry = new Entry(buffer.toByteArray(), true, length);
+            } finally {
+                deflater.end();
+            }
+        }
+        store.put(uuid, entry);
+        storedSize.addAndGet(entry.data.length);
+        contentSize.addAndGet(entry.length);
+    }
+
+    private boolean isCompressible(byte[] head) {
+        int sampleLength = Math.min(head.length, SAMPLE_SIZE);
+        int limit = (int) (sampleLength * MAXIMUM_SAMPLE_RATIO);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(head, 0, sampleLength);
+            deflater.finish();
+            byte[] compressed = new byte[limit + 1];
+            int size = 0;
+            while (!deflater.finished() && size <= limit) {
+                size += deflater.deflate(compressed, size, compressed.length - size);
+            }
+            return deflater.finished() && size <= limit;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] readUpTo(InputStream stream, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int total = 0;
+        while (total < length) {
+            int count = stream.read(bytes, total, length - total);
+            if (count == -1) {
+                break;
+            }
+            total += count;
+        }
+        if (total == length) {
+            return bytes;
+        }
+        byte[] result = new byte[total];
+        System.arraycopy(bytes, 0, result, 0, total);
+        return result;
+    }
+
+    private static long copy(InputStream input, OutputStream output) throws IOException {
+        byte[] bytes = new byte[COPY_BUFFER_SIZE];
+        long total = 0;
+        int count = input.read(bytes);
+        while (count != -1) {
+            output.write(bytes, 0, count);
+            total += count;
+            count = input.read(bytes);
+        }
+        return total;
+    }
+
+    @Override
+    public InputStream getContent(UUID uuid) {
+        Entry entry = store.get(uuid);
+        if (entry == null) {
+            throw new IllegalStateException("Parsing store has lost content for ID '" + uuid.toString() + "'");
+        }
+        InputStream stream = new ByteArrayInputStream(entry.data);
+        return entry.compressed ? new InflaterInputStream(stream) : stream;
+    }
+
+    @Override
+    protected void clearStore(UUID uuid) {
+        Entry entry = store.remove(uuid);
+        if (entry != null) {
+            storedSize.addAndGet(-entry.data.length);
+            contentSize.addAndGet(-entry.length);
+        }
+    }
+
+    /**
+     * @return Total size in bytes of entries kept in memory, as they are kept.
+     */
+    public long getStoredSize() {
+        return storedSize.get();
+    }
+
+    /**
+     * @return Total size in bytes of entries kept in memory, as they were stored.
+     */
+    public long getContentSize() {
+        return contentSize.get();
+    }
+
+    private static final class Entry {
+        private final byte[] data;
+        private final boolean compressed;
+        private final long length;
+
+        private Entry(byte[] data, boolean compressed, long length) {
+            this.data = data;
+            this.compressed = compressed;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a single copy of identical data of parsed in {@link Envelope}s. Content is keyed by its {@link DataHash}, which is
+ * calculated while the content is being stored. When content with the same {@link DataHash} is already kept, the new copy
+ * is discarded and the existing one is shared, until all content referring to it has been unstored.
+ * <p>
+ * The content is kept in a backing {@link ParsingStore}, which must not be used directly by anything else.
+ * </p>
+ */
+public class ContentAddressedParsingStore extends ParsingStore {
+
+    public static final HashAlgorithm DEFAULT_HASH_ALGORITHM = HashAlgorithm.SHA2_256;
+
+    private final ParsingStore backingStore;
+    private final HashAlgorithm algorithm;
+    private final Map<UUID, Blob> store = new ConcurrentHashMap<>();
+    private final Map<DataHash, Blob> blobs = new HashMap<>();
+
+    public ContentAddressedParsingStore() {
+        this(new TemporaryFileBasedParsingStore());
+    }
+
+    /**
+     * @param backingStore {@link ParsingStore} to keep unique content in.
+     */
+    public ContentAddressedParsingStore(ParsingStore backingStore) {
+        this(backingStore, DEFAULT_HASH_ALGORITHM);
+    }
+
+    /**
+     * @param backingStore {@link ParsingStore} to keep unique content in.
+     * @param algorithm    {@link HashAlgorithm} used for identifying identical content.
+     */
+    public ContentAddressedParsingStore(ParsingStore backingStore, HashAlgorithm algorithm) {
+        Util.notNull(backingStore, "Backing parsing store");
+        Util.notNull(algorithm, "Hash algorithm");
+        this.backingStore = backingStore;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream) throws IOException {
+        storeInternal(uuid, stream, UNKNOWN_SIZE);
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream, long expectedSize) throws IOException {
+        UUID blobId = UUID.randomUUID();
+        DigestingInputStream digestingStream = new DigestingInputStream(stream, Collections.singletonList(algorithm));
+        backingStore.storeInternal(blobId, digestingStream, expectedSize);
+        share(uuid, blobId, digestingStream.getDataHashes().get(algorithm));
+    }
+
+    @Override
+    ContentWriter openContentWriter(UUID uuid) throws IOException {
+        return openContentWriter(uuid, UNKNOWN_SIZE);
+    }
+
+    @Override
+    ContentWriter openContentWriter(final UUID uuid, long expectedSize) throws IOException {
+        final UUID blobId = UUID.randomUUID();
+        final ContentWriter writer = backingStore.openContentWriter(blobId, expectedSize);
+        final MultiDataHasher hasher = new MultiDataHasher(Collections.singletonList(algorithm));
+        return new ContentWriter() {
+            @Override
+            public void write(ByteBuffer data) throws IOException {
+                ByteBuffer hashed = data.duplicate();
+                writer.write(data);
+                if (hashed.hasArray()) {
+                    hasher.addData(hashed.array(), hashed.arrayOffset() + hashed.position(), hashed.remaining());
+                } else {
+                    byte[] bytes = new byte[hashed.remaining()];
+                    hashed.get(bytes);
+                    hasher.addData(bytes, 0, bytes.length);
+                }
+            }
+
+            @Override
+            public void commit() throws IOException {
+                writer.commit();
+                share(uuid, blobId, hasher.getDataHashes().get(algorithm));
+            }
+
+            @Override
+            public void abort() {
+                writer.abort();
+            }
+        };
+    }
+
+    private void share(UUID uuid, UUID blobId, DataHash dataHash) {
+        if (dataHash == null) {
+            // Content can not be identified, keep it on its own
+            store.put(uuid, new Blob(blobId, null));
+            return;
+        }
+        Blob blob;
+        boolean duplicate;
+        synchronized (blobs) {
+            blob = blobs.get(dataHash);
+            duplicate = blob != null;
+            if (duplicate) {
+                blob.references++;
+            } else {
+                blob = new Blob(blobId, dataHash);
+                blobs.put(dataHash, blob);
+            }
+        }
+        store.put(uuid, blob);
+        if (duplicate) {
+            backingStore.clearStore(blobId);
+        }
+    }
+
+    @Override
+    public InputStream getContent(UUID uuid) {
+        Blob blob = store.get(uuid);
+        if (blob == null) {
+            throw new IllegalStateException("Parsing store has lost content for ID '" + uuid.toString() + "'");
+        }
+        return backingStore.getContent(blob.id);
+    }
+
+    @Override
+    protected void clearStore(UUID uuid) {
+        Blob blob = store.remove(uuid);
+        if (blob == null) {
+            return;
+        }
+        if (blob.dataHash != null) {
+            synchronized (blobs) {
+                blob.references--;
+                if (blob.references > 0) {
+                    return;
+                }
+                blobs.remove(blob.dataHash);
+            }
+        }
+        backingStore.clearStore(blob.id);
+    }
+
+    /**
+     * Closes the backing store.
+     */
+    @Override
+    public void close() {
+        store.clear();
+        synchronized (blobs) {
+            blobs.clear();
+        }
+        backingStore.close();
+    }
+
+    /**
+     * @return Number of unique contents currently kept in the backing store.
+     */
+    int getUniqueContentCount() {
+        synchronized (blobs) {
+            return blobs.size();
+        }
+    }
+
+    private static final class Blob {
+        private final UUID id;
+        private final DataHash dataHash;
+        private int references = 1;
+
+        private Blob(UUID id, DataHash dataHash) {
+            this.id = id;
+            this.dataHash = dataHash;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Calculates {@link DataHash}es of all data read through it. The hashes are available once the underlying stream has
+ * been read to its end.
+ */
+class DigestingInputStream extends FilterInputStream {
+
+    private final MultiDataHasher hasher;
+    private boolean endReached = false;
+
+    DigestingInputStream(InputStream input, Collection<HashAlgorithm> algorithms) {
+        super(input);
+        this.hasher = new MultiDataHasher(algorithms);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value == -1) {
+            endReached = true;
+        } else {
+            hasher.addData(new byte[]{(byte) value}, 0, 1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int count = super.read(bytes, offset, length);
+        if (count == -1) {
+            endReached = true;
+        } else {
+            hasher.addData(bytes, offset, count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        return Util.skipByReading(this, count);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        // Not supported, hashes would not match the content.
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark/reset not supported");
+    }
+
+    /**
+     * @return Hashes of all the data in the underlying stream or an empty map when the stream has not been read to its end.
+     */
+    Map<HashAlgorithm, DataHash> getDataHashes() {
+        if (!endReached) {
+            return Collections.emptyMap();
+        }
+        return hasher.getDataHashes();
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps data of parsed in {@link Envelope} in memory as long as each entry stays within a size threshold and all entries
+ * kept in memory stay within a memory budget. Other entries are spilled to a disk store, by default to temporary files in
+ * system temp folder, see {@link TemporaryFileBasedParsingStore}. Entries with an expected size over the threshold are
+ * written to the disk store directly.
+ * <p>
+ * NB! Does not provide protection against malicious file modification in temp folder. Use with care!
+ * </p>
+ */
+public class HybridParsingStore extends ParsingStore {
+
+    public static final long DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+    public static final long DEFAULT_MEMORY_BUDGET = 64 * 1024 * 1024;
+
+    private final long memoryThreshold;
+    private final long memoryBudget;
+    private final AtomicLong memoryUsed = new AtomicLong();
+    private final Map<UUID, byte[]> memoryStore = new ConcurrentHashMap<>();
+    private final ParsingStore diskStore;
+
+    public HybridParsingStore() {
+        this(DEFAULT_MEMORY_THRESHOLD, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param memoryThreshold maximum size in bytes of a single entry kept in memory.
+     * @param memoryBudget    maximum total size in bytes of all entries kept in memory.
+     */
+    public HybridParsingStore(long memoryThreshold, long memoryBudget) {
+        this(new TemporaryFileBasedParsingStore(), memoryThreshold, memoryBudget);
+    }
+
+    /**
+     * @param diskStore       {@link ParsingStore} entries not kept in memory are spilled to. Is closed together with this store.
+     * @param memoryThreshold maximum size in bytes of a single entry kept in memory.
+     * @param memoryBudget    maximum total size in bytes of all entries kept in memory.
+     */
+    public HybridParsingStore(ParsingStore diskStore, long memoryThreshold, long memoryBudget) {
+        Util.notNull(diskStore, "Disk parsing store");
+        if (memoryThreshold < 0 || memoryThreshold >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Memory threshold must be between 0 and " + (Integer.MAX_VALUE - 1));
+        }
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+        this.memoryThreshold = memoryThreshold;
+        this.memoryBudget = memoryBudget;
+        this.diskStore = diskStore;
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream) throws IOException {
+        storeInternal(uuid, stream, UNKNOWN_SIZE);
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream, long expectedSize) throws IOException {
+        if (expectedSize > memoryThreshold) {
+            diskStore.storeInternal(uuid, stream, expectedSize);
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(expectedSize > 0 ? (int) expectedSize : 32);
+        byte[] bytes = new byte[8192];
+        long limit = memoryThreshold + 1;
+        while (buffer.size() < limit) {
+            int count = stream.read(bytes, 0, (int) Math.min(bytes.length, limit - buffer.size()));
+            if (count == -1) {
+                break;
+            }
+            buffer.write(bytes, 0, count);
+        }
+        byte[] data = buffer.toByteArray();
+        if (data.length <= memoryThreshold && reserve(data.length)) {
+            memoryStore.put(uuid, data);
+        } else {
+            diskStore.storeInternal(uuid, new SequenceInputStream(new ByteArrayInputStream(data), stream), expectedSize);
+        }
+    }
+
+    @Override
+    ContentWriter openContentWriter(UUID uuid) throws IOException {
+        return openContentWriter(uuid, UNKNOWN_SIZE);
+    }
+
+    @Override
+    ContentWriter openContentWriter(final UUID uuid, final long expectedSize) throws IOException {
+        if (expectedSize > memoryThreshold) {
+            return diskStore.openContentWriter(uuid, expectedSize);
+        }
+        return new ContentWriter() {
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            private ContentWriter diskWriter;
+
+            @Override
+            public void write(ByteBuffer data) throws IOException {
+                if (diskWriter == null && buffer.size() + data.remaining() > memoryThreshold) {
+                    diskWriter = diskStore.openContentWriter(uuid, expectedSize);
+                    diskWriter.write(ByteBuffer.wrap(buffer.toByteArray()));
+                    buffer = null;
+                }
+                if (diskWriter != null) {
+                    diskWriter.write(data);
+                } else if (data.hasArray()) {
+                    buffer.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                    data.position(data.limit());
+                } else {
+                    byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    buffer.write(bytes, 0, bytes.length);
+                }
+            }
+
+            @Override
+            public void commit() throws IOException {
+                if (diskWriter != null) {
+                    diskWriter.commit();
+                    return;
+                }
+                byte[] data = buffer.toByteArray();
+                buffer = null;
+                if (reserve(data.length)) {
+                    memoryStore.put(uuid, data);
+                } else {
+                    diskStore.storeInternal(uuid, new ByteArrayInputStream(data), data.length);
+                }
+            }
+
+            @Override
+            public void abort() {
+                buffer = null;
+                if (diskWriter != null) {
+                    diskWriter.abort();
+                }
+            }
+        };
+    }
+
+    private boolean reserve(long size) {
+        while (true) {
+            long used = memoryUsed.get();
+            if (used + size > memoryBudget) {
+                return false;
+            }
+            if (memoryUsed.compareAndSet(used, used + size)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return Total size in bytes of entries currently kept in memory.
+     */
+    public long getMemoryUsed() {
+        return memoryUsed.get();
+    }
+
+    @Override
+    public InputStream getContent(UUID uuid) {
+        byte[] bytes = memoryStore.get(uuid);
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return diskStore.getContent(uuid);
+    }
+
+    @Override
+    protected void clearStore(UUID uuid) {
+        byte[] bytes = memoryStore.remove(uuid);
+        if (bytes != null) {
+            memoryUsed.addAndGet(-bytes.length);
+        } else {
+            diskStore.clearStore(uuid);
+        }
+    }
+
+    @Override
+    public void close() {
+        memoryStore.clear();
+        memoryUsed.set(0);
+        diskStore.close();
+    }
+
+}
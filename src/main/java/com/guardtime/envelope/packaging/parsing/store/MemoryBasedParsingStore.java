@@ -24,9 +24,9 @@ import com.guardtime.ksi.util.Util;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Keeps parsed data in memory.
@@ -36,7 +36,7 @@ import java.util.UUID;
  */
 public class MemoryBasedParsingStore extends ParsingStore {
 
-    private Map<UUID, byte[]> store = new HashMap<>();
+    private Map<UUID, byte[]> store = new ConcurrentHashMap<>();
 
     @Override
     void storeInternal(UUID uuid, InputStream stream) throws IOException {
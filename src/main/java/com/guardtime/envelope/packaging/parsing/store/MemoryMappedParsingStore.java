@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.util.ByteBufferInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uses temporary files in system temp folder for maintaining data of parsed in {@link Envelope} and serves the data from
+ * memory-mapped views of these files. Each file is mapped when its content is first requested, so repeated reads for
+ * hashing and comparing copy the data directly from the page cache without system calls. Files larger than 2 GB are read
+ * as in {@link TemporaryFileBasedParsingStore}.
+ * <p>
+ * NB! Does not provide protection against malicious file modification in temp folder. Mapped memory is released by the
+ * garbage collector, on some platforms the temp files can not be deleted until then. Use with care!
+ * </p>
+ */
+public class MemoryMappedParsingStore extends TemporaryFileBasedParsingStore {
+
+    private final Map<UUID, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+
+    @Override
+    public InputStream getContent(UUID uuid) {
+        MappedByteBuffer mapping = mappings.get(uuid);
+        if (mapping == null) {
+            File file = getFile(uuid);
+            if (file == null) {
+                throw new IllegalStateException("Parsing store has lost content for ID '" + uuid.toString() + "'");
+            }
+            if (file.length() > Integer.MAX_VALUE) {
+                return super.getContent(uuid);
+            }
+            mapping = map(uuid, file);
+        }
+        return new ByteBufferInputStream(mapping);
+    }
+
+    private MappedByteBuffer map(UUID uuid, File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            MappedByteBuffer existing = mappings.putIfAbsent(uuid, mapping);
+            return existing == null ? mapping : existing;
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    "Store has been corrupted! Expected to find file at '" + file.toPath() + "' for key '" + uuid + "'", e
+            );
+        }
+    }
+
+    @Override
+    protected void clearStore(UUID uuid) {
+        mappings.remove(uuid);
+        super.clearStore(uuid);
+    }
+
+    @Override
+    public void close() {
+        mappings.clear();
+        super.close();
+    }
+
+}
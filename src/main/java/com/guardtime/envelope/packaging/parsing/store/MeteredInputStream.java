@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts data read through it into {@link ParsingStoreMetrics}, either as bytes being stored, which are checked against
+ * the quota of the store, or as bytes served.
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    private final ParsingStoreMetrics metrics;
+    private final boolean storing;
+    private long count = 0;
+
+    MeteredInputStream(InputStream input, ParsingStoreMetrics metrics, boolean storing) {
+        super(input);
+        this.metrics = metrics;
+        this.storing = storing;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value != -1) {
+            record(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int read = super.read(bytes, offset, length);
+        if (read > 0) {
+            record(read);
+        }
+        return read;
+    }
+
+    private void record(int read) throws QuotaExceededException {
+        if (storing) {
+            metrics.reserveBytes(read);
+        } else {
+            metrics.bytesServed(read);
+        }
+        count += read;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return Number of bytes read through this stream.
+     */
+    long getCount() {
+        return count;
+    }
+
+}
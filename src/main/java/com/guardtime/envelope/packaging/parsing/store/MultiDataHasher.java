@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.DataHasher;
+import com.guardtime.ksi.hashing.HashAlgorithm;
+import com.guardtime.ksi.hashing.HashException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Calculates {@link DataHash}es of the same data with several {@link HashAlgorithm}s at once.
+ */
+class MultiDataHasher {
+
+    private final Map<HashAlgorithm, DataHasher> hashers = new LinkedHashMap<>();
+
+    MultiDataHasher(Collection<HashAlgorithm> algorithms) {
+        for (HashAlgorithm algorithm : algorithms) {
+            if (hashers.containsKey(algorithm)) {
+                continue;
+            }
+            try {
+                hashers.put(algorithm, new DataHasher(algorithm));
+            } catch (HashException ignore) {
+                // Not usable for hashing at the moment, hash will be calculated on demand and fail there.
+            }
+        }
+    }
+
+    void addData(byte[] bytes, int offset, int length) {
+        for (DataHasher hasher : hashers.values()) {
+            hasher.addData(bytes, offset, length);
+        }
+    }
+
+    Map<HashAlgorithm, DataHash> getDataHashes() {
+        Map<HashAlgorithm, DataHash> result = new HashMap<>();
+        for (Map.Entry<HashAlgorithm, DataHasher> entry : hashers.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getHash());
+        }
+        return result;
+    }
+
+}
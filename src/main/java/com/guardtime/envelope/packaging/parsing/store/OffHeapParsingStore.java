@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.util.ByteBufferInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps data of parsed in {@link Envelope} outside of the Java heap in direct {@link ByteBuffer}s. Each entry is kept in
+ * chunks taken from pools of a few size classes, chunks are returned to their pool once the entry is unstored. The total
+ * size of allocated chunks, including pooled ones, is limited by the capacity of the store.
+ * <p>
+ * NB! Content must not be read after it has been unstored, as its chunks may already be reused. Direct memory of chunks
+ * dropped from the pools is freed by the garbage collector, so actual usage may briefly exceed the capacity.
+ * </p>
+ */
+public class OffHeapParsingStore extends ParsingStore {
+
+    public static final long DEFAULT_CAPACITY = 256 * 1024 * 1024;
+
+    private static final int[] SIZE_CLASSES = {4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024};
+    private static final int COPY_BUFFER_SIZE = 8192;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final long capacity;
+    private final AtomicLong allocated = new AtomicLong();
+    private final List<Queue<ByteBuffer>> pools = new ArrayList<>();
+    private final Map<UUID, ByteBuffer[]> store = new ConcurrentHashMap<>();
+
+    public OffHeapParsingStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum total size in bytes of direct buffers allocated by this store.
+     */
+    public OffHeapParsingStore(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.capacity = capacity;
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            pools.add(new ConcurrentLinkedQueue<ByteBuffer>());
+        }
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream) throws IOException {
+        storeInternal(uuid, stream, UNKNOWN_SIZE);
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream, long expectedSize) throws IOException {
+        ChunkWriter writer = new ChunkWriter(uuid, expectedSize);
+        try {
+            writer.readFrom(stream);
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        writer.commit();
+    }
+
+    @Override
+    ContentWriter openContentWriter(UUID uuid) throws IOException {
+        return openContentWriter(uuid, UNKNOWN_SIZE);
+    }
+
+    @Override
+    ContentWriter openContentWriter(UUID uuid, long expectedSize) throws IOException {
+        return new ChunkWriter(uuid, expectedSize);
+    }
+
+    @Override
+    public InputStream getContent(UUID uuid) {
+        ByteBuffer[] chunks = store.get(uuid);
+        if (chunks == null) {
+            throw new IllegalStateException("Parsing store has lost content for ID '" + uuid.toString() + "'");
+        }
+        if (chunks.length == 1) {
+            return new ByteBufferInputStream(chunks[0]);
+        }
+        List<InputStream> streams = new ArrayList<>(chunks.length);
+        for (ByteBuffer chunk : chunks) {
+            streams.add(new ByteBufferInputStream(chunk));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    @Override
+    protected void clearStore(UUID uuid) {
+        ByteBuffer[] chunks = store.remove(uuid);
+        if (chunks != null) {
+            for (ByteBuffer chunk : chunks) {
+                release(chunk);
+            }
+        }
+    }
+
+    /**
+     * Drops all content and pooled chunks, their direct memory is freed by the garbage collector.
+     */
+    @Override
+    public void close() {
+        store.clear();
+        for (Queue<ByteBuffer> pool : pools) {
+            pool.clear();
+        }
+        allocated.set(0);
+    }
+
+    /**
+     * @return Total size in bytes of direct buffers currently allocated by this store, including pooled ones.
+     */
+    public long getAllocatedMemory() {
+        return allocated.get();
+    }
+
+    /**
+     * Takes a chunk of preferred size class, or of a smaller one when the capacity does not allow a new chunk of preferred
+     * size. Pooled chunks of other size classes are dropped to make room for new chunks.
+     */
+    private ByteBuffer allocate(int preferredSizeClass) throws IOException {
+        for (int sizeClass = preferredSizeClass; sizeClass >= 0; sizeClass--) {
+            ByteBuffer chunk = pools.get(sizeClass).poll();
+            if (chunk != null) {
+                return chunk;
+            }
+            int size = SIZE_CLASSES[sizeClass];
+            boolean reserved = reserve(size);
+            while (!reserved && dropPooledChunk(sizeClass)) {
+                reserved = reserve(size);
+            }
+            if (reserved) {
+                return ByteBuffer.allocateDirect(size);
+            }
+        }
+        throw new IOException("Off-heap parsing store capacity of " + capacity + " bytes exceeded");
+    }
+
+    private boolean reserve(long size) {
+        while (true) {
+            long used = allocated.get();
+            if (used + size > capacity) {
+                return false;
+            }
+            if (allocated.compareAndSet(used, used + size)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean dropPooledChunk(int excludedSizeClass) {
+        for (int i = SIZE_CLASSES.length - 1; i >= 0; i--) {
+            if (i == excludedSizeClass) {
+                continue;
+            }
+            ByteBuffer chunk = pools.get(i).poll();
+            if (chunk != null) {
+                allocated.addAndGet(-chunk.capacity());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void release(ByteBuffer chunk) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (SIZE_CLASSES[i] == chunk.capacity()) {
+                chunk.clear();
+                pools.get(i).offer(chunk);
+                return;
+            }
+        }
+    }
+
+    private final class ChunkWriter implements ContentWriter {
+        private final UUID uuid;
+        private final long expectedSize;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private ByteBuffer current;
+        private long written = 0;
+
+        private ChunkWriter(UUID uuid, long expectedSize) {
+            this.uuid = uuid;
+            this.expectedSize = expectedSize;
+        }
+
+        private void readFrom(InputStream stream) throws IOException {
+            byte[] bytes = new byte[COPY_BUFFER_SIZE];
+            int count = stream.read(bytes);
+            while (count != -1) {
+                write(ByteBuffer.wrap(bytes, 0, count));
+                count = stream.read(bytes);
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                ensureSpace();
+                int count = Math.min(data.remaining(), current.remaining());
+                ByteBuffer part = data.duplicate();
+                part.limit(part.position() + count);
+                current.put(part);
+                data.position(data.position() + count);
+                written += count;
+            }
+        }
+
+        private void ensureSpace() throws IOException {
+            if (current == null || !current.hasRemaining()) {
+                current = allocate(nextSizeClass());
+                chunks.add(current);
+            }
+        }
+
+        private int nextSizeClass() {
+            long wanted = SIZE_CLASSES[Math.min(chunks.size(), SIZE_CLASSES.length - 1)];
+            if (expectedSize > written) {
+                wanted = expectedSize - written;
+            }
+            for (int i = 0; i < SIZE_CLASSES.length; i++) {
+                if (SIZE_CLASSES[i] >= wanted) {
+                    return i;
+                }
+            }
+            return SIZE_CLASSES.length - 1;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (chunks.isEmpty()) {
+                chunks.add(EMPTY);
+            }
+            for (ByteBuffer chunk : chunks) {
+                chunk.flip();
+            }
+            store.put(uuid, chunks.toArray(new ByteBuffer[chunks.size()]));
+        }
+
+        @Override
+        public void abort() {
+            for (ByteBuffer chunk : chunks) {
+                release(chunk);
+            }
+            chunks.clear();
+        }
+    }
+
+}
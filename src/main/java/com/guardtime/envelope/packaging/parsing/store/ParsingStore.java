@@ -20,21 +20,54 @@
 package com.guardtime.envelope.packaging.parsing.store;
 
 import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.HashAlgorithm;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Data store that is meant to keep data from parsed in {@link Envelope}.
+ * Data store that is meant to keep data from parsed in {@link Envelope}. Implementations must be thread-safe.
+ * <p>
+ * Stored content is shared by all {@link ParsingStoreReference}s created for it and is cleared once the last of them is
+ * unstored. References are counted per content without locking, so a single store can be used from many threads.
+ * </p><p>
+ * Usage of the store is available through {@link #getStatistics()}. Optional quotas on the number and total size of held
+ * entries make storing fail with {@link ParsingStoreException} once exceeded, see {@link #setQuota(long, long)}.
+ * </p><p>
+ * Stores that hold resources outside of the Java heap, e.g. temporary files, release them all when closed. A store must not
+ * be used after it has been closed.
+ * </p>
  */
-public abstract class ParsingStore {
+public abstract class ParsingStore implements Closeable {
 
-    private Map<UUID, List<ParsingStoreReference>> references = new HashMap<>();
+    private static final int CLEARED = -1;
+
+    /**
+     * Expected size of content for which the size is not known in advance.
+     */
+    public static final long UNKNOWN_SIZE = -1;
+
+    /**
+     * Quota value for no limit.
+     */
+    public static final long NO_QUOTA = Long.MAX_VALUE;
+
+    private final ConcurrentMap<UUID, AtomicInteger> referenceCounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Long> entrySizes = new ConcurrentHashMap<>();
+    private final ParsingStoreMetrics metrics = new ParsingStoreMetrics();
 
     public ParsingStoreReference store(InputStream stream) throws ParsingStoreException {
         return store(stream, null);
@@ -49,44 +82,310 @@ public abstract class ParsingStore {
      * @throws ParsingStoreException when reading the stream fails.
      */
     public ParsingStoreReference store(InputStream stream, String pathName) throws ParsingStoreException {
+        return store(stream, pathName, Collections.<HashAlgorithm>emptyList());
+    }
+
+    /**
+     * Stores provided data stream with provided key and provides access to the stored data through an instance of
+     * {@link ParsingStoreReference}. While the data is being stored its {@link DataHash}es are calculated with provided
+     * algorithms and made available through {@link ParsingStoreReference#getDataHash(HashAlgorithm)}, so that the stored
+     * data does not have to be read again for hashing.
+     *
+     * @param stream the {@link InputStream} from which the data will be stored.
+     * @param pathName optional name of stored file.
+     * @param algorithms {@link HashAlgorithm}s to calculate {@link DataHash}es with.
+     * @throws ParsingStoreException when reading the stream fails.
+     */
+    public ParsingStoreReference store(InputStream stream, String pathName, Collection<HashAlgorithm> algorithms)
+            throws ParsingStoreException {
+        return store(stream, pathName, algorithms, UNKNOWN_SIZE);
+    }
+
+    /**
+     * Stores provided data stream as {@link #store(InputStream, String, Collection)} does. The expected size of the data,
+     * e.g. from the header of an envelope entry, lets implementations choose where to keep the data before reading it.
+     *
+     * @param stream the {@link InputStream} from which the data will be stored.
+     * @param pathName optional name of stored file.
+     * @param algorithms {@link HashAlgorithm}s to calculate {@link DataHash}es with.
+     * @param expectedSize expected number of bytes in stream or {@link #UNKNOWN_SIZE}.
+     * @throws ParsingStoreException when reading the stream fails or a quota of the store is exceeded.
+     */
+    public ParsingStoreReference store(InputStream stream, String pathName, Collection<HashAlgorithm> algorithms,
+                                       long expectedSize) throws ParsingStoreException {
+        Util.notNull(algorithms, "Hash algorithms");
+        metrics.reserveEntry(expectedSize);
+        MeteredInputStream meteredStream = new MeteredInputStream(stream, metrics, true);
+        boolean stored = false;
         try {
             UUID uuid = UUID.randomUUID();
-            storeInternal(uuid, stream);
-            ParsingStoreReference reference = new ParsingStoreReference(uuid, this, pathName);
-            updateReferences(uuid, reference);
-            return reference;
+            Map<HashAlgorithm, DataHash> dataHashes = Collections.emptyMap();
+            if (algorithms.isEmpty()) {
+                storeInternal(uuid, meteredStream, expectedSize);
+            } else {
+                DigestingInputStream digestingStream = new DigestingInputStream(meteredStream, algorithms);
+                storeInternal(uuid, digestingStream, expectedSize);
+                dataHashes = digestingStream.getDataHashes();
+            }
+            entryStored(uuid, meteredStream.getCount());
+            stored = true;
+            return register(uuid, pathName, dataHashes);
+        } catch (QuotaExceededException e) {
+            throw new ParsingStoreException(e.getMessage(), e);
         } catch (IOException e) {
             throw new ParsingStoreException("Failed to access data in stream!", e);
+        } finally {
+            if (!stored) {
+                metrics.releaseEntry(meteredStream.getCount());
+            }
+        }
+    }
+
+    /**
+     * Opens a {@link ParsingStoreSink} for storing data that is pushed into the store piece by piece.
+     *
+     * @param pathName optional name of stored file.
+     * @param algorithms {@link HashAlgorithm}s to calculate {@link DataHash}es with while the data is written.
+     * @throws ParsingStoreException when the store can not accept new data.
+     */
+    public ParsingStoreSink openSink(String pathName, Collection<HashAlgorithm> algorithms) throws ParsingStoreException {
+        return openSink(pathName, algorithms, UNKNOWN_SIZE);
+    }
+
+    /**
+     * Opens a {@link ParsingStoreSink} as {@link #openSink(String, Collection)} does, for data of expected size.
+     *
+     * @param pathName optional name of stored file.
+     * @param algorithms {@link HashAlgorithm}s to calculate {@link DataHash}es with while the data is written.
+     * @param expectedSize expected number of bytes to be written or {@link #UNKNOWN_SIZE}.
+     * @throws ParsingStoreException when the store can not accept new data or a quota of the store is exceeded.
+     */
+    public ParsingStoreSink openSink(String pathName, Collection<HashAlgorithm> algorithms, long expectedSize)
+            throws ParsingStoreException {
+        Util.notNull(algorithms, "Hash algorithms");
+        metrics.reserveEntry(expectedSize);
+        UUID uuid = UUID.randomUUID();
+        try {
+            ContentWriter writer = new MeteredContentWriter(uuid, openContentWriter(uuid, expectedSize));
+            return new ParsingStoreSink(this, uuid, pathName, writer, new MultiDataHasher(algorithms));
+        } catch (IOException e) {
+            metrics.releaseEntry(0);
+            throw new ParsingStoreException("Failed to open parsing store for writing!", e);
         }
     }
 
     public abstract InputStream getContent(UUID uuid);
 
+    /**
+     * Provides content with provided UUID for a {@link ParsingStoreReference}, counting the access and the bytes read.
+     */
+    InputStream openContent(UUID uuid) {
+        metrics.contentServed();
+        InputStream content = getContent(uuid);
+        return content == null ? null : new MeteredInputStream(content, metrics, false);
+    }
+
+    /**
+     * @return Snapshot of the usage of this store.
+     */
+    public ParsingStoreStatistics getStatistics() {
+        return metrics.getStatistics();
+    }
+
+    /**
+     * Sets hard limits on the entries held by this store. Storing an entry that would exceed either limit fails with
+     * {@link ParsingStoreException}, already held entries are not affected.
+     *
+     * @param maxEntries maximum number of entries held at once or {@link #NO_QUOTA}.
+     * @param maxBytes   maximum total size in bytes of entries held at once or {@link #NO_QUOTA}.
+     */
+    public void setQuota(long maxEntries, long maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Quota must not be negative");
+        }
+        metrics.setQuota(maxEntries, maxBytes);
+    }
+
+    /**
+     * Provides {@link ContentWriter} for data of expected size. By default the expected size is ignored, see
+     * {@link #openContentWriter(UUID)}.
+     */
+    ContentWriter openContentWriter(UUID uuid, long expectedSize) throws IOException {
+        return openContentWriter(uuid);
+    }
+
+    /**
+     * Provides {@link ContentWriter} that stores the data with provided UUID on commit. By default the data is collected
+     * in memory and handed to {@link #storeInternal(UUID, InputStream)} once committed.
+     */
+    ContentWriter openContentWriter(final UUID uuid) throws IOException {
+        return new ContentWriter() {
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            @Override
+            public void write(ByteBuffer data) {
+                if (data.hasArray()) {
+                    buffer.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                    data.position(data.limit());
+                } else {
+                    byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    buffer.write(bytes, 0, bytes.length);
+                }
+            }
+
+            @Override
+            public void commit() throws IOException {
+                storeInternal(uuid, new ByteArrayInputStream(buffer.toByteArray()));
+                buffer = null;
+            }
+
+            @Override
+            public void abort() {
+                buffer = null;
+            }
+        };
+    }
+
+    /**
+     * Creates the first {@link ParsingStoreReference} for content that has been stored with provided UUID.
+     */
+    ParsingStoreReference register(UUID uuid, String pathName) {
+        return register(uuid, pathName, Collections.<HashAlgorithm, DataHash>emptyMap());
+    }
+
+    /**
+     * Creates the first {@link ParsingStoreReference} for content that has been stored with provided UUID and whose
+     * {@link DataHash}es are already known.
+     */
+    ParsingStoreReference register(UUID uuid, String pathName, Map<HashAlgorithm, DataHash> dataHashes) {
+        if (!entrySizes.containsKey(uuid)) {
+            // Content that has not been stored through this store, e.g. from a ContentSource
+            metrics.addEntry();
+            entryStored(uuid, 0);
+        }
+        ParsingStoreReference reference = new ParsingStoreReference(uuid, this, pathName, dataHashes);
+        updateReferences(uuid, reference);
+        return reference;
+    }
+
     abstract void storeInternal(UUID uuid, InputStream inputStream) throws IOException;
 
+    /**
+     * Stores data of expected size. By default the expected size is ignored, see {@link #storeInternal(UUID, InputStream)}.
+     */
+    void storeInternal(UUID uuid, InputStream inputStream, long expectedSize) throws IOException {
+        storeInternal(uuid, inputStream);
+    }
+
+    private void entryStored(UUID uuid, long size) {
+        entrySizes.put(uuid, size);
+        metrics.entryStored(size);
+    }
+
     void updateReferences(UUID uuid, ParsingStoreReference parsingStoreReference) {
-        List<ParsingStoreReference> currentReferences;
-        if (references.containsKey(uuid)) {
-            currentReferences = references.get(uuid);
-        } else {
-            currentReferences = new LinkedList<>();
-            references.put(uuid, currentReferences);
+        metrics.referenceAdded();
+        while (true) {
+            AtomicInteger count = referenceCounts.get(uuid);
+            if (count == null) {
+                count = new AtomicInteger();
+                AtomicInteger existing = referenceCounts.putIfAbsent(uuid, count);
+                if (existing != null) {
+                    count = existing;
+                }
+            }
+            int current = count.get();
+            if (current == CLEARED) {
+                // Content is being cleared by a concurrent unregister, wait for its count to be removed
+                referenceCounts.remove(uuid, count);
+                continue;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return;
+            }
         }
-        currentReferences.add(parsingStoreReference);
     }
 
     void unregister(UUID uuid, ParsingStoreReference parsingStoreReference) {
-        if (!references.containsKey(uuid)) {
+        AtomicInteger count = referenceCounts.get(uuid);
+        if (count == null) {
             return;
         }
-        List<ParsingStoreReference> currentReferences = references.get(uuid);
-        currentReferences.remove(parsingStoreReference);
-        if (currentReferences.isEmpty()) {
-            clearStore(uuid);
-            references.remove(uuid);
+        while (true) {
+            int current = count.get();
+            if (current <= 0) {
+                return;
+            }
+            int next = current == 1 ? CLEARED : current - 1;
+            if (count.compareAndSet(current, next)) {
+                metrics.referenceRemoved();
+                if (next == CLEARED) {
+                    referenceCounts.remove(uuid, count);
+                    clearStore(uuid);
+                    Long size = entrySizes.remove(uuid);
+                    if (size != null) {
+                        metrics.entryCleared(size);
+                    }
+                }
+                return;
+            }
         }
     }
 
+    /**
+     * @return Number of {@link ParsingStoreReference}s currently referring to content with provided UUID.
+     */
+    int getReferenceCount(UUID uuid) {
+        AtomicInteger count = referenceCounts.get(uuid);
+        return count == null ? 0 : Math.max(count.get(), 0);
+    }
+
     protected abstract void clearStore(UUID uuid);
 
+    /**
+     * Counts data written to a {@link ParsingStoreSink} against the quotas of the store.
+     */
+    private final class MeteredContentWriter implements ContentWriter {
+        private final UUID uuid;
+        private final ContentWriter writer;
+        private long count = 0;
+        private boolean released = false;
+
+        private MeteredContentWriter(UUID uuid, ContentWriter writer) {
+            this.uuid = uuid;
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            int length = data.remaining();
+            metrics.reserveBytes(length);
+            count += length;
+            writer.write(data);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            writer.commit();
+            released = true;
+            entryStored(uuid, count);
+        }
+
+        @Override
+        public void abort() {
+            writer.abort();
+            if (!released) {
+                released = true;
+                metrics.releaseEntry(count);
+            }
+        }
+    }
+
+    /**
+     * Releases all content and resources of the store. Does nothing by default.
+     */
+    @Override
+    public void close() {
+    }
+
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.util.Util;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Directory in which a {@link TemporaryFileBasedParsingStore} keeps temporary files. When a store has several directories,
+ * entries are spread across them in proportion to their weights. Entries with an expected size over the maximum entry size
+ * of a directory, or with unknown size when the maximum entry size is limited, are not placed in that directory. Entries that
+ * fit are placed in the directories with the smallest maximum entry size, e.g. to keep small entries on a memory backed file
+ * system and larger ones on disks.
+ */
+public final class ParsingStoreDirectory {
+
+    public static final long UNLIMITED_ENTRY_SIZE = Long.MAX_VALUE;
+
+    private final Path path;
+    private final int weight;
+    private final long maxEntrySize;
+
+    /**
+     * @param path directory in which the directory for temporary files is created.
+     */
+    public ParsingStoreDirectory(Path path) {
+        this(path, 1);
+    }
+
+    /**
+     * @param path   directory in which the directory for temporary files is created.
+     * @param weight relative share of entries placed in this directory.
+     */
+    public ParsingStoreDirectory(Path path, int weight) {
+        this(path, weight, UNLIMITED_ENTRY_SIZE);
+    }
+
+    /**
+     * @param path         directory in which the directory for temporary files is created.
+     * @param weight       relative share of entries placed in this directory.
+     * @param maxEntrySize maximum expected size in bytes of entries placed in this directory.
+     */
+    public ParsingStoreDirectory(Path path, int weight, long maxEntrySize) {
+        Util.notNull(path, "Directory path");
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight must be positive");
+        }
+        if (maxEntrySize < 0) {
+            throw new IllegalArgumentException("Maximum entry size must not be negative");
+        }
+        this.path = path;
+        this.weight = weight;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * @return Directory in system temp folder with default weight and no limit on entry size.
+     */
+    public static ParsingStoreDirectory systemTempDirectory() {
+        return new ParsingStoreDirectory(Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    boolean accepts(long expectedSize) {
+        if (expectedSize == ParsingStore.UNKNOWN_SIZE) {
+            return maxEntrySize == UNLIMITED_ENTRY_SIZE;
+        }
+        return expectedSize <= maxEntrySize;
+    }
+
+}
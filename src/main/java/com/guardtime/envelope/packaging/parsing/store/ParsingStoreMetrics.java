@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the usage of a {@link ParsingStore} and enforces its quotas.
+ */
+final class ParsingStoreMetrics {
+
+    private final AtomicLong liveEntries = new AtomicLong();
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicLong liveReferences = new AtomicLong();
+    private final AtomicLong peakEntries = new AtomicLong();
+    private final AtomicLong peakBytes = new AtomicLong();
+    private final AtomicLong storeCount = new AtomicLong();
+    private final AtomicLong getCount = new AtomicLong();
+    private final AtomicLong clearCount = new AtomicLong();
+    private final AtomicLong bytesStored = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private volatile long maxEntries = ParsingStore.NO_QUOTA;
+    private volatile long maxBytes = ParsingStore.NO_QUOTA;
+
+    void setQuota(long maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Counts a new entry that is about to be stored.
+     *
+     * @throws ParsingStoreException when the entry quota would be exceeded, or the byte quota would be exceeded by an
+     *                               entry of expected size.
+     */
+    void reserveEntry(long expectedSize) throws ParsingStoreException {
+        if (expectedSize > 0 && expectedSize > maxBytes - liveBytes.get()) {
+            throw new ParsingStoreException("Parsing store quota of " + maxBytes + " bytes would be exceeded by entry of " +
+                    expectedSize + " bytes");
+        }
+        long entries = liveEntries.incrementAndGet();
+        if (entries > maxEntries) {
+            liveEntries.decrementAndGet();
+            throw new ParsingStoreException("Parsing store quota of " + maxEntries + " entries exceeded");
+        }
+        updatePeak(peakEntries, entries);
+    }
+
+    /**
+     * Counts a new entry that has been added without checking quotas.
+     */
+    void addEntry() {
+        updatePeak(peakEntries, liveEntries.incrementAndGet());
+    }
+
+    /**
+     * Counts bytes of an entry being stored.
+     *
+     * @throws QuotaExceededException when the byte quota would be exceeded.
+     */
+    void reserveBytes(long count) throws QuotaExceededException {
+        long bytes = liveBytes.addAndGet(count);
+        if (bytes > maxBytes) {
+            liveBytes.addAndGet(-count);
+            throw new QuotaExceededException("Parsing store quota of " + maxBytes + " bytes exceeded");
+        }
+        updatePeak(peakBytes, bytes);
+    }
+
+    void entryStored(long size) {
+        storeCount.incrementAndGet();
+        bytesStored.addAndGet(size);
+    }
+
+    void releaseEntry(long size) {
+        liveEntries.decrementAndGet();
+        liveBytes.addAndGet(-size);
+    }
+
+    void entryCleared(long size) {
+        releaseEntry(size);
+        clearCount.incrementAndGet();
+    }
+
+    void referenceAdded() {
+        liveReferences.incrementAndGet();
+    }
+
+    void referenceRemoved() {
+        liveReferences.decrementAndGet();
+    }
+
+    void contentServed() {
+        getCount.incrementAndGet();
+    }
+
+    void bytesServed(long count) {
+        bytesServed.addAndGet(count);
+    }
+
+    ParsingStoreStatistics getStatistics() {
+        return new ParsingStoreStatistics(liveEntries.get(), liveBytes.get(), liveReferences.get(), peakEntries.get(),
+                peakBytes.get(), storeCount.get(), getCount.get(), clearCount.get(), bytesStored.get(), bytesServed.get());
+    }
+
+    private static void updatePeak(AtomicLong peak, long value) {
+        long current = peak.get();
+        while (value > current && !peak.compareAndSet(current, value)) {
+            current = peak.get();
+        }
+    }
+
+}
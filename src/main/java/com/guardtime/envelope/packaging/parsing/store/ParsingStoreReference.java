@@ -20,10 +20,16 @@
 package com.guardtime.envelope.packaging.parsing.store;
 
 import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.HashAlgorithm;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Interactor to ParsingStore.
@@ -32,22 +38,33 @@ public class ParsingStoreReference {
     private final UUID uuid;
     private final ParsingStore owner;
     private final String pathName;
+    private final Map<HashAlgorithm, DataHash> dataHashes;
+    private final AtomicBoolean unstored = new AtomicBoolean();
 
     public ParsingStoreReference(UUID uuid, ParsingStore store, String pathName) {
+        this(uuid, store, pathName, Collections.<HashAlgorithm, DataHash>emptyMap());
+    }
+
+    /**
+     * @param dataHashes {@link DataHash}es of the stored content that have been calculated while storing it.
+     */
+    public ParsingStoreReference(UUID uuid, ParsingStore store, String pathName, Map<HashAlgorithm, DataHash> dataHashes) {
         Util.notNull(uuid, "UUID");
         Util.notNull(store, "Parsing store");
+        Util.notNull(dataHashes, "Data hashes");
         this.uuid = uuid;
         this.owner = store;
         this.pathName = pathName;
+        this.dataHashes = Collections.unmodifiableMap(new HashMap<>(dataHashes));
     }
 
     public ParsingStoreReference(ParsingStoreReference original) {
-        this(original.uuid, original.owner, original.pathName);
+        this(original.uuid, original.owner, original.pathName, original.dataHashes);
         owner.updateReferences(uuid, this);
     }
 
     public InputStream getStoredContent() throws IOException {
-        InputStream inputStream = owner.getContent(uuid);
+        InputStream inputStream = owner.openContent(uuid);
         if (inputStream == null) {
             throw new IOException(
                     "Failed to acquire input stream from parsing store for key '" + getKey() + "'"
@@ -56,8 +73,22 @@ public class ParsingStoreReference {
         return inputStream;
     }
 
+    /**
+     * Releases this reference. The stored content is cleared once all references to it have been released. Has no effect
+     * when this reference has already been released.
+     */
     public void unstore() {
-        owner.unregister(uuid, this);
+        if (unstored.compareAndSet(false, true)) {
+            owner.unregister(uuid, this);
+        }
+    }
+
+    /**
+     * @return {@link DataHash} of the stored content that was calculated while storing it or null when content was not
+     * hashed with provided algorithm.
+     */
+    public DataHash getDataHash(HashAlgorithm algorithm) {
+        return dataHashes.get(algorithm);
     }
 
     public UUID getUuid() {
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Receives data to be stored into {@link ParsingStore} as it becomes available, without the need for an
+ * {@link java.io.InputStream} to pull it from. The data is hashed while it is being written, see
+ * {@link ParsingStore#store(java.io.InputStream, String, java.util.Collection)}.
+ * <p>
+ * Instances are not thread-safe. Either {@link #complete()} or {@link #abort()} must be called once all data is written.
+ * </p>
+ */
+public final class ParsingStoreSink {
+
+    private static final int HASHING_BUFFER_SIZE = 8192;
+
+    private final ParsingStore store;
+    private final UUID uuid;
+    private final String pathName;
+    private final ContentWriter writer;
+    private final MultiDataHasher hasher;
+    private byte[] hashingBuffer;
+    private boolean done = false;
+
+    ParsingStoreSink(ParsingStore store, UUID uuid, String pathName, ContentWriter writer, MultiDataHasher hasher) {
+        this.store = store;
+        this.uuid = uuid;
+        this.pathName = pathName;
+        this.writer = writer;
+        this.hasher = hasher;
+    }
+
+    /**
+     * Writes all remaining bytes of data to the store.
+     *
+     * @throws ParsingStoreException when writing fails or the sink has already been completed or aborted.
+     */
+    public void write(ByteBuffer data) throws ParsingStoreException {
+        checkNotDone();
+        hash(data.duplicate());
+        try {
+            writer.write(data);
+        } catch (IOException e) {
+            abort();
+            throw new ParsingStoreException("Failed to write data to parsing store!", e);
+        }
+    }
+
+    /**
+     * Makes all written data available from {@link ParsingStore}.
+     *
+     * @return {@link ParsingStoreReference} for accessing the written data.
+     * @throws ParsingStoreException when storing fails or the sink has already been completed or aborted.
+     */
+    public ParsingStoreReference complete() throws ParsingStoreException {
+        checkNotDone();
+        done = true;
+        try {
+            writer.commit();
+        } catch (IOException e) {
+            writer.abort();
+            throw new ParsingStoreException("Failed to write data to parsing store!", e);
+        }
+        return store.register(uuid, pathName, hasher.getDataHashes());
+    }
+
+    /**
+     * Discards all written data. Has no effect when the sink has already been completed or aborted.
+     */
+    public void abort() {
+        if (!done) {
+            done = true;
+            writer.abort();
+        }
+    }
+
+    private void hash(ByteBuffer data) {
+        if (data.hasArray()) {
+            hasher.addData(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            return;
+        }
+        if (hashingBuffer == null) {
+            hashingBuffer = new byte[HASHING_BUFFER_SIZE];
+        }
+        while (data.hasRemaining()) {
+            int length = Math.min(hashingBuffer.length, data.remaining());
+            data.get(hashingBuffer, 0, length);
+            hasher.addData(hashingBuffer, 0, length);
+        }
+    }
+
+    private void checkNotDone() throws ParsingStoreException {
+        if (done) {
+            throw new ParsingStoreException("Parsing store sink for '" + pathName + "' is already closed!");
+        }
+    }
+
+}
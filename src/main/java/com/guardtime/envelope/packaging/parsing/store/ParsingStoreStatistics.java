@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+/**
+ * Snapshot of the usage of a {@link ParsingStore}, see {@link ParsingStore#getStatistics()}. Entries are counted from the
+ * moment they start being stored until they are cleared, bytes of entries are counted as they are stored.
+ */
+public final class ParsingStoreStatistics {
+
+    private final long liveEntries;
+    private final long liveBytes;
+    private final long liveReferences;
+    private final long peakEntries;
+    private final long peakBytes;
+    private final long storeCount;
+    private final long getCount;
+    private final long clearCount;
+    private final long bytesStored;
+    private final long bytesServed;
+
+    ParsingStoreStatistics(long liveEntries, long liveBytes, long liveReferences, long peakEntries, long peakBytes,
+                           long storeCount, long getCount, long clearCount, long bytesStored, long bytesServed) {
+        this.liveEntries = liveEntries;
+        this.liveBytes = liveBytes;
+        this.liveReferences = liveReferences;
+        this.peakEntries = peakEntries;
+        this.peakBytes = peakBytes;
+        this.storeCount = storeCount;
+        this.getCount = getCount;
+        this.clearCount = clearCount;
+        this.bytesStored = bytesStored;
+        this.bytesServed = bytesServed;
+    }
+
+    /**
+     * @return Number of entries currently held by the store.
+     */
+    public long getLiveEntries() {
+        return liveEntries;
+    }
+
+    /**
+     * @return Total size in bytes of entries currently held by the store.
+     */
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return Number of {@link ParsingStoreReference}s currently referring to entries of the store.
+     */
+    public long getLiveReferences() {
+        return liveReferences;
+    }
+
+    /**
+     * @return Highest number of entries held by the store at once.
+     */
+    public long getPeakEntries() {
+        return peakEntries;
+    }
+
+    /**
+     * @return Highest total size in bytes of entries held by the store at once.
+     */
+    public long getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * @return Number of entries stored.
+     */
+    public long getStoreCount() {
+        return storeCount;
+    }
+
+    /**
+     * @return Number of times content has been accessed through {@link ParsingStoreReference#getStoredContent()}.
+     */
+    public long getGetCount() {
+        return getCount;
+    }
+
+    /**
+     * @return Number of entries cleared after all their references were unstored.
+     */
+    public long getClearCount() {
+        return clearCount;
+    }
+
+    /**
+     * @return Total number of bytes stored.
+     */
+    public long getBytesStored() {
+        return bytesStored;
+    }
+
+    /**
+     * @return Total number of bytes read through {@link ParsingStoreReference#getStoredContent()}.
+     */
+    public long getBytesServed() {
+        return bytesServed;
+    }
+
+    @Override
+    public String toString() {
+        return "ParsingStoreStatistics{" +
+                "liveEntries=" + liveEntries +
+                ", liveBytes=" + liveBytes +
+                ", liveReferences=" + liveReferences +
+                ", peakEntries=" + peakEntries +
+                ", peakBytes=" + peakBytes +
+                ", storeCount=" + storeCount +
+                ", getCount=" + getCount +
+                ", clearCount=" + clearCount +
+                ", bytesStored=" + bytesStored +
+                ", bytesServed=" + bytesServed +
+                '}';
+    }
+
+}
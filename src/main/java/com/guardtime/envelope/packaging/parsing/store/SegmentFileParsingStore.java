@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.util.ChannelInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps data of parsed in {@link Envelope} in a few large segment files in system temp folder instead of a temporary file
+ * per entry. Each entry is appended to a segment file and tracked by its offset and length. Segments are preallocated to
+ * the segment size and are used by one writer at a time, so entries can be stored concurrently into different segments.
+ * Once all entries in a segment have been unstored, the segment is reused from the beginning.
+ * <p>
+ * NB! Does not provide protection against malicious file modification in temp folder. Content must not be read after it
+ * has been unstored, as the space may already be reused. Use with care!
+ * </p>
+ */
+public class SegmentFileParsingStore extends ParsingStore {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentFileParsingStore.class);
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final long segmentSize;
+    private final Map<UUID, Extent> extents = new ConcurrentHashMap<>();
+    private final Deque<Segment> appendableSegments = new ArrayDeque<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final TemporaryFileManager fileManager;
+
+    public SegmentFileParsingStore() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize size in bytes to which segment files are preallocated. Segments accept new entries until this size
+     *                    is reached, a single entry may extend a segment beyond it.
+     */
+    public SegmentFileParsingStore(long segmentSize) {
+        this(segmentSize, new TemporaryFileManager());
+    }
+
+    /**
+     * @param segmentSize   size in bytes to which segment files are preallocated.
+     * @param baseDirectory directory in which the directory for segment files is created.
+     */
+    public SegmentFileParsingStore(long segmentSize, Path baseDirectory) {
+        this(segmentSize, new TemporaryFileManager(baseDirectory));
+    }
+
+    private SegmentFileParsingStore(long segmentSize, TemporaryFileManager fileManager) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        this.segmentSize = segmentSize;
+        this.fileManager = fileManager;
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream) throws IOException {
+        Segment segment = acquireSegment();
+        long offset = segment.writePosition;
+        long length = -1;
+        try {
+            byte[] bytes = new byte[COPY_BUFFER_SIZE];
+            long position = offset;
+            int count = stream.read(bytes);
+            while (count != -1) {
+                position += segment.write(ByteBuffer.wrap(bytes, 0, count), position);
+                count = stream.read(bytes);
+            }
+            length = position - offset;
+        } finally {
+            releaseSegment(segment, length == -1 ? null : uuid, offset, length);
+        }
+    }
+
+    @Override
+    ContentWriter openContentWriter(final UUID uuid) throws IOException {
+        final Segment segment = acquireSegment();
+        final long offset = segment.writePosition;
+        return new ContentWriter() {
+            private long position = offset;
+            private boolean released = false;
+
+            @Override
+            public void write(ByteBuffer data) throws IOException {
+                position += segment.write(data, position);
+            }
+
+            @Override
+            public void commit() {
+                release(uuid);
+            }
+
+            @Override
+            public void abort() {
+                release(null);
+            }
+
+            private void release(UUID stored) {
+                if (!released) {
+                    released = true;
+                    releaseSegment(segment, stored, offset, position - offset);
+                }
+            }
+        };
+    }
+
+    private synchronized Segment acquireSegment() throws IOException {
+        Segment segment = appendableSegments.pollFirst();
+        if (segment == null) {
+            segment = new Segment(fileManager.createTempFile(), segmentSize);
+            segments.add(segment);
+            logger.debug("Created parsing store segment '{}'", segment.file);
+        }
+        segment.appending = true;
+        return segment;
+    }
+
+    private synchronized void releaseSegment(Segment segment, UUID uuid, long offset, long length) {
+        if (uuid != null) {
+            extents.put(uuid, new Extent(segment, offset, length));
+            segment.liveEntries++;
+            segment.writePosition = offset + length;
+        }
+        segment.appending = false;
+        if (segment.liveEntries == 0) {
+            segment.reset(segmentSize);
+        }
+        if (segment.writePosition < segmentSize) {
+            appendableSegments.addFirst(segment);
+        }
+    }
+
+    @Override
+    public InputStream getContent(UUID uuid) {
+        Extent extent = extents.get(uuid);
+        if (extent == null) {
+            throw new IllegalStateException("Parsing store has lost content for ID '" + uuid.toString() + "'");
+        }
+        return new ChannelInputStream(extent.segment.channel, extent.offset, extent.length);
+    }
+
+    @Override
+    protected synchronized void clearStore(UUID uuid) {
+        Extent extent = extents.remove(uuid);
+        if (extent == null) {
+            return;
+        }
+        Segment segment = extent.segment;
+        segment.liveEntries--;
+        if (segment.liveEntries == 0 && !segment.appending) {
+            segment.reset(segmentSize);
+            if (!appendableSegments.contains(segment)) {
+                appendableSegments.addLast(segment);
+            }
+        }
+    }
+
+    /**
+     * @return Number of segment files created by this store.
+     */
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Closes and deletes all segment files.
+     */
+    @Override
+    public synchronized void close() {
+        extents.clear();
+        appendableSegments.clear();
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                logger.warn("Could not close parsing store segment '{}'", segment.file, e);
+            }
+        }
+        segments.clear();
+        fileManager.close();
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final FileChannel channel;
+        private long writePosition = 0;
+        private int liveEntries = 0;
+        private boolean appending = false;
+
+        private Segment(File file, long size) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        }
+
+        private int write(ByteBuffer data, long position) throws IOException {
+            int written = 0;
+            while (data.hasRemaining()) {
+                written += channel.write(data, position + written);
+            }
+            return written;
+        }
+
+        private void reset(long size) {
+            writePosition = 0;
+            try {
+                if (channel.size() > size) {
+                    channel.truncate(size);
+                }
+            } catch (IOException e) {
+                logger.warn("Could not truncate parsing store segment '{}'", file, e);
+            }
+        }
+    }
+
+    private static final class Extent {
+        private final Segment segment;
+        private final long offset;
+        private final long length;
+
+        private Extent(Segment segment, long offset, long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.util.Util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ParsingStore} that does not copy content registered with {@link #store(ContentSource, String)} but reads it from
+ * the provided {@link ContentSource} each time it is requested. Content provided as {@link InputStream} is kept in memory.
+ * <p>
+ * Optionally owns the resource from which the content sources read, e.g. the channel of an envelope file, and closes it
+ * once all stored content has been unstored.
+ * </p><p>
+ * NB! The underlying resource must not be modified while any content is stored!
+ * </p>
+ */
+public class SourceBackedParsingStore extends ParsingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SourceBackedParsingStore.class);
+
+    private final Map<UUID, ContentSource> store = new ConcurrentHashMap<>();
+    private final Closeable resource;
+
+    public SourceBackedParsingStore() {
+        this(null);
+    }
+
+    /**
+     * @param resource the resource the registered {@link ContentSource}s read from. Will be closed when the last stored
+     *                 content is unstored. Can be null.
+     */
+    public SourceBackedParsingStore(Closeable resource) {
+        this.resource = resource;
+    }
+
+    /**
+     * Provides access to the content of source through an instance of {@link ParsingStoreReference} without copying it.
+     *
+     * @param source   the {@link ContentSource} from which the content is read when requested.
+     * @param pathName optional name of stored file.
+     */
+    public ParsingStoreReference store(ContentSource source, String pathName) {
+        Util.notNull(source, "Content source");
+        UUID uuid = UUID.randomUUID();
+        store.put(uuid, source);
+        return register(uuid, pathName);
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream) throws IOException {
+        final byte[] bytes = com.guardtime.ksi.util.Util.toByteArray(stream);
+        store.put(uuid, new ContentSource() {
+            @Override
+            public InputStream open() {
+                return new ByteArrayInputStream(bytes);
+            }
+        });
+    }
+
+    @Override
+    public InputStream getContent(UUID uuid) {
+        ContentSource source = store.get(uuid);
+        if (source == null) {
+            throw new IllegalStateException("Parsing store has lost content for ID '" + uuid.toString() + "'");
+        }
+        try {
+            return source.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to access content source for key '" + uuid + "'", e);
+        }
+    }
+
+    @Override
+    protected void clearStore(UUID uuid) {
+        if (store.remove(uuid) != null && store.isEmpty()) {
+            closeResource();
+        }
+    }
+
+    /**
+     * Drops all registered content sources and closes the underlying resource.
+     */
+    @Override
+    public void close() {
+        store.clear();
+        closeResource();
+    }
+
+    private void closeResource() {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the source of parsing store content.", e);
+        }
+    }
+
+}
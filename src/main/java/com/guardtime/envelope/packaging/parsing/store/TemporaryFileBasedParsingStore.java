@@ -22,68 +22,292 @@ package com.guardtime.envelope.packaging.parsing.store;
 import com.guardtime.envelope.packaging.Envelope;
 import com.guardtime.envelope.util.Util;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Uses temporary files in system temp folder for maintaining data of parsed in {@link Envelope}.
+ * Uses temporary files in system temp folder for maintaining data of parsed in {@link Envelope}. The files are managed by a
+ * {@link TemporaryFileManager} and are all deleted when the store is closed.
+ * <p>
+ * The files can be spread across several {@link ParsingStoreDirectory}s, e.g. on different drives. Each entry is placed in
+ * one of the directories accepting its expected size, in weighted round-robin order. Directories with a smaller maximum
+ * entry size are preferred, so small entries can be kept on a fast file system and larger ones elsewhere. Written bytes
+ * are counted, so an entry that turns out larger than the maximum entry size of its directory is moved to a directory that
+ * accepts it, or storing it fails.
+ * </p>
  * <p>
  * NB! Does not provide protection against malicious file modification in temp folder. Use with care!
  * </p>
  */
 public class TemporaryFileBasedParsingStore extends ParsingStore {
 
-    private static final Logger logger = LoggerFactory.getLogger(TemporaryFileBasedParsingStore.class);
+    private static final int COPY_BUFFER_SIZE = 8192;
 
-    private final Map<UUID, File> store = new HashMap<>();
-    private Path tempDir;
+    private final Map<UUID, StoredFile> store = new ConcurrentHashMap<>();
+    private final List<ParsingStoreDirectory> directories;
+    private final List<TemporaryFileManager> fileManagers = new ArrayList<>();
+    private final AtomicLong placements = new AtomicLong();
+
+    public TemporaryFileBasedParsingStore() {
+        this(Collections.singletonList(ParsingStoreDirectory.systemTempDirectory()));
+    }
+
+    /**
+     * @param baseDirectory directory in which the directory for temporary files is created.
+     */
+    public TemporaryFileBasedParsingStore(Path baseDirectory) {
+        this(Collections.singletonList(new ParsingStoreDirectory(baseDirectory)));
+    }
+
+    /**
+     * @param directories directories across which temporary files are spread. Entries of unknown size that none of the
+     *                    directories accept are placed in the directories with the largest maximum entry size.
+     */
+    public TemporaryFileBasedParsingStore(List<ParsingStoreDirectory> directories) {
+        Util.notEmpty(directories, "Parsing store directories");
+        this.directories = new ArrayList<>(directories);
+        for (ParsingStoreDirectory directory : this.directories) {
+            Util.notNull(directory, "Parsing store directory");
+            fileManagers.add(new TemporaryFileManager(directory.getPath()));
+        }
+    }
 
     @Override
     void storeInternal(UUID uuid, InputStream stream) throws IOException {
-        createTempDir();
-        File tmpFile = Util.createTempFile(tempDir);
-        Util.copyToTempFile(stream, tmpFile);
-        store.put(uuid, tmpFile);
+        storeInternal(uuid, stream, UNKNOWN_SIZE);
     }
 
-    private void createTempDir() throws IOException {
-        if (tempDir == null || !tempDir.toFile().exists()) {
-            this.tempDir = Util.getTempDirectory();
+    @Override
+    void storeInternal(UUID uuid, InputStream stream, long expectedSize) throws IOException {
+        ContentWriter writer = openContentWriter(uuid, expectedSize);
+        try {
+            byte[] bytes = new byte[COPY_BUFFER_SIZE];
+            int count = stream.read(bytes);
+            while (count != -1) {
+                writer.write(ByteBuffer.wrap(bytes, 0, count));
+                count = stream.read(bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
         }
+        writer.commit();
+    }
+
+    @Override
+    ContentWriter openContentWriter(UUID uuid) throws IOException {
+        return openContentWriter(uuid, UNKNOWN_SIZE);
+    }
+
+    @Override
+    ContentWriter openContentWriter(UUID uuid, long expectedSize) throws IOException {
+        return new FileContentWriter(uuid, selectDirectory(expectedSize));
+    }
+
+    /**
+     * Picks the next directory in weighted round-robin order from the directories with the smallest maximum entry size that
+     * accept provided expected size. Entries of unknown size are placed in the directories with the largest maximum entry
+     * size when none of the directories accepts them.
+     *
+     * @return Index of the selected directory.
+     * @throws IOException when the expected size exceeds the maximum entry size of all directories.
+     */
+    private int selectDirectory(long expectedSize) throws IOException {
+        long maxEntrySize = -1;
+        for (ParsingStoreDirectory directory : directories) {
+            if (directory.accepts(expectedSize) && (maxEntrySize == -1 || directory.getMaxEntrySize() < maxEntrySize)) {
+                maxEntrySize = directory.getMaxEntrySize();
+            }
+        }
+        if (maxEntrySize == -1 && expectedSize == UNKNOWN_SIZE) {
+            for (ParsingStoreDirectory directory : directories) {
+                maxEntrySize = Math.max(maxEntrySize, directory.getMaxEntrySize());
+            }
+        }
+        if (maxEntrySize == -1) {
+            throw new IOException(
+                    "Entry of " + expectedSize + " bytes exceeds maximum entry size of all parsing store directories");
+        }
+        List<Integer> candidates = new ArrayList<>(directories.size());
+        long totalWeight = 0;
+        for (int i = 0; i < directories.size(); i++) {
+            if (directories.get(i).getMaxEntrySize() == maxEntrySize) {
+                candidates.add(i);
+                totalWeight += directories.get(i).getWeight();
+            }
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        long slot = (placements.getAndIncrement() & Long.MAX_VALUE) % totalWeight;
+        for (int candidate : candidates) {
+            slot -= directories.get(candidate).getWeight();
+            if (slot < 0) {
+                return candidate;
+            }
+        }
+        return candidates.get(candidates.size() - 1);
     }
 
     @Override
     public InputStream getContent(UUID uuid) {
+        File file = getFile(uuid);
+        if (file == null) {
+            throw new IllegalStateException("Parsing store has lost content for ID '" + uuid.toString() + "'");
+        }
         try {
-            File file = store.get(uuid);
             return Files.newInputStream(file.toPath());
         } catch (IOException e) {
             throw new IllegalStateException(
-                    "Store has been corrupted! Expected to find file at '" + store.get(uuid).toPath() +
-                            "' for key '" + uuid + "'", e
+                    "Store has been corrupted! Expected to find file at '" + file.toPath() + "' for key '" + uuid + "'", e
             );
         }
     }
 
+    /**
+     * @return The temporary file holding content with provided UUID, or null if there is no such content.
+     */
+    File getFile(UUID uuid) {
+        StoredFile storedFile = store.get(uuid);
+        return storedFile == null ? null : storedFile.file;
+    }
+
     @Override
     protected void clearStore(UUID uuid) {
-        File file = store.remove(uuid);
-        if (file != null) {
+        StoredFile storedFile = store.remove(uuid);
+        if (storedFile != null) {
+            storedFile.fileManager.delete(storedFile.file);
+        }
+    }
+
+    /**
+     * @return The {@link TemporaryFileManager}s managing the files of this store, one for each directory.
+     */
+    List<TemporaryFileManager> getFileManagers() {
+        return Collections.unmodifiableList(fileManagers);
+    }
+
+    /**
+     * Deletes all temporary files of the store and the directory holding them.
+     */
+    @Override
+    public void close() {
+        store.clear();
+        for (TemporaryFileManager fileManager : fileManagers) {
+            fileManager.close();
+        }
+    }
+
+    /**
+     * Writes content to a temporary file, counting the written bytes. Once the content exceeds the maximum entry size of
+     * its directory, the file is moved to a directory that accepts entries of unknown size.
+     */
+    private final class FileContentWriter implements ContentWriter {
+        private final UUID uuid;
+        private ParsingStoreDirectory directory;
+        private TemporaryFileManager fileManager;
+        private File file;
+        private FileChannel channel;
+        private long written;
+
+        private FileContentWriter(UUID uuid, int directoryIndex) throws IOException {
+            this.uuid = uuid;
+            this.directory = directories.get(directoryIndex);
+            this.fileManager = fileManagers.get(directoryIndex);
+            this.file = fileManager.createTempFile();
+            try {
+                this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException | RuntimeException e) {
+                fileManager.delete(file);
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            long size = written + data.remaining();
+            if (!directory.accepts(size)) {
+                relocate(size);
+            }
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            written = size;
+        }
+
+        private void relocate(long size) throws IOException {
+            int directoryIndex = selectDirectory(UNKNOWN_SIZE);
+            ParsingStoreDirectory target = directories.get(directoryIndex);
+            if (!target.accepts(size)) {
+                throw new IOException(
+                        "Entry of at least " + size + " bytes exceeds maximum entry size of all parsing store directories");
+            }
+            TemporaryFileManager targetFileManager = fileManagers.get(directoryIndex);
+            File targetFile = targetFileManager.createTempFile();
+            FileChannel targetChannel = null;
+            try {
+                targetChannel = FileChannel.open(targetFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                long position = 0;
+                while (position < written) {
+                    position += channel.transferTo(position, written - position, targetChannel);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (targetChannel != null) {
+                    closeQuietly(targetChannel);
+                }
+                targetFileManager.delete(targetFile);
+                throw e;
+            }
+            closeQuietly(channel);
+            fileManager.delete(file);
+            directory = target;
+            fileManager = targetFileManager;
+            file = targetFile;
+            channel = targetChannel;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            channel.close();
+            store.put(uuid, new StoredFile(file, fileManager));
+        }
+
+        @Override
+        public void abort() {
+            closeQuietly(channel);
+            fileManager.delete(file);
+        }
+
+        private void closeQuietly(FileChannel fileChannel) {
             try {
-                Files.deleteIfExists(file.toPath());
-            } catch (IOException e) {
-                logger.warn("Could not delete temporary file for key '{}'", uuid, e);
+                fileChannel.close();
+            } catch (IOException ignore) {
+                // The file is deleted anyway
             }
         }
     }
 
+    private static final class StoredFile {
+        private final File file;
+        private final TemporaryFileManager fileManager;
+
+        private StoredFile(File file, TemporaryFileManager fileManager) {
+            this.file = file;
+            this.fileManager = fileManager;
+        }
+    }
+
 }
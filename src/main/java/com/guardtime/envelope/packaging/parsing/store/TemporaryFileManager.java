@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.util.Util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages temporary files of a {@link ParsingStore}. Files are created in a directory of the manager's own in the base
+ * directory and are tracked until deleted, {@link #close()} deletes the remaining files and the directory. Files are not
+ * registered with {@link File#deleteOnExit()}, which would keep their paths in memory until the JVM exits.
+ * <p>
+ * The directory holds a locked lock file while the manager is open. Directories that were left behind by processes that
+ * did not close their managers are removed from the base directory when the first manager for it is created, see
+ * {@link #sweepOrphans(Path)}.
+ * </p>
+ */
+public final class TemporaryFileManager implements Closeable {
+
+    static final String LOCK_FILE_NAME = ".lock";
+
+    private static final Logger logger = LoggerFactory.getLogger(TemporaryFileManager.class);
+    private static final long UNLOCKED_DIRECTORY_MAX_AGE = TimeUnit.HOURS.toMillis(1);
+    private static final Set<Path> SWEPT_DIRECTORIES = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    private final Path baseDirectory;
+    private final Set<File> files = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private Path directory;
+    private FileChannel lockChannel;
+    private boolean closed = false;
+
+    /**
+     * Creates a manager for temporary files in system temp folder.
+     */
+    public TemporaryFileManager() {
+        this(Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param baseDirectory directory in which the directory for temporary files is created.
+     */
+    public TemporaryFileManager(Path baseDirectory) {
+        Util.notNull(baseDirectory, "Base directory");
+        this.baseDirectory = baseDirectory.toAbsolutePath();
+        if (SWEPT_DIRECTORIES.add(this.baseDirectory)) {
+            sweepOrphans(this.baseDirectory);
+        }
+    }
+
+    /**
+     * Creates a new empty temporary file that is tracked until it is deleted with {@link #delete(File)} or the manager is
+     * closed.
+     *
+     * @throws IOException when the file can't be created or the manager has been closed.
+     */
+    public File createTempFile() throws IOException {
+        File file = Files.createTempFile(getDirectory(), Util.TEMP_FILE_PREFIX, Util.TEMP_FILE_SUFFIX).toFile();
+        files.add(file);
+        return file;
+    }
+
+    /**
+     * Deletes a temporary file created by this manager and stops tracking it.
+     */
+    public void delete(File file) {
+        files.remove(file);
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.warn("Could not delete temporary file '{}'", file, e);
+        }
+    }
+
+    /**
+     * @return Number of temporary files currently tracked.
+     */
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * @return The directory holding the temporary files, created and locked when needed.
+     */
+    synchronized Path getDirectory() throws IOException {
+        if (closed) {
+            throw new IOException("Temporary file manager has been closed");
+        }
+        if (directory == null || !Files.isDirectory(directory)) {
+            releaseLock();
+            directory = Files.createTempDirectory(baseDirectory, Util.TEMP_DIR_PREFIX);
+            lockChannel = FileChannel.open(directory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            lockChannel.lock();
+        }
+        return directory;
+    }
+
+    /**
+     * Deletes all tracked temporary files and the directory holding them. The manager can't be used after closing.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (File file : files) {
+            delete(file);
+        }
+        releaseLock();
+        if (directory != null) {
+            try {
+                Util.deleteFileOrDirectory(directory);
+            } catch (IOException e) {
+                logger.warn("Could not delete temporary directory '{}'", directory, e);
+            }
+            directory = null;
+        }
+    }
+
+    private void releaseLock() {
+        if (lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                logger.warn("Could not release lock of temporary directory '{}'", directory, e);
+            }
+            lockChannel = null;
+        }
+    }
+
+    /**
+     * Removes temporary directories that are no longer used from provided directory. A directory is removed when no process
+     * holds the lock of its lock file, or when it has no lock file and has not been modified within an hour.
+     *
+     * @param baseDirectory directory to search temporary directories from.
+     * @return Number of temporary directories removed.
+     */
+    public static int sweepOrphans(Path baseDirectory) {
+        int removed = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(baseDirectory, Util.TEMP_DIR_PREFIX + "*")) {
+            for (Path candidate : stream) {
+                if (Files.isDirectory(candidate) && isOrphan(candidate)) {
+                    Util.deleteFileOrDirectory(candidate);
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not remove orphaned temporary directories from '{}'", baseDirectory, e);
+        }
+        if (removed > 0) {
+            logger.info("Removed {} orphaned temporary directories from '{}'", removed, baseDirectory);
+        }
+        return removed;
+    }
+
+    private static boolean isOrphan(Path candidate) throws IOException {
+        Path lockFile = candidate.resolve(LOCK_FILE_NAME);
+        if (!Files.exists(lockFile)) {
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(candidate).toMillis();
+            return age > UNLOCKED_DIRECTORY_MAX_AGE;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            lock.release();
+            return true;
+        } catch (OverlappingFileLockException e) {
+            // Locked by a manager of this process
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.util.Util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps data of parsed in {@link Envelope} in a bounded in-memory buffer and writes it to a backing {@link ParsingStore},
+ * by default a {@link TemporaryFileBasedParsingStore}, in the background. Storing returns as soon as the data is buffered,
+ * so reading an envelope does not wait for disk writes. Content is served from the buffer until it has been written.
+ * Buffer capacity is reserved as data arrives, entries that do not fit into the buffer are written to the backing store
+ * directly.
+ * <p>
+ * The backing store must not be used directly by anything else.
+ * </p>
+ */
+public class WriteBehindParsingStore extends ParsingStore {
+
+    public static final long DEFAULT_BUFFER_CAPACITY = 32 * 1024 * 1024;
+    public static final int DEFAULT_WRITER_THREADS = 2;
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindParsingStore.class);
+    private static final int COPY_BUFFER_SIZE = 8192;
+    private static final int QUEUED = 0;
+    private static final int WRITING = 1;
+    private static final int WRITTEN = 2;
+    private static final int FAILED = 3;
+    private static final int CLEARED = 4;
+
+    private final ParsingStore backingStore;
+    private final Executor writerExecutor;
+    private final boolean ownsExecutor;
+    private final long bufferCapacity;
+    private final AtomicLong bufferUsed = new AtomicLong();
+    private final Map<UUID, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+
+    public WriteBehindParsingStore() {
+        this(new TemporaryFileBasedParsingStore(), DEFAULT_BUFFER_CAPACITY, DEFAULT_WRITER_THREADS);
+    }
+
+    /**
+     * @param backingStore   {@link ParsingStore} the buffered data is written to.
+     * @param bufferCapacity maximum total size in bytes of data waiting to be written.
+     * @param writerThreads  number of background threads writing the data. The threads are stopped when the store is closed.
+     */
+    public WriteBehindParsingStore(ParsingStore backingStore, long bufferCapacity, int writerThreads) {
+        this(backingStore, bufferCapacity, Executors.newFixedThreadPool(writerThreads, new WriterThreadFactory()), true);
+    }
+
+    /**
+     * @param backingStore   {@link ParsingStore} the buffered data is written to.
+     * @param bufferCapacity maximum total size in bytes of data waiting to be written.
+     * @param writerExecutor {@link Executor} running the background writes. Is not shut down when the store is closed.
+     */
+    public WriteBehindParsingStore(ParsingStore backingStore, long bufferCapacity, Executor writerExecutor) {
+        this(backingStore, bufferCapacity, writerExecutor, false);
+    }
+
+    private WriteBehindParsingStore(ParsingStore backingStore, long bufferCapacity, Executor writerExecutor,
+                                    boolean ownsExecutor) {
+        Util.notNull(backingStore, "Backing parsing store");
+        Util.notNull(writerExecutor, "Writer executor");
+        if (bufferCapacity < 0 || bufferCapacity >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Buffer capacity must be between 0 and " + (Integer.MAX_VALUE - 1));
+        }
+        this.backingStore = backingStore;
+        this.bufferCapacity = bufferCapacity;
+        this.writerExecutor = writerExecutor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream) throws IOException {
+        storeInternal(uuid, stream, UNKNOWN_SIZE);
+    }
+
+    @Override
+    void storeInternal(UUID uuid, InputStream stream, long expectedSize) throws IOException {
+        if (expectedSize > bufferCapacity) {
+            backingStore.storeInternal(uuid, stream, expectedSize);
+            return;
+        }
+        ContentWriter writer = openContentWriter(uuid, expectedSize);
+        try {
+            byte[] bytes = new byte[COPY_BUFFER_SIZE];
+            int count = stream.read(bytes);
+            while (count != -1) {
+                writer.write(ByteBuffer.wrap(bytes, 0, count));
+                count = stream.read(bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        writer.commit();
+    }
+
+    @Override
+    ContentWriter openContentWriter(UUID uuid) throws IOException {
+        return openContentWriter(uuid, UNKNOWN_SIZE);
+    }
+
+    /**
+     * Provides {@link ContentWriter} that buffers the data while buffer capacity can be reserved for it. Capacity for the
+     * expected size is reserved up front, the buffer only grows within the reserved capacity. Once the data does not fit
+     * into the buffer anymore, the buffered data and the rest of the data are written to the backing store directly.
+     */
+    @Override
+    ContentWriter openContentWriter(UUID uuid, long expectedSize) throws IOException {
+        if (expectedSize > bufferCapacity || (expectedSize > 0 && !reserve(expectedSize))) {
+            return backingStore.openContentWriter(uuid, expectedSize);
+        }
+        return new BufferingContentWriter(uuid, expectedSize);
+    }
+
+    /**
+     * Schedules buffered data, for which buffer capacity has already been reserved, to be written to the backing store.
+     */
+    private void writeBehind(UUID uuid, byte[] data, int length) {
+        PendingWrite pendingWrite = new PendingWrite(uuid, data, length);
+        pendingWrites.put(uuid, pendingWrite);
+        try {
+            writerExecutor.execute(pendingWrite);
+        } catch (RejectedExecutionException e) {
+            pendingWrite.run();
+        }
+    }
+
+    private boolean reserve(long size) {
+        while (true) {
+            long used = bufferUsed.get();
+            if (used + size > bufferCapacity) {
+                return false;
+            }
+            if (bufferUsed.compareAndSet(used, used + size)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return Total size in bytes of data waiting to be written to the backing store.
+     */
+    public long getBufferUsed() {
+        return bufferUsed.get();
+    }
+
+    @Override
+    public InputStream getContent(UUID uuid) {
+        PendingWrite pendingWrite = pendingWrites.get(uuid);
+        if (pendingWrite != null) {
+            return new ByteArrayInputStream(pendingWrite.data, 0, pendingWrite.length);
+        }
+        return backingStore.getContent(uuid);
+    }
+
+    @Override
+    protected void clearStore(UUID uuid) {
+        PendingWrite pendingWrite = pendingWrites.remove(uuid);
+        if (pendingWrite == null) {
+            backingStore.clearStore(uuid);
+            return;
+        }
+        while (true) {
+            int state = pendingWrite.state.get();
+            if (state == WRITTEN) {
+                backingStore.clearStore(uuid);
+                return;
+            }
+            if (pendingWrite.state.compareAndSet(state, CLEARED)) {
+                if (state != WRITING) {
+                    // Not written and not being written, the writer will not release the buffer
+                    bufferUsed.addAndGet(-pendingWrite.data.length);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the background writer threads created by this store and closes the backing store. Data that has not been
+     * written yet is dropped.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) writerExecutor).shutdownNow();
+        }
+        for (PendingWrite pendingWrite : pendingWrites.values()) {
+            pendingWrite.state.set(CLEARED);
+        }
+        pendingWrites.clear();
+        bufferUsed.set(0);
+        backingStore.close();
+    }
+
+    /**
+     * Buffers written data in an array that only grows within the buffer capacity reserved for it. Switches to a
+     * {@link ContentWriter} of the backing store when no more capacity can be reserved.
+     */
+    private final class BufferingContentWriter implements ContentWriter {
+        private final UUID uuid;
+        private final long expectedSize;
+        private byte[] buffer;
+        private int count;
+        private ContentWriter directWriter;
+
+        private BufferingContentWriter(UUID uuid, long expectedSize) {
+            this.uuid = uuid;
+            this.expectedSize = expectedSize;
+            this.buffer = new byte[expectedSize > 0 ? (int) expectedSize : 0];
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            if (directWriter == null && data.remaining() > buffer.length - count && !grow(count + (long) data.remaining())) {
+                directWriter = backingStore.openContentWriter(uuid, expectedSize);
+                directWriter.write(ByteBuffer.wrap(buffer, 0, count));
+                release();
+            }
+            if (directWriter != null) {
+                directWriter.write(data);
+            } else {
+                int length = data.remaining();
+                data.get(buffer, count, length);
+                count += length;
+            }
+        }
+
+        /**
+         * Reserves capacity for at least the required size, doubling the reserved capacity when possible, and grows the
+         * buffer to the reserved capacity.
+         */
+        private boolean grow(long required) {
+            long preferred = Math.min(bufferCapacity, Math.max(required, 2L * buffer.length));
+            long reserved;
+            if (preferred > required && reserve(preferred - buffer.length)) {
+                reserved = preferred;
+            } else if (required <= bufferCapacity && reserve(required - buffer.length)) {
+                reserved = required;
+            } else {
+                return false;
+            }
+            buffer = Arrays.copyOf(buffer, (int) reserved);
+            return true;
+        }
+
+        private void release() {
+            bufferUsed.addAndGet(-buffer.length);
+            buffer = null;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (directWriter != null) {
+                directWriter.commit();
+                return;
+            }
+            writeBehind(uuid, buffer, count);
+            buffer = null;
+        }
+
+        @Override
+        public void abort() {
+            if (directWriter != null) {
+                directWriter.abort();
+            } else if (buffer != null) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Buffered data waiting to be written. Holds the buffer capacity reserved for the data array until it is released.
+     */
+    private final class PendingWrite implements Runnable {
+        private final UUID uuid;
+        private final byte[] data;
+        private final int length;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        private PendingWrite(UUID uuid, byte[] data, int length) {
+            this.uuid = uuid;
+            this.data = data;
+            this.length = length;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(QUEUED, WRITING)) {
+                return;
+            }
+            boolean written = false;
+            try {
+                backingStore.storeInternal(uuid, new ByteArrayInputStream(data, 0, length), length);
+                written = true;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to write content for key '{}', keeping it in memory", uuid, e);
+            }
+            if (state.compareAndSet(WRITING, written ? WRITTEN : FAILED)) {
+                if (written) {
+                    pendingWrites.remove(uuid, this);
+                    bufferUsed.addAndGet(-data.length);
+                }
+                return;
+            }
+            // Cleared while being written
+            if (written) {
+                backingStore.clearStore(uuid);
+            }
+            bufferUsed.addAndGet(-data.length);
+        }
+    }
+
+    private static final class WriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "parsing-store-writer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
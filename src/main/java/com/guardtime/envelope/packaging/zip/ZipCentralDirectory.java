@@ -0,0 +1,360 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.zip;
+
+import com.guardtime.envelope.util.ChannelInputStream;
+import com.guardtime.envelope.util.Util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a ZIP archive accessible by random access and provides streams for the entries listed
+ * in it. Only the entries that are opened are read from the archive.
+ */
+final class ZipCentralDirectory {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH = 56;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ENCRYPTED_FLAG = 1;
+
+    private final SeekableByteChannel channel;
+    private final List<Entry> entries;
+
+    private ZipCentralDirectory(SeekableByteChannel channel, List<Entry> entries) {
+        this.channel = channel;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Reads the central directory of the ZIP archive in channel.
+     *
+     * @throws ZipException when the channel does not contain a readable ZIP archive.
+     * @throws IOException  when reading the channel fails.
+     */
+    static ZipCentralDirectory read(SeekableByteChannel channel) throws IOException {
+        long endRecordOffset = findEndOfCentralDirectory(channel);
+        ByteBuffer endRecord = readFully(channel, endRecordOffset, END_OF_CENTRAL_DIRECTORY_LENGTH);
+        long entryCount = endRecord.getShort(10) & 0xFFFF;
+        long directorySize = endRecord.getInt(12) & ZIP64_MAGIC;
+        long directoryOffset = endRecord.getInt(16) & ZIP64_MAGIC;
+
+        long locatorOffset = endRecordOffset - ZIP64_LOCATOR_LENGTH;
+        if (locatorOffset >= 0 && readFully(channel, locatorOffset, 4).getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64RecordOffset = readFully(channel, locatorOffset, ZIP64_LOCATOR_LENGTH).getLong(8);
+            ByteBuffer zip64Record = readFully(channel, zip64RecordOffset, ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH);
+            if (zip64Record.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new ZipException("Invalid ZIP64 end of central directory record");
+            }
+            entryCount = zip64Record.getLong(32);
+            directorySize = zip64Record.getLong(40);
+            directoryOffset = zip64Record.getLong(48);
+        }
+        if (entryCount < 0 || directoryOffset < 0 || directorySize < 0 || directorySize > Integer.MAX_VALUE ||
+                directoryOffset > endRecordOffset - directorySize) {
+            throw new ZipException("Invalid ZIP central directory location");
+        }
+        ByteBuffer directory = readFully(channel, directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>();
+        for (long i = 0; i < entryCount; i++) {
+            Entry entry = readEntry(directory);
+            if (entry.localHeaderOffset > directoryOffset - LOCAL_HEADER_LENGTH ||
+                    entry.compressedSize > directoryOffset - LOCAL_HEADER_LENGTH - entry.localHeaderOffset) {
+                throw new ZipException("ZIP entry '" + entry.name + "' exceeds archive bounds");
+            }
+            entries.add(entry);
+        }
+        return new ZipCentralDirectory(channel, entries);
+    }
+
+    private static long findEndOfCentralDirectory(SeekableByteChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < END_OF_CENTRAL_DIRECTORY_LENGTH) {
+            throw new ZipException("Not a ZIP archive");
+        }
+        int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+        ByteBuffer tail = readFully(channel, size - tailLength, tailLength);
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE &&
+                    i + END_OF_CENTRAL_DIRECTORY_LENGTH + (tail.getShort(i + 20) & 0xFFFF) == tailLength) {
+                return size - tailLength + i;
+            }
+        }
+        throw new ZipException("ZIP end of central directory record not found");
+    }
+
+    private static Entry readEntry(ByteBuffer directory) throws ZipException {
+        if (directory.remaining() < CENTRAL_HEADER_LENGTH) {
+            throw new ZipException("Truncated ZIP central directory");
+        }
+        int start = directory.position();
+        if (directory.getInt(start) != CENTRAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid ZIP central directory entry signature");
+        }
+        int flags = directory.getShort(start + 8) & 0xFFFF;
+        int method = directory.getShort(start + 10) & 0xFFFF;
+        long crc = directory.getInt(start + 16) & ZIP64_MAGIC;
+        long compressedSize = directory.getInt(start + 20) & ZIP64_MAGIC;
+        long size = directory.getInt(start + 24) & ZIP64_MAGIC;
+        int nameLength = directory.getShort(start + 28) & 0xFFFF;
+        int extraLength = directory.getShort(start + 30) & 0xFFFF;
+        int commentLength = directory.getShort(start + 32) & 0xFFFF;
+        long localHeaderOffset = directory.getInt(start + 42) & ZIP64_MAGIC;
+        if (directory.remaining() < CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength) {
+            throw new ZipException("Truncated ZIP central directory");
+        }
+
+        byte[] nameBytes = new byte[nameLength];
+        directory.position(start + CENTRAL_HEADER_LENGTH);
+        directory.get(nameBytes);
+        int extraStart = directory.position();
+        int extraEnd = extraStart + extraLength;
+        while (extraStart + 4 <= extraEnd) {
+            int id = directory.getShort(extraStart) & 0xFFFF;
+            int length = directory.getShort(extraStart + 2) & 0xFFFF;
+            int fieldEnd = extraStart + 4 + length;
+            if (fieldEnd > extraEnd) {
+                throw new ZipException("Invalid ZIP extra field length");
+            }
+            if (id == ZIP64_EXTRA_FIELD_ID) {
+                int field = extraStart + 4;
+                if (size == ZIP64_MAGIC) {
+                    size = readZip64Value(directory, field, fieldEnd);
+                    field += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC) {
+                    compressedSize = readZip64Value(directory, field, fieldEnd);
+                    field += 8;
+                }
+                if (localHeaderOffset == ZIP64_MAGIC) {
+                    localHeaderOffset = readZip64Value(directory, field, fieldEnd);
+                }
+            }
+            extraStart = fieldEnd;
+        }
+        directory.position(extraEnd + commentLength);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+        if (size < 0 || compressedSize < 0 || localHeaderOffset < 0) {
+            throw new ZipException("Invalid size or offset of ZIP entry '" + name + "'");
+        }
+        return new Entry(name, flags, method, crc, compressedSize, size, localHeaderOffset);
+    }
+
+    private static long readZip64Value(ByteBuffer directory, int field, int fieldEnd) throws ZipException {
+        if (field + 8 > fieldEnd) {
+            throw new ZipException("Truncated ZIP64 extra field");
+        }
+        return directory.getLong(field);
+    }
+
+    private static ByteBuffer readFully(SeekableByteChannel channel, long offset, int length) throws IOException {
+        if (offset < 0 || offset > channel.size() - length) {
+            throw new ZipException("Unexpected end of ZIP archive");
+        }
+        byte[] bytes = new byte[length];
+        try (InputStream input = new ChannelInputStream(channel, offset, length)) {
+            int read = 0;
+            while (read < length) {
+                read += input.read(bytes, read, length - read);
+            }
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return All entries listed in the central directory, in the order of listing.
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The position in the archive where the (possibly compressed) data of the entry starts.
+     * @throws IOException when the local header of the entry can not be read.
+     */
+    long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = readFully(channel, entry.localHeaderOffset, LOCAL_HEADER_LENGTH);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid ZIP local header signature for entry '" + entry.name + "'");
+        }
+        int nameLength = header.getShort(26) & 0xFFFF;
+        int extraLength = header.getShort(28) & 0xFFFF;
+        return entry.localHeaderOffset + LOCAL_HEADER_LENGTH + nameLength + extraLength;
+    }
+
+    /**
+     * @return {@link InputStream} that provides the uncompressed data of the entry. CRC of the data is checked once
+     * the end of stream is reached.
+     * @throws IOException when the entry can not be read.
+     */
+    InputStream getInputStream(Entry entry) throws IOException {
+        if ((entry.flags & ENCRYPTED_FLAG) != 0) {
+            throw new ZipException("Encrypted ZIP entry '" + entry.name + "' is not supported");
+        }
+        InputStream raw = new ChannelInputStream(channel, getDataOffset(entry), entry.compressedSize);
+        switch (entry.method) {
+            case ZipEntry.STORED:
+                return new CheckedEntryInputStream(raw, entry);
+            case ZipEntry.DEFLATED:
+                return new CheckedEntryInputStream(new InflaterInputStream(raw, new Inflater(true)) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inf.end();
+                    }
+                }, entry);
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method + " for entry '" + entry.name + "'");
+        }
+    }
+
+    /**
+     * Entry as listed in the central directory of ZIP archive.
+     */
+    static final class Entry {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int flags, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+
+    /**
+     * Verifies size and CRC of the entry data once it has been fully read.
+     */
+    private static final class CheckedEntryInputStream extends FilterInputStream {
+        private final Entry entry;
+        private final CRC32 crc = new CRC32();
+        private long count = 0;
+        private boolean verified = false;
+
+        private CheckedEntryInputStream(InputStream input, Entry entry) {
+            super(input);
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read == -1) {
+                verify();
+                return -1;
+            }
+            crc.update(bytes, offset, read);
+            count += read;
+            if (count > entry.size) {
+                throw new ZipException("Invalid size of ZIP entry '" + entry.name + "'");
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            return Util.skipByReading(this, count);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void verify() throws ZipException {
+            if (verified) {
+                return;
+            }
+            verified = true;
+            if (count != entry.size) {
+                throw new ZipException("Invalid size of ZIP entry '" + entry.name + "'");
+            }
+            if (crc.getValue() != entry.crc) {
+                throw new ZipException("Invalid CRC of ZIP entry '" + entry.name + "'");
+            }
+        }
+    }
+
+}
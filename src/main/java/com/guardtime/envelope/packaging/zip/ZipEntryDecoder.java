@@ -0,0 +1,391 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.zip;
+
+import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
+import com.guardtime.envelope.packaging.parsing.EntryDecoder;
+import com.guardtime.envelope.packaging.parsing.ParsingStoreSession;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreException;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreSink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes ZIP local file headers and entry data incrementally from data that is pushed to it piece by piece. Entry data
+ * is written to {@link ParsingStoreSession} as it arrives. Decoding stops at the central directory.
+ */
+class ZipEntryDecoder implements EntryDecoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZipEntryDecoder.class);
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int SIGNATURE_LENGTH = 4;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ENCRYPTED_FLAG = 1;
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+    private static final int BUFFER_SIZE = 8192;
+
+    private enum State {
+        LOCAL_HEADER,
+        NAME_AND_EXTRA,
+        DATA,
+        DATA_DESCRIPTOR,
+        TRAILER
+    }
+
+    private final ParsingStoreSession storeSession;
+    private final EnvelopeReadingException readingException;
+    private final ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 checksum = new CRC32();
+    private final byte[] outputBuffer = new byte[BUFFER_SIZE];
+    private byte[] inputBuffer;
+    private Inflater inflater;
+    private State state = State.LOCAL_HEADER;
+
+    private ByteBuffer nameAndExtra;
+    private ByteBuffer descriptor;
+    private String name;
+    private int flags;
+    private int method;
+    private long crc;
+    private long compressedSize;
+    private long size;
+    private boolean zip64;
+    private long remainingCompressed;
+    private long written;
+    private ParsingStoreSink sink;
+
+    ZipEntryDecoder(ParsingStoreSession storeSession, EnvelopeReadingException readingException) {
+        this.storeSession = storeSession;
+        this.readingException = readingException;
+    }
+
+    @Override
+    public void decode(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (storeSession.isLimitExceeded()) {
+                // Envelope is rejected once parsing is completed, the rest of the data is not needed.
+                abort();
+                state = State.TRAILER;
+                data.position(data.limit());
+                return;
+            }
+            switch (state) {
+                case LOCAL_HEADER:
+                    readLocalHeader(data);
+                    break;
+                case NAME_AND_EXTRA:
+                    readNameAndExtra(data);
+                    break;
+                case DATA:
+                    if (method == ZipEntry.STORED) {
+                        readStoredData(data);
+                    } else {
+                        readDeflatedData(data);
+                    }
+                    break;
+                case DATA_DESCRIPTOR:
+                    readDataDescriptor(data);
+                    break;
+                default:
+                    // Central directory is not needed, all entries have been read.
+                    data.position(data.limit());
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (state == State.TRAILER || (state == State.LOCAL_HEADER && header.position() == 0)) {
+            release();
+            return;
+        }
+        abort();
+        throw new ZipException("Unexpected end of ZIP data");
+    }
+
+    @Override
+    public void abort() {
+        if (sink != null) {
+            sink.abort();
+            sink = null;
+        }
+        release();
+    }
+
+    private void release() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    private void readLocalHeader(ByteBuffer data) throws IOException {
+        int limit = header.position() < SIGNATURE_LENGTH ? SIGNATURE_LENGTH : LOCAL_HEADER_LENGTH;
+        if (!fill(header, data, limit)) {
+            return;
+        }
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            logger.trace("Reached end of ZIP entries");
+            state = State.TRAILER;
+            return;
+        }
+        if (header.position() < LOCAL_HEADER_LENGTH) {
+            return;
+        }
+        flags = header.getShort(6) & 0xFFFF;
+        method = header.getShort(8) & 0xFFFF;
+        crc = header.getInt(14) & ZIP64_MAGIC;
+        compressedSize = header.getInt(18) & ZIP64_MAGIC;
+        size = header.getInt(22) & ZIP64_MAGIC;
+        int nameLength = header.getShort(26) & 0xFFFF;
+        int extraLength = header.getShort(28) & 0xFFFF;
+        nameAndExtra = ByteBuffer.allocate(nameLength + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        state = State.NAME_AND_EXTRA;
+        if (nameLength + extraLength == 0) {
+            startEntry();
+        }
+    }
+
+    private void readNameAndExtra(ByteBuffer data) throws IOException {
+        if (fill(nameAndExtra, data, nameAndExtra.capacity())) {
+            startEntry();
+        }
+    }
+
+    private void startEntry() throws IOException {
+        int nameLength = header.getShort(26) & 0xFFFF;
+        name = new String(nameAndExtra.array(), 0, nameLength, StandardCharsets.UTF_8);
+        readZip64Sizes(nameLength);
+        if ((flags & ENCRYPTED_FLAG) != 0) {
+            throw new ZipException("Encrypted ZIP entry '" + name + "' is not supported");
+        }
+        if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + method + " for entry '" + name + "'");
+        }
+        if (method == ZipEntry.STORED && hasDataDescriptor()) {
+            throw new ZipException("Only DEFLATED entries can have data descriptor, entry '" + name + "'");
+        }
+        checksum.reset();
+        written = 0;
+        remainingCompressed = compressedSize;
+        if (method == ZipEntry.DEFLATED) {
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            } else {
+                inflater.reset();
+            }
+        }
+        openSink();
+        state = State.DATA;
+        if (method == ZipEntry.STORED && remainingCompressed == 0) {
+            endEntry();
+        }
+    }
+
+    private void openSink() {
+        if (name.endsWith("/")) {
+            logger.trace("Skipping ZIP directory '{}'", name);
+            return;
+        }
+        try {
+            logger.debug("Reading ZIP entry '{}'.", name);
+            sink = storeSession.openSink(name, hasDataDescriptor() ? ParsingStore.UNKNOWN_SIZE : size);
+        } catch (ParsingStoreException e) {
+            readingException.addException(e);
+        }
+    }
+
+    private void readZip64Sizes(int nameLength) {
+        zip64 = false;
+        int position = nameLength;
+        int end = nameAndExtra.capacity();
+        while (position + 4 <= end) {
+            int id = nameAndExtra.getShort(position) & 0xFFFF;
+            int length = nameAndExtra.getShort(position + 2) & 0xFFFF;
+            if (id == ZIP64_EXTRA_FIELD_ID) {
+                zip64 = true;
+                int field = position + 4;
+                if (size == ZIP64_MAGIC && field + 8 <= end) {
+                    size = nameAndExtra.getLong(field);
+                    field += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC && field + 8 <= end) {
+                    compressedSize = nameAndExtra.getLong(field);
+                }
+            }
+            position += 4 + length;
+        }
+    }
+
+    private boolean hasDataDescriptor() {
+        return (flags & DATA_DESCRIPTOR_FLAG) != 0;
+    }
+
+    private void readStoredData(ByteBuffer data) throws IOException {
+        int length = (int) Math.min(data.remaining(), remainingCompressed);
+        ByteBuffer chunk = data.slice();
+        chunk.limit(length);
+        data.position(data.position() + length);
+        remainingCompressed -= length;
+        if (chunk.hasArray()) {
+            output(chunk.array(), chunk.arrayOffset(), length);
+        } else {
+            while (chunk.hasRemaining()) {
+                int count = Math.min(outputBuffer.length, chunk.remaining());
+                chunk.get(outputBuffer, 0, count);
+                output(outputBuffer, 0, count);
+            }
+        }
+        if (remainingCompressed == 0) {
+            endEntry();
+        }
+    }
+
+    private void readDeflatedData(ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (!hasDataDescriptor()) {
+            length = (int) Math.min(length, remainingCompressed);
+        }
+        byte[] input;
+        int offset;
+        if (data.hasArray()) {
+            input = data.array();
+            offset = data.arrayOffset() + data.position();
+        } else {
+            if (inputBuffer == null) {
+                inputBuffer = new byte[BUFFER_SIZE];
+            }
+            length = Math.min(length, inputBuffer.length);
+            data.duplicate().get(inputBuffer, 0, length);
+            input = inputBuffer;
+            offset = 0;
+        }
+        inflater.setInput(input, offset, length);
+        try {
+            while (!inflater.needsInput() && !inflater.finished()) {
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid compressed data of entry '" + name + "'");
+                }
+                int count = inflater.inflate(outputBuffer);
+                output(outputBuffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data of entry '" + name + "': " + e.getMessage());
+        }
+        int consumed = length - inflater.getRemaining();
+        data.position(data.position() + consumed);
+        remainingCompressed -= consumed;
+        if (inflater.finished()) {
+            if (hasDataDescriptor()) {
+                descriptor = ByteBuffer.allocate(SIGNATURE_LENGTH + 4 + (zip64 ? 16 : 8)).order(ByteOrder.LITTLE_ENDIAN);
+                state = State.DATA_DESCRIPTOR;
+            } else {
+                endEntry();
+            }
+        } else if (!hasDataDescriptor() && remainingCompressed == 0) {
+            throw new ZipException("Unexpected end of compressed data of entry '" + name + "'");
+        }
+    }
+
+    private void readDataDescriptor(ByteBuffer data) throws IOException {
+        if (descriptor.position() < SIGNATURE_LENGTH && !fill(descriptor, data, SIGNATURE_LENGTH)) {
+            return;
+        }
+        int offset = descriptor.getInt(0) == DATA_DESCRIPTOR_SIGNATURE ? SIGNATURE_LENGTH : 0;
+        if (!fill(descriptor, data, descriptor.capacity() - SIGNATURE_LENGTH + offset)) {
+            return;
+        }
+        crc = descriptor.getInt(offset) & ZIP64_MAGIC;
+        if (zip64) {
+            size = descriptor.getLong(offset + 12);
+        } else {
+            size = descriptor.getInt(offset + 8) & ZIP64_MAGIC;
+        }
+        endEntry();
+    }
+
+    private void output(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        checksum.update(bytes, offset, length);
+        written += length;
+        if (sink != null) {
+            try {
+                storeSession.countStoredBytes(name, written, length);
+                sink.write(ByteBuffer.wrap(bytes, offset, length));
+            } catch (ParsingStoreException e) {
+                readingException.addException(e);
+                sink.abort();
+                sink = null;
+            }
+        }
+    }
+
+    private void endEntry() throws IOException {
+        if (written != size || checksum.getValue() != crc) {
+            throw new ZipException("Invalid size or CRC of ZIP entry '" + name + "'");
+        }
+        if (sink != null) {
+            ParsingStoreSink completed = sink;
+            sink = null;
+            try {
+                storeSession.store(name, completed.complete());
+            } catch (ParsingStoreException e) {
+                readingException.addException(e);
+            }
+        }
+        header.clear();
+        state = State.LOCAL_HEADER;
+    }
+
+    /**
+     * Copies bytes from source to target until target contains limit bytes.
+     *
+     * @return True if target contains limit bytes.
+     */
+    private boolean fill(ByteBuffer target, ByteBuffer source, int limit) {
+        int count = Math.min(limit - target.position(), source.remaining());
+        if (count > 0) {
+            ByteBuffer slice = source.slice();
+            slice.limit(count);
+            target.put(slice);
+            source.position(source.position() + count);
+        }
+        return target.position() == limit;
+    }
+
+}
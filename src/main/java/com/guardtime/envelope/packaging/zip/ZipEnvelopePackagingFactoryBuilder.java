@@ -35,7 +35,8 @@ public class ZipEnvelopePackagingFactoryBuilder extends EnvelopePackagingFactory
 
     @Override
     public EnvelopePackagingFactory build() throws IOException {
-        envelopeReader = new ZipEnvelopeReader(manifestFactory, signatureFactory, parsingStore);
+        envelopeReader = new ZipEnvelopeReader(manifestFactory, signatureFactory, parsingStore, signatureContentExecutor,
+                parsingLimits, entryInflationExecutor);
         return super.build();
     }
 }
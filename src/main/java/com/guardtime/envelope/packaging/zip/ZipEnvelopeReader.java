@@ -19,27 +19,93 @@
 
 package com.guardtime.envelope.packaging.zip;
 
+import com.guardtime.envelope.manifest.AnnotationsManifest;
 import com.guardtime.envelope.manifest.EnvelopeManifestFactory;
+import com.guardtime.envelope.manifest.FileReference;
+import com.guardtime.envelope.manifest.Manifest;
+import com.guardtime.envelope.manifest.SignatureReference;
 import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
+import com.guardtime.envelope.packaging.exception.InvalidEnvelopeException;
+import com.guardtime.envelope.packaging.parsing.EntryDecoder;
 import com.guardtime.envelope.packaging.parsing.EnvelopeReader;
+import com.guardtime.envelope.packaging.parsing.ParsingLimits;
 import com.guardtime.envelope.packaging.parsing.ParsingStoreSession;
+import com.guardtime.envelope.packaging.parsing.handler.AnnotationsManifestHandler;
+import com.guardtime.envelope.packaging.parsing.handler.ContentHandler;
+import com.guardtime.envelope.packaging.parsing.handler.ContentParsingException;
+import com.guardtime.envelope.packaging.parsing.handler.DocumentsManifestHandler;
+import com.guardtime.envelope.packaging.parsing.handler.ManifestHandler;
+import com.guardtime.envelope.packaging.parsing.store.ContentSource;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
 import com.guardtime.envelope.packaging.parsing.store.ParsingStoreException;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStoreReference;
+import com.guardtime.envelope.packaging.parsing.store.SourceBackedParsingStore;
 import com.guardtime.envelope.signature.SignatureFactory;
+import com.guardtime.envelope.util.ByteBufferChannel;
+import com.guardtime.envelope.util.Util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
+import static com.guardtime.envelope.packaging.EnvelopeWriter.MIME_TYPE_ENTRY_NAME;
+
 /**
  * ZIP implementation for {@link EnvelopeReader} which knows how to handle ZipInputStream to gather all entries from it.
  */
 class ZipEnvelopeReader extends EnvelopeReader {
 
+    private final ManifestHandler manifestHandler;
+    private final DocumentsManifestHandler documentsManifestHandler;
+    private final AnnotationsManifestHandler annotationsManifestHandler;
+    private final Executor entryInflationExecutor;
+
     ZipEnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
                       ParsingStore store) {
-        super(manifestFactory, signatureFactory, store);
+        this(manifestFactory, signatureFactory, store, null);
+    }
+
+    ZipEnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                      ParsingStore store, Executor signatureContentExecutor) {
+        this(manifestFactory, signatureFactory, store, signatureContentExecutor, ParsingLimits.UNLIMITED);
+    }
+
+    ZipEnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                      ParsingStore store, Executor signatureContentExecutor, ParsingLimits parsingLimits) {
+        this(manifestFactory, signatureFactory, store, signatureContentExecutor, parsingLimits, null);
+    }
+
+    /**
+     * @param entryInflationExecutor executor on which entries of envelopes read from files are inflated and stored
+     *                               concurrently. Parsing store must be thread-safe when used. If null, entries of files are
+     *                               read from the file only when their content is accessed.
+     */
+    ZipEnvelopeReader(EnvelopeManifestFactory manifestFactory, SignatureFactory signatureFactory,
+                      ParsingStore store, Executor signatureContentExecutor, ParsingLimits parsingLimits,
+                      Executor entryInflationExecutor) {
+        super(manifestFactory, signatureFactory, store, signatureContentExecutor, parsingLimits);
+        this.manifestHandler = new ManifestHandler(manifestFactory);
+        this.documentsManifestHandler = new DocumentsManifestHandler(manifestFactory);
+        this.annotationsManifestHandler = new AnnotationsManifestHandler(manifestFactory);
+        this.entryInflationExecutor = entryInflationExecutor;
     }
 
     protected void parseInputStream(InputStream input, ParsingStoreSession storeSession,
@@ -52,16 +118,317 @@ class ZipEnvelopeReader extends EnvelopeReader {
                     LOGGER.trace("Skipping ZIP directory '{}'", name);
                     continue;
                 }
+                if (!storeSession.accepts(name)) {
+                    LOGGER.trace("Skipping ZIP entry '{}'", name);
+                    continue;
+                }
                 try {
                     LOGGER.debug("Reading ZIP entry '{}'.", name);
-                    storeSession.store(name, zipInput);
+                    storeSession.store(name, zipInput, entry.getSize());
                 } catch (ParsingStoreException e) {
+                    if (storeSession.isLimitExceeded()) {
+                        LOGGER.debug("Stopped reading ZIP entries at '{}'. Reason: '{}'", name, e.getMessage());
+                        break;
+                    }
                     readingException.addException(e);
                 }
             }
         }
     }
 
+    /**
+     * Reads the ZIP central directory from the channel. MIME type, manifests and signatures are stored eagerly, other entries are
+     * left in the channel and inflated only when their content is accessed. The channel is closed once no stored
+     * entry refers to it anymore.
+     * <p>
+     * If an entry inflation executor is set and the channel is a {@link FileChannel}, all entries are inflated and stored
+     * concurrently instead and the channel is closed once they have been stored.
+     * </p>
+     */
+    @Override
+    protected void parseChannel(SeekableByteChannel channel, ParsingStoreSession storeSession,
+                                EnvelopeReadingException readingException) throws IOException {
+        if (entryInflationExecutor != null && channel instanceof FileChannel) {
+            try (SeekableByteChannel input = channel) {
+                inflateEntriesConcurrently(ZipCentralDirectory.read(input), storeSession, readingException);
+            }
+            return;
+        }
+        parseCentralDirectory(channel, storeSession, readingException, false);
+    }
+
+    /**
+     * Reads the ZIP central directory from the buffer. Entries stored without compression are not copied, their content
+     * is read from the buffer when it is accessed. Compressed entries are inflated once and stored.
+     */
+    @Override
+    protected void parseBuffer(ByteBuffer buffer, ParsingStoreSession storeSession,
+                               EnvelopeReadingException readingException) throws IOException {
+        parseCentralDirectory(new ByteBufferChannel(buffer), storeSession, readingException, true);
+    }
+
+    private void parseCentralDirectory(SeekableByteChannel channel, ParsingStoreSession storeSession,
+                                       EnvelopeReadingException readingException, boolean storeCompressed)
+            throws IOException {
+        SourceBackedParsingStore channelStore = new SourceBackedParsingStore(channel);
+        boolean channelInUse = false;
+        try {
+            final ZipCentralDirectory directory = ZipCentralDirectory.read(channel);
+            for (final ZipCentralDirectory.Entry entry : directory.getEntries()) {
+                if (storeSession.isLimitExceeded()) {
+                    break;
+                }
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    LOGGER.trace("Skipping ZIP directory '{}'", name);
+                    continue;
+                }
+                if (!storeSession.accepts(name)) {
+                    LOGGER.trace("Skipping ZIP entry '{}'", name);
+                    continue;
+                }
+                try {
+                    if (isMetadataEntry(name) || (storeCompressed && entry.getMethod() != ZipEntry.STORED)) {
+                        LOGGER.debug("Reading ZIP entry '{}'.", name);
+                        storeSession.countArchiveBytes(entry.getCompressedSize());
+                        try (InputStream input = directory.getInputStream(entry)) {
+                            storeSession.store(name, input, entry.getSize());
+                        }
+                    } else {
+                        LOGGER.debug("Registering ZIP entry '{}' for reading on demand.", name);
+                        storeSession.countArchiveBytes(entry.getCompressedSize());
+                        storeSession.countStoredBytes(name, entry.getSize(), entry.getSize());
+                        ParsingStoreReference reference = channelStore.store(new ContentSource() {
+                            @Override
+                            public InputStream open() throws IOException {
+                                return directory.getInputStream(entry);
+                            }
+                        }, name);
+                        channelInUse = true;
+                        storeSession.store(name, reference);
+                    }
+                } catch (ParsingStoreException e) {
+                    readingException.addException(e);
+                }
+            }
+        } finally {
+            if (!channelInUse) {
+                channel.close();
+            }
+        }
+    }
+
+    private void inflateEntriesConcurrently(final ZipCentralDirectory directory, final ParsingStoreSession storeSession,
+                                            EnvelopeReadingException readingException) throws IOException {
+        Map<String, InflationTask> tasks = new LinkedHashMap<>();
+        for (final ZipCentralDirectory.Entry entry : directory.getEntries()) {
+            final String name = entry.getName();
+            if (entry.isDirectory()) {
+                LOGGER.trace("Skipping ZIP directory '{}'", name);
+                continue;
+            }
+            if (!storeSession.accepts(name)) {
+                LOGGER.trace("Skipping ZIP entry '{}'", name);
+                continue;
+            }
+            InflationTask task = new InflationTask(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException, ParsingStoreException {
+                    if (storeSession.isLimitExceeded()) {
+                        return null;
+                    }
+                    LOGGER.debug("Reading ZIP entry '{}'.", name);
+                    storeSession.countArchiveBytes(entry.getCompressedSize());
+                    try (InputStream input = directory.getInputStream(entry)) {
+                        storeSession.store(name, input, entry.getSize());
+                    }
+                    return null;
+                }
+            });
+            try {
+                entryInflationExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                cancelAndAwait(tasks.values());
+                throw e;
+            }
+            tasks.put(name, task);
+        }
+
+        // All tasks are waited for before failing, so none of them stores anything after the store session is cleared
+        Exception failure = null;
+        for (Map.Entry<String, InflationTask> task : tasks.entrySet()) {
+            try {
+                task.getValue().get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ParsingStoreException) {
+                    if (!storeSession.isLimitExceeded()) {
+                        readingException.addException(cause);
+                    }
+                } else if (failure == null) {
+                    if (cause instanceof IOException || cause instanceof RuntimeException) {
+                        failure = (Exception) cause;
+                    } else {
+                        failure = new IllegalStateException("Reading ZIP entry '" + task.getKey() + "' failed!", cause);
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancelAndAwait(tasks.values());
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading ZIP entries!");
+            }
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    private static void cancelAndAwait(Iterable<InflationTask> tasks) {
+        for (InflationTask task : tasks) {
+            task.cancelAndAwait();
+        }
+    }
+
+    /**
+     * {@link FutureTask} that can be cancelled so that it either never starts or has finished running once cancelling
+     * returns.
+     */
+    private static final class InflationTask extends FutureTask<Void> {
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private InflationTask(Callable<Void> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        private void cancelAndAwait() {
+            boolean running = !started.compareAndSet(false, true);
+            cancel(true);
+            if (!running) {
+                return;
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks the structure of the envelope using only the ZIP central directory and the MIME type and manifest entries.
+     * Truncated archives are detected by the central directory listing entries beyond the archive bounds. The MIME type
+     * must be the first entry, and the documents manifest, annotations manifest and single annotation manifests referred
+     * to by the manifests must be present. Documents are not required to be present as they may have been detached.
+     */
+    @Override
+    public void preValidate(SeekableByteChannel channel) throws IOException, InvalidEnvelopeException {
+        Util.notNull(channel, "Channel");
+        ZipCentralDirectory directory;
+        try {
+            directory = ZipCentralDirectory.read(channel);
+        } catch (ZipException e) {
+            throw new InvalidEnvelopeException("Envelope is not a readable ZIP archive!", e);
+        }
+        Map<String, ZipCentralDirectory.Entry> entries = new HashMap<>();
+        for (ZipCentralDirectory.Entry entry : directory.getEntries()) {
+            entries.put(entry.getName(), entry);
+        }
+        validateMimeType(directory, entries.get(MIME_TYPE_ENTRY_NAME));
+
+        boolean manifestFound = false;
+        for (ZipCentralDirectory.Entry entry : directory.getEntries()) {
+            if (!manifestHandler.isSupported(entry.getName())) {
+                continue;
+            }
+            manifestFound = true;
+            Manifest manifest = parseManifest(directory, entry, manifestHandler);
+            FileReference documentsManifestReference = manifest.getDocumentsManifestReference();
+            FileReference annotationsManifestReference = manifest.getAnnotationsManifestReference();
+            SignatureReference signatureReference = manifest.getSignatureReference();
+            ZipCentralDirectory.Entry documentsManifestEntry = validateReference(entries, entry.getName(),
+                    documentsManifestReference == null ? null : documentsManifestReference.getUri());
+            ZipCentralDirectory.Entry annotationsManifestEntry = validateReference(entries, entry.getName(),
+                    annotationsManifestReference == null ? null : annotationsManifestReference.getUri());
+            validateReference(entries, entry.getName(), signatureReference == null ? null : signatureReference.getUri());
+
+            parseManifest(directory, documentsManifestEntry, documentsManifestHandler);
+            AnnotationsManifest annotationsManifest =
+                    parseManifest(directory, annotationsManifestEntry, annotationsManifestHandler);
+            for (FileReference reference : annotationsManifest.getSingleAnnotationManifestReferences()) {
+                validateReference(entries, annotationsManifestEntry.getName(), reference.getUri());
+            }
+        }
+        if (!manifestFound) {
+            throw new InvalidEnvelopeException("No manifest found in envelope!");
+        }
+    }
+
+    private <T> T parseManifest(ZipCentralDirectory directory, ZipCentralDirectory.Entry entry, ContentHandler<T> handler)
+            throws IOException, InvalidEnvelopeException {
+        try (InputStream input = directory.getInputStream(entry)) {
+            return handler.parse(input, entry.getName());
+        } catch (ContentParsingException | ZipException e) {
+            throw new InvalidEnvelopeException("Failed to parse manifest '" + entry.getName() + "'!", e);
+        }
+    }
+
+    private void validateMimeType(ZipCentralDirectory directory, ZipCentralDirectory.Entry entry)
+            throws IOException, InvalidEnvelopeException {
+        byte[] expected = getMimeType().getBytes(StandardCharsets.UTF_8);
+        if (entry == null || entry.getSize() != expected.length) {
+            throw new InvalidEnvelopeException("Parsed Envelope has invalid MIME type. Can't process it!");
+        }
+        for (ZipCentralDirectory.Entry other : directory.getEntries()) {
+            if (other.getLocalHeaderOffset() < entry.getLocalHeaderOffset()) {
+                throw new InvalidEnvelopeException("MIME type is not the first entry of the envelope!");
+            }
+        }
+        try (InputStream input = directory.getInputStream(entry)) {
+            if (!Arrays.equals(expected, com.guardtime.ksi.util.Util.toByteArray(input))) {
+                throw new InvalidEnvelopeException("Parsed Envelope has invalid MIME type. Can't process it!");
+            }
+        } catch (ZipException e) {
+            throw new InvalidEnvelopeException("No parsable MIME type.", e);
+        }
+    }
+
+    private ZipCentralDirectory.Entry validateReference(Map<String, ZipCentralDirectory.Entry> entries, String manifestName,
+                                                        String uri) throws InvalidEnvelopeException {
+        ZipCentralDirectory.Entry entry = uri == null ? null : entries.get(uri);
+        if (entry == null) {
+            throw new InvalidEnvelopeException("Manifest '" + manifestName + "' refers to missing entry '" + uri + "'!");
+        }
+        return entry;
+    }
+
+    @Override
+    protected EntryDecoder createEntryDecoder(ParsingStoreSession storeSession, EnvelopeReadingException readingException) {
+        return new ZipEntryDecoder(storeSession, readingException);
+    }
+
     @Override
     protected String getMimeType() {
         return ZipEnvelopePackagingFactoryBuilder.MIME_TYPE;
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.signature.lazy;
+
+import com.guardtime.envelope.signature.EnvelopeSignature;
+import com.guardtime.envelope.signature.SignatureException;
+import com.guardtime.envelope.signature.SignatureFactory;
+import com.guardtime.ksi.hashing.DataHash;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link EnvelopeSignature} implementation that keeps the bytes of a read signature and decodes them with the provided
+ * {@link SignatureFactory} when the decoded signature is first needed.
+ */
+class LazySignature<T> implements EnvelopeSignature<T> {
+
+    private final byte[] content;
+    private final SignatureFactory signatureFactory;
+    private EnvelopeSignature<T> decoded;
+    private T originalSignature;
+
+    LazySignature(byte[] content, SignatureFactory signatureFactory) {
+        this.content = content;
+        this.signatureFactory = signatureFactory;
+    }
+
+    /**
+     * Writes the original bytes unless the signature has been changed since it was decoded, e.g. by extending it.
+     */
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        EnvelopeSignature<T> signature = getDecodedIfPresent();
+        if (signature == null || signature.getSignature() == originalSignature) {
+            output.write(content);
+        } else {
+            signature.writeTo(output);
+        }
+    }
+
+    @Override
+    public T getSignature() {
+        return getDecoded().getSignature();
+    }
+
+    @Override
+    public DataHash getSignedDataHash() {
+        return getDecoded().getSignedDataHash();
+    }
+
+    @Override
+    public boolean isExtended() {
+        return getDecoded().isExtended();
+    }
+
+    @Override
+    public EnvelopeSignature<T> getCopy() {
+        EnvelopeSignature<T> signature = getDecodedIfPresent();
+        if (signature == null || signature.getSignature() == originalSignature) {
+            return new LazySignature<>(content, signatureFactory);
+        }
+        return signature.getCopy();
+    }
+
+    @Override
+    public int compareTo(EnvelopeSignature<T> o) {
+        return getDecoded().compareTo(o);
+    }
+
+    /**
+     * @return Signature decoded from the original bytes.
+     * @throws IllegalStateException when the bytes can not be decoded to a signature.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized EnvelopeSignature<T> getDecoded() {
+        if (decoded == null) {
+            try {
+                decoded = signatureFactory.read(new ByteArrayInputStream(content));
+            } catch (SignatureException e) {
+                throw new IllegalStateException("Failed to decode signature!", e);
+            }
+            originalSignature = decoded.getSignature();
+        }
+        return decoded;
+    }
+
+    private synchronized EnvelopeSignature<T> getDecodedIfPresent() {
+        return decoded;
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.signature.lazy;
+
+import com.guardtime.envelope.extending.ExtendingPolicy;
+import com.guardtime.envelope.signature.EnvelopeSignature;
+import com.guardtime.envelope.signature.SignatureException;
+import com.guardtime.envelope.signature.SignatureFactory;
+import com.guardtime.envelope.signature.SignatureFactoryType;
+import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.DataHash;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Implementation for a {@link SignatureFactory} that postpones decoding of read signatures until they are needed.
+ * <p>
+ * Read signatures keep the bytes they were read from and are decoded by the provided {@link SignatureFactory} only when
+ * the underlying signature, the signed {@link DataHash} or ordering of signatures is requested. Until then, and as long as
+ * the signature is not extended, writing the signature outputs the original bytes unchanged.
+ * </p><p>
+ * NB! Invalid signature data is detected only when the signature is decoded. Decoding failures are then thrown as
+ * {@link IllegalStateException}.
+ * </p>
+ */
+public class LazySignatureFactory implements SignatureFactory {
+
+    private final SignatureFactory signatureFactory;
+
+    public LazySignatureFactory(SignatureFactory factory) {
+        Util.notNull(factory, "Signature factory");
+        if (factory.getClass().equals(this.getClass())) {
+            throw new IllegalArgumentException("Provided SignatureFactory may not be " + this.getClass().getSimpleName());
+        }
+        this.signatureFactory = factory;
+    }
+
+    @Override
+    public EnvelopeSignature create(DataHash hash) throws SignatureException {
+        return signatureFactory.create(hash);
+    }
+
+    @Override
+    public EnvelopeSignature read(InputStream input) throws SignatureException {
+        Util.notNull(input, "Input stream");
+        try {
+            return new LazySignature<>(com.guardtime.ksi.util.Util.toByteArray(input), signatureFactory);
+        } catch (IOException e) {
+            throw new SignatureException(e);
+        }
+    }
+
+    @Override
+    public void extend(EnvelopeSignature envelopeSignature, ExtendingPolicy extender) throws SignatureException {
+        if (envelopeSignature instanceof LazySignature) {
+            signatureFactory.extend(((LazySignature) envelopeSignature).getDecoded(), extender);
+        } else {
+            signatureFactory.extend(envelopeSignature, extender);
+        }
+    }
+
+    @Override
+    public SignatureFactoryType getSignatureFactoryType() {
+        return signatureFactory.getSignatureFactoryType();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only {@link SeekableByteChannel} over the remaining bytes of a {@link ByteBuffer}. Reads copy data directly from
+ * the buffer, the position and limit of the provided buffer are not changed.
+ * <p>
+ * NB! The content of the buffer must not be modified while the channel is in use.
+ * </p>
+ */
+public class ByteBufferChannel implements SeekableByteChannel {
+
+    private final ByteBuffer buffer;
+    private boolean open = true;
+
+    public ByteBufferChannel(ByteBuffer buffer) {
+        Util.notNull(buffer, "Buffer");
+        this.buffer = buffer.slice();
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer destination) throws IOException {
+        checkOpen();
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(buffer.remaining(), destination.remaining());
+        ByteBuffer source = buffer.duplicate();
+        source.limit(source.position() + count);
+        destination.put(source);
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        checkOpen();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        checkOpen();
+        return buffer.position();
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must not be negative");
+        }
+        buffer.position((int) Math.min(newPosition, buffer.limit()));
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        checkOpen();
+        return buffer.limit();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        checkOpen();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+    }
+
+    private synchronized void checkOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * {@link InputStream} over a region of a {@link SeekableByteChannel}. Does not modify or depend on the position of the
+ * channel between reads, so any number of these streams can be opened over the same channel.
+ * <p>
+ * NB! Closing the stream does not close the underlying channel.
+ * </p>
+ */
+public class ChannelInputStream extends InputStream {
+
+    private final SeekableByteChannel channel;
+    private final long end;
+    private long position;
+    private long mark;
+    private boolean closed = false;
+
+    /**
+     * @param channel the channel to read from.
+     * @param offset  the position in channel from where to start reading.
+     * @param length  the number of bytes that can be read from the stream.
+     */
+    public ChannelInputStream(SeekableByteChannel channel, long offset, long length) {
+        Util.notNull(channel, "Channel");
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Offset and length must not be negative");
+        }
+        this.channel = channel;
+        this.position = offset;
+        this.mark = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int count = read(single, 0, 1);
+        return count == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        long remaining = end - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, remaining));
+        int count = readAt(buffer, position);
+        if (count == -1) {
+            throw new IOException("Unexpected end of channel at position " + position);
+        }
+        position += count;
+        return count;
+    }
+
+    private int readAt(ByteBuffer buffer, long offset) throws IOException {
+        if (channel instanceof FileChannel) {
+            return ((FileChannel) channel).read(buffer, offset);
+        }
+        synchronized (channel) {
+            channel.position(offset);
+            return channel.read(buffer);
+        }
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        if (count <= 0) {
+            return 0;
+        }
+        long skipped = Math.min(count, end - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        this.mark = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.position = mark;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+    }
+
+}
@@ -94,13 +94,21 @@ public final class Util {
      *
      * @return The temporary file.
      * @throws IOException when the file can't be created.
+     * @deprecated Registers the file with {@link File#deleteOnExit()}, which keeps its path in memory until the program
+     * exits. Use {@link com.guardtime.envelope.packaging.parsing.store.TemporaryFileManager} instead.
      */
+    @Deprecated
     public static File createTempFile() throws IOException {
         File tempFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
         tempFile.deleteOnExit();
         return tempFile;
     }
 
+    /**
+     * @deprecated Registers the file with {@link File#deleteOnExit()}, which keeps its path in memory until the program
+     * exits. Use {@link com.guardtime.envelope.packaging.parsing.store.TemporaryFileManager} instead.
+     */
+    @Deprecated
     public static File createTempFile(Path directory) throws IOException {
         File file = Files.createTempFile(directory, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX).toFile();
         file.deleteOnExit();
@@ -113,12 +121,42 @@ public final class Util {
         }
     }
 
+    /**
+     * @deprecated Registers the directory with {@link File#deleteOnExit()}, which keeps its path in memory until the program
+     * exits. Use {@link com.guardtime.envelope.packaging.parsing.store.TemporaryFileManager} instead.
+     */
+    @Deprecated
     public static Path getTempDirectory() throws IOException {
         File tempDirectory = Files.createTempDirectory(TEMP_DIR_PREFIX).toFile();
         tempDirectory.deleteOnExit();
         return tempDirectory.toPath();
     }
 
+    /**
+     * Skips over data by reading it from the input stream, so that every skipped byte passes through its read methods.
+     *
+     * @param inputStream stream to skip data from.
+     * @param count number of bytes to skip.
+     *
+     * @return The number of bytes actually skipped, 0 when count is not positive.
+     * @throws IOException when reading from the stream fails.
+     */
+    public static long skipByReading(InputStream inputStream, long count) throws IOException {
+        if (count <= 0) {
+            return 0;
+        }
+        byte[] buffer = new byte[(int) Math.min(count, 8192)];
+        long skipped = 0;
+        while (skipped < count) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
     public static void deleteFileOrDirectory(Path path) throws IOException {
         if (path != null) {
             File[] contents = path.toFile().listFiles();
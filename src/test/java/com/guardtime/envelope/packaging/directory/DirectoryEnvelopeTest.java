@@ -0,0 +1,234 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.directory;
+
+import com.guardtime.envelope.AbstractEnvelopeTest;
+import com.guardtime.envelope.annotation.Annotation;
+import com.guardtime.envelope.document.Document;
+import com.guardtime.envelope.indexing.UuidIndexProviderFactory;
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.packaging.EnvelopePackagingFactory;
+import com.guardtime.envelope.packaging.SignatureContent;
+import com.guardtime.envelope.packaging.exception.InvalidEnvelopeException;
+import com.guardtime.envelope.packaging.parsing.ParsingLimits;
+import com.guardtime.envelope.signature.ksi.KsiSignatureFactory;
+import com.guardtime.ksi.KSI;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.unisignature.KSISignature;
+import com.guardtime.ksi.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Date;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DirectoryEnvelopeTest extends AbstractEnvelopeTest {
+
+    @Mock
+    private KSI mockKsi;
+
+    private EnvelopePackagingFactory packagingFactory;
+    private Path directory;
+
+    @Before
+    public void setUpPackagingFactory() throws Exception {
+        KSISignature mockKsiSignature = mock(KSISignature.class);
+        when(mockKsiSignature.getAggregationTime()).thenReturn(new Date());
+        when(mockKsi.sign(any(DataHash.class))).thenReturn(mockKsiSignature);
+        when(mockKsi.read(any(InputStream.class))).thenReturn(mockKsiSignature);
+        packagingFactory = new DirectoryEnvelopePackagingFactoryBuilder()
+                .withSignatureFactory(new KsiSignatureFactory(mockKsi, mockKsi))
+                .withParsingStore(parsingStore)
+                .withVerificationPolicy(null)
+                .withIndexProviderFactory(new UuidIndexProviderFactory())
+                .build();
+        directory = Files.createTempDirectory("envelope");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void testWriteAndReadDirectory_DocumentsMatch() throws Exception {
+        try (Envelope envelope = packagingFactory.create(singletonList(testDocumentHelloText),
+                singletonList(stringEnvelopeAnnotation))) {
+            new DirectoryEnvelopeWriter().write(envelope, directory);
+        }
+        assertArrayEquals(DirectoryEnvelopePackagingFactoryBuilder.MIME_TYPE.getBytes("UTF-8"),
+                Files.readAllBytes(directory.resolve("mimetype")));
+        assertArrayEquals(TEST_DATA_TXT_CONTENT, Files.readAllBytes(directory.resolve(TEST_FILE_NAME_TEST_TXT)));
+
+        try (Envelope envelope = packagingFactory.read(directory)) {
+            assertEquals(1, envelope.getSignatureContents().size());
+            SignatureContent content = envelope.getSignatureContents().get(0);
+            Document document = content.getDocuments().get(TEST_FILE_NAME_TEST_TXT);
+            try (InputStream input = document.getInputStream()) {
+                assertArrayEquals(TEST_DATA_TXT_CONTENT, Util.toByteArray(input));
+            }
+            assertEquals(1, content.getAnnotations().size());
+            assertTrue(envelope.getUnknownFiles().isEmpty());
+        }
+    }
+
+    @Test
+    public void testAddSignatureToDirectoryEnvelope_ExistingFilesNotRewritten() throws Exception {
+        try (Envelope envelope = packagingFactory.create(singletonList(testDocumentHelloText),
+                singletonList(stringEnvelopeAnnotation))) {
+            new DirectoryEnvelopeWriter().write(envelope, directory);
+        }
+        Path documentFile = directory.resolve(TEST_FILE_NAME_TEST_TXT);
+        FileTime time = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(documentFile, time);
+        int fileCount = countFiles();
+
+        try (Envelope envelope = packagingFactory.read(directory);
+             Envelope updated = packagingFactory.addSignature(envelope, singletonList(testDocumentHelloPdf),
+                     Collections.<Annotation>emptyList())) {
+            new DirectoryEnvelopeWriter().write(updated, directory);
+        }
+        assertEquals(time, Files.getLastModifiedTime(documentFile));
+        assertArrayEquals(TEST_DATA_PDF_CONTENT, Files.readAllBytes(directory.resolve(TEST_FILE_NAME_TEST_PDF)));
+        assertTrue(countFiles() > fileCount + 1);
+
+        try (Envelope envelope = packagingFactory.read(directory)) {
+            assertEquals(2, envelope.getSignatureContents().size());
+        }
+    }
+
+    @Test
+    public void testWriteDocumentOutsideDirectory_ThrowsIOException() throws Exception {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("is not located inside envelope directory!");
+        Document document = documentFactory.create(new ByteArrayInputStream(new byte[1]), "text/plain", "../escape.txt");
+        try (Envelope envelope = packagingFactory.create(singletonList(document), Collections.<Annotation>emptyList())) {
+            new DirectoryEnvelopeWriter().write(envelope, directory);
+        }
+    }
+
+    @Test
+    public void testWriteOverExistingFileWithDifferentContent_ThrowsIOException() throws Exception {
+        Files.write(directory.resolve(TEST_FILE_NAME_TEST_TXT), "other content".getBytes("UTF-8"));
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("already exists in directory with different content!");
+        try (Envelope envelope = packagingFactory.create(singletonList(testDocumentHelloText),
+                Collections.<Annotation>emptyList())) {
+            new DirectoryEnvelopeWriter().write(envelope, directory);
+        }
+    }
+
+    @Test
+    public void testRewriteReadDirectoryEnvelope_UnchangedSignatureNotRewritten() throws Exception {
+        try (Envelope envelope = packagingFactory.create(singletonList(testDocumentHelloText),
+                Collections.<Annotation>emptyList())) {
+            new DirectoryEnvelopeWriter().write(envelope, directory);
+        }
+        Path signatureFile;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.resolve("META-INF"), "signature-*")) {
+            signatureFile = files.iterator().next();
+        }
+        FileTime time = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(signatureFile, time);
+
+        try (Envelope envelope = packagingFactory.read(directory)) {
+            new DirectoryEnvelopeWriter().write(envelope, directory);
+        }
+        assertEquals(time, Files.getLastModifiedTime(signatureFile));
+    }
+
+    @Test
+    public void testReadDirectoryWithTemporaryFiles_TemporaryFilesSkipped() throws Exception {
+        try (Envelope envelope = packagingFactory.create(singletonList(testDocumentHelloText),
+                Collections.<Annotation>emptyList())) {
+            new DirectoryEnvelopeWriter().write(envelope, directory);
+        }
+        Files.write(directory.resolve("META-INF").resolve(".ksie123.tmp"), new byte[] {1, 2, 3});
+
+        try (Envelope envelope = packagingFactory.read(directory)) {
+            assertEquals(1, envelope.getSignatureContents().size());
+            assertTrue(envelope.getUnknownFiles().isEmpty());
+        }
+    }
+
+    @Test
+    public void testReadDirectoryExceedingEntrySize_ThrowsInvalidEnvelopeException() throws Exception {
+        try (Envelope envelope = packagingFactory.create(singletonList(testDocumentHelloText),
+                Collections.<Annotation>emptyList())) {
+            new DirectoryEnvelopeWriter().write(envelope, directory);
+        }
+        Files.write(directory.resolve("large.bin"), new byte[4096]);
+        EnvelopePackagingFactory limitedFactory = new DirectoryEnvelopePackagingFactoryBuilder()
+                .withSignatureFactory(new KsiSignatureFactory(mockKsi, mockKsi))
+                .withParsingStore(parsingStore)
+                .withVerificationPolicy(null)
+                .withParsingLimits(new ParsingLimits.Builder().withMaxEntrySize(1024).build())
+                .build();
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("Envelope exceeds parsing limits!");
+        limitedFactory.read(directory);
+    }
+
+    private int countFiles() throws IOException {
+        final int[] count = new int[1];
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                count[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return count[0];
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.indexed;
+
+import com.guardtime.envelope.AbstractEnvelopeTest;
+import com.guardtime.envelope.document.Document;
+import com.guardtime.envelope.packaging.Envelope;
+import com.guardtime.envelope.packaging.EnvelopePackagingFactory;
+import com.guardtime.envelope.packaging.exception.InvalidEnvelopeException;
+import com.guardtime.envelope.packaging.zip.ZipEnvelopePackagingFactoryBuilder;
+import com.guardtime.envelope.packaging.zip.ZipEnvelopeWriter;
+import com.guardtime.envelope.signature.SignatureFactory;
+import com.guardtime.envelope.signature.ksi.KsiSignatureFactory;
+import com.guardtime.envelope.signature.lazy.LazySignatureFactory;
+import com.guardtime.envelope.util.ByteBufferChannel;
+import com.guardtime.ksi.KSI;
+import com.guardtime.ksi.unisignature.KSISignature;
+import com.guardtime.ksi.util.Util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexedEnvelopeTest extends AbstractEnvelopeTest {
+
+    @Mock
+    private KSI mockKsi;
+
+    private EnvelopePackagingFactory zipFactory;
+    private EnvelopePackagingFactory indexedFactory;
+
+    @Before
+    public void setUpPackagingFactories() throws Exception {
+        KSISignature mockKsiSignature = mock(KSISignature.class);
+        when(mockKsiSignature.getAggregationTime()).thenReturn(new Date());
+        when(mockKsi.read(any(InputStream.class))).thenReturn(mockKsiSignature);
+        SignatureFactory signatureFactory = new LazySignatureFactory(new KsiSignatureFactory(mockKsi, mockKsi));
+        zipFactory = new ZipEnvelopePackagingFactoryBuilder()
+                .withSignatureFactory(signatureFactory)
+                .withParsingStore(parsingStore)
+                .withVerificationPolicy(null)
+                .build();
+        indexedFactory = new IndexedEnvelopePackagingFactoryBuilder()
+                .withSignatureFactory(signatureFactory)
+                .withParsingStore(parsingStore)
+                .withVerificationPolicy(null)
+                .build();
+    }
+
+    @Test
+    public void testRoundTripThroughIndexedContainer_ZipEntriesPreserved() throws Exception {
+        assertRoundTrip(ENVELOPE_WITH_MULTIPLE_ANNOTATIONS);
+        assertRoundTrip(ENVELOPE_WITH_MULTIPLE_SIGNATURES);
+    }
+
+    @Test
+    public void testReadIndexedContainerFromFile_DocumentContentMatches() throws Exception {
+        byte[] container = toIndexedContainer(ENVELOPE_WITH_ONE_DOCUMENT);
+        Path file = Files.createTempFile("envelope", ".ksie");
+        try {
+            Files.write(file, container);
+            try (Envelope envelope = indexedFactory.read(file);
+                 Envelope original = zipFactory.read(new FileInputStream(loadFile(ENVELOPE_WITH_ONE_DOCUMENT)))) {
+                Document document = envelope.getSignatureContents().get(0).getDocuments().get("test.txt");
+                Document originalDocument = original.getSignatureContents().get(0).getDocuments().get("test.txt");
+                try (InputStream input = document.getInputStream(); InputStream expected = originalDocument.getInputStream()) {
+                    assertArrayEquals(Util.toByteArray(expected), Util.toByteArray(input));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testReadModifiedEntryData_ThrowsIOException() throws Exception {
+        byte[] container = toIndexedContainer(ENVELOPE_WITH_ONE_DOCUMENT);
+        try (Envelope envelope = indexedFactory.read(ByteBuffer.wrap(container))) {
+            Document document = envelope.getSignatureContents().get(0).getDocuments().get("test.txt");
+            container[findEntryOffset(container, "test.txt")] ^= 1;
+            try (InputStream input = document.getInputStream()) {
+                Util.toByteArray(input);
+                fail("Modified entry data must not be accepted");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Invalid digest of container entry 'test.txt'"));
+            }
+        }
+    }
+
+    @Test
+    public void testReadContainerWithoutTrailer_ThrowsInvalidEnvelopeException() throws Exception {
+        expectedException.expect(InvalidEnvelopeException.class);
+        byte[] container = toIndexedContainer(ENVELOPE_WITH_ONE_DOCUMENT);
+        byte[] truncated = new byte[container.length - 1];
+        System.arraycopy(container, 0, truncated, 0, truncated.length);
+        indexedFactory.read(new ByteArrayInputStream(truncated));
+    }
+
+    @Test
+    public void testReadContainerWithOverflowingEntryLength_ThrowsIndexedContainerException() throws Exception {
+        byte[] container = toIndexedContainer(ENVELOPE_WITH_ONE_DOCUMENT);
+        ByteBuffer buffer = ByteBuffer.wrap(container);
+        long indexOffset = buffer.getLong(container.length - IndexedContainer.TRAILER_LENGTH);
+        buffer.putLong((int) indexOffset + 4 + 2 + IndexedContainer.MAX_NAME_LENGTH + 8, Long.MAX_VALUE);
+        expectedException.expect(IndexedContainerException.class);
+        expectedException.expectMessage("exceeds container bounds");
+        IndexedContainer.read(new ByteBufferChannel(ByteBuffer.wrap(container)));
+    }
+
+    private void assertRoundTrip(String path) throws Exception {
+        byte[] container = toIndexedContainer(path);
+        ByteArrayOutputStream zipOutput = new ByteArrayOutputStream();
+        try (Envelope envelope = indexedFactory.read(new ByteArrayInputStream(container))) {
+            new ZipEnvelopeWriter().write(envelope, zipOutput);
+        }
+        Map<String, byte[]> original = readZipEntries(new FileInputStream(loadFile(path)));
+        Map<String, byte[]> roundTripped = readZipEntries(new ByteArrayInputStream(zipOutput.toByteArray()));
+        assertEquals(original.keySet(), roundTripped.keySet());
+        for (Map.Entry<String, byte[]> entry : original.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), roundTripped.get(entry.getKey()));
+        }
+    }
+
+    private byte[] toIndexedContainer(String path) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (Envelope envelope = zipFactory.read(new FileInputStream(loadFile(path)))) {
+            new IndexedEnvelopeWriter().write(envelope, output);
+        }
+        return output.toByteArray();
+    }
+
+    private Map<String, byte[]> readZipEntries(InputStream input) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (ZipInputStream zipInput = new ZipInputStream(input)) {
+            ZipEntry entry;
+            while ((entry = zipInput.getNextEntry()) != null) {
+                entries.put(entry.getName(), Util.toByteArray(zipInput));
+            }
+        }
+        return entries;
+    }
+
+    private int findEntryOffset(byte[] container, String name) throws IOException {
+        IndexedContainer index = IndexedContainer.read(new ByteBufferChannel(ByteBuffer.wrap(container)));
+        return (int) index.getEntry(name).getOffset();
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedMemoryParsingStoreTest {
+
+    private final CompressedMemoryParsingStore store = new CompressedMemoryParsingStore();
+
+    @Test
+    public void testStoreTextContent_KeptCompressed() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("<annotation id=\"").append(i).append("\">some text</annotation>\n");
+        }
+        byte[] content = builder.toString().getBytes();
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "text");
+
+        assertEquals(content.length, store.getContentSize());
+        assertTrue(store.getStoredSize() < content.length / 5);
+        assertContent(content, reference);
+        reference.unstore();
+        assertEquals(0, store.getStoredSize());
+        assertEquals(0, store.getContentSize());
+    }
+
+    @Test
+    public void testStoreRandomContent_KeptAsIs() throws Exception {
+        byte[] content = new byte[10 * 1024];
+        new Random(42).nextBytes(content);
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "random");
+
+        assertEquals(content.length, store.getStoredSize());
+        assertContent(content, reference);
+        reference.unstore();
+    }
+
+    @Test
+    public void testStoreSmallContent_KeptAsIs() throws Exception {
+        byte[] content = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".getBytes();
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "small");
+
+        assertEquals(content.length, store.getStoredSize());
+        assertContent(content, reference);
+        reference.unstore();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+
+public class ConcurrentParsingStoreTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 1000;
+
+    private final CountingParsingStore store = new CountingParsingStore();
+
+    @Test
+    public void testCopyAndUnstoreReferencesConcurrently_ContentClearedOnceAfterLastReference() throws Exception {
+        final byte[] content = "someContent".getBytes();
+        final ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "somePath");
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            ParsingStoreReference copy = new ParsingStoreReference(reference);
+                            assertContent(content, copy);
+                            copy.unstore();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, store.clearCount.get());
+        assertEquals(1, store.getReferenceCount(reference.getUuid()));
+
+        reference.unstore();
+        assertEquals(1, store.clearCount.get());
+        assertEquals(0, store.getReferenceCount(reference.getUuid()));
+    }
+
+    @Test
+    public void testUnstoreSameReferenceTwice_OtherReferencesKeepContent() throws Exception {
+        byte[] content = "someContent".getBytes();
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "somePath");
+        ParsingStoreReference copy = new ParsingStoreReference(reference);
+
+        reference.unstore();
+        reference.unstore();
+        assertEquals(0, store.clearCount.get());
+        assertContent(content, copy);
+
+        copy.unstore();
+        assertEquals(1, store.clearCount.get());
+    }
+
+    private static class CountingParsingStore extends MemoryBasedParsingStore {
+        private final AtomicInteger clearCount = new AtomicInteger();
+
+        @Override
+        protected void clearStore(UUID uuid) {
+            clearCount.incrementAndGet();
+            super.clearStore(uuid);
+        }
+    }
+}
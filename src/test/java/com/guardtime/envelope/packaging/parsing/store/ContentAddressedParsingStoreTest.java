@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+
+public class ContentAddressedParsingStoreTest {
+
+    private final ContentAddressedParsingStore store = new ContentAddressedParsingStore(new MemoryBasedParsingStore());
+
+    @Test
+    public void testStoreIdenticalContent_KeptOnce() throws Exception {
+        byte[] content = "someContent".getBytes();
+        ParsingStoreReference first = store.store(new ByteArrayInputStream(content), "first");
+        ParsingStoreReference second = store.store(new ByteArrayInputStream(content), "second");
+        ParsingStoreReference other = store.store(new ByteArrayInputStream("otherContent".getBytes()), "other");
+
+        assertEquals(2, store.getUniqueContentCount());
+        assertContent(content, first);
+        assertContent(content, second);
+        first.unstore();
+        second.unstore();
+        other.unstore();
+        assertEquals(0, store.getUniqueContentCount());
+    }
+
+    @Test
+    public void testUnstoreOneOfIdenticalContents_OtherStillAvailable() throws Exception {
+        byte[] content = "someContent".getBytes();
+        ParsingStoreReference first = store.store(new ByteArrayInputStream(content), "first");
+        ParsingStoreReference second = store.store(new ByteArrayInputStream(content), "second");
+
+        first.unstore();
+        assertEquals(1, store.getUniqueContentCount());
+        assertContent(content, second);
+        second.unstore();
+        assertEquals(0, store.getUniqueContentCount());
+    }
+
+    @Test
+    public void testWriteIdenticalContentToSink_SharedWithStoredContent() throws Exception {
+        byte[] content = "someContent".getBytes();
+        ParsingStoreReference stored = store.store(new ByteArrayInputStream(content), "stored");
+        ParsingStoreSink sink = store.openSink("written", Collections.singletonList(HashAlgorithm.SHA2_256));
+        sink.write(ByteBuffer.wrap(content, 0, 4));
+        sink.write(ByteBuffer.wrap(content, 4, content.length - 4));
+        ParsingStoreReference written = sink.complete();
+
+        assertEquals(1, store.getUniqueContentCount());
+        assertContent(content, written);
+        stored.unstore();
+        written.unstore();
+        assertEquals(0, store.getUniqueContentCount());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.UUID;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class HybridParsingStoreTest {
+
+    private final HybridParsingStore store = new HybridParsingStore(10, 15);
+
+    @Test
+    public void testStoreSmallEntry_KeptInMemory() throws Exception {
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(new byte[10]), "small");
+        assertEquals(10, store.getMemoryUsed());
+        assertContent(new byte[10], reference);
+        reference.unstore();
+        assertEquals(0, store.getMemoryUsed());
+    }
+
+    @Test
+    public void testStoreLargeEntry_SpilledToDisk() throws Exception {
+        byte[] content = new byte[11];
+        content[10] = 1;
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "large");
+        assertEquals(0, store.getMemoryUsed());
+        assertContent(content, reference);
+        reference.unstore();
+    }
+
+    @Test
+    public void testStoreEntriesOverMemoryBudget_SpilledToDisk() throws Exception {
+        ParsingStoreReference first = store.store(new ByteArrayInputStream(new byte[10]), "first");
+        ParsingStoreReference second = store.store(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6}), "second");
+        assertEquals(10, store.getMemoryUsed());
+        assertContent(new byte[] {1, 2, 3, 4, 5, 6}, second);
+        first.unstore();
+        second.unstore();
+        assertEquals(0, store.getMemoryUsed());
+    }
+
+    @Test
+    public void testStoreEntryWithLargeExpectedSize_SpilledToDisk() throws Exception {
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(new byte[5]), "expected",
+                Collections.<HashAlgorithm>emptyList(), 100);
+        assertEquals(0, store.getMemoryUsed());
+        assertContent(new byte[5], reference);
+        reference.unstore();
+    }
+
+    @Test
+    public void testWriteSinkOverThreshold_SpilledToDisk() throws Exception {
+        ParsingStoreSink sink = store.openSink("sink", Collections.<HashAlgorithm>emptyList());
+        sink.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6}));
+        sink.write(ByteBuffer.wrap(new byte[] {7, 8, 9, 10, 11, 12}));
+        ParsingStoreReference reference = sink.complete();
+        assertEquals(0, store.getMemoryUsed());
+        assertContent(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}, reference);
+        reference.unstore();
+    }
+
+    @Test
+    public void testWriteSinkOverThresholdWithCustomDiskStore_SpilledWithExpectedSize() throws Exception {
+        ParsingStore diskStore = spy(new MemoryBasedParsingStore());
+        HybridParsingStore customStore = new HybridParsingStore(diskStore, 10, 15);
+        ParsingStoreSink sink = customStore.openSink("sink", Collections.<HashAlgorithm>emptyList(), 8);
+        sink.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6}));
+        sink.write(ByteBuffer.wrap(new byte[] {7, 8, 9, 10, 11, 12}));
+        ParsingStoreReference reference = sink.complete();
+        assertEquals(0, customStore.getMemoryUsed());
+        verify(diskStore).openContentWriter(any(UUID.class), eq(8L));
+        assertContent(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}, reference);
+        reference.unstore();
+        verify(diskStore).clearStore(any(UUID.class));
+    }
+
+}
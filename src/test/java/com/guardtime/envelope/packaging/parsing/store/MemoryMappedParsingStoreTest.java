@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MemoryMappedParsingStoreTest {
+
+    private final MemoryMappedParsingStore store = new MemoryMappedParsingStore();
+
+    @Test
+    public void testReadStoredContentRepeatedly_ContentMatches() throws Exception {
+        byte[] content = "some content".getBytes("UTF-8");
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "path");
+        for (int i = 0; i < 3; i++) {
+            assertContent(content, reference);
+        }
+        reference.unstore();
+    }
+
+    @Test
+    public void testReadContentStoredThroughSink_ContentMatches() throws Exception {
+        byte[] content = new byte[100000];
+        content[99999] = 1;
+        ParsingStoreSink sink = store.openSink("path", Collections.<HashAlgorithm>emptyList());
+        sink.write(ByteBuffer.wrap(content));
+        ParsingStoreReference reference = sink.complete();
+        assertContent(content, reference);
+        reference.unstore();
+    }
+
+    @Test
+    public void testReadUnstoredContent_ThrowsIllegalStateException() throws Exception {
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(new byte[] {1}), "path");
+        reference.getStoredContent().close();
+        reference.unstore();
+        try {
+            store.getContent(reference.getUuid());
+            fail("Unstored content must not be accessible");
+        } catch (IllegalStateException e) {
+            assertEquals("Parsing store has lost content for ID '" + reference.getUuid() + "'", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Random;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+
+public class OffHeapParsingStoreTest {
+
+    @Test
+    public void testStoreLargeEntry_ReadBackFromChunks() throws Exception {
+        OffHeapParsingStore store = new OffHeapParsingStore();
+        byte[] content = randomBytes(100 * 1024);
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "large");
+        assertContent(content, reference);
+        long allocated = store.getAllocatedMemory();
+
+        reference.unstore();
+        assertEquals(allocated, store.getAllocatedMemory());
+        ParsingStoreReference reused = store.store(new ByteArrayInputStream(content), "reused");
+        assertEquals(allocated, store.getAllocatedMemory());
+        assertContent(content, reused);
+        reused.unstore();
+    }
+
+    @Test
+    public void testStoreEmptyEntry_OK() throws Exception {
+        OffHeapParsingStore store = new OffHeapParsingStore();
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(new byte[0]), "empty");
+        assertContent(new byte[0], reference);
+        reference.unstore();
+    }
+
+    @Test
+    public void testWriteToSinkWithExpectedSize_OK() throws Exception {
+        OffHeapParsingStore store = new OffHeapParsingStore();
+        byte[] content = randomBytes(20 * 1024);
+        ParsingStoreSink sink = store.openSink("written", Collections.<HashAlgorithm>emptyList(), content.length);
+        sink.write(ByteBuffer.wrap(content, 0, 1000));
+        sink.write(ByteBuffer.wrap(content, 1000, content.length - 1000));
+        ParsingStoreReference reference = sink.complete();
+        assertContent(content, reference);
+        assertEquals(64 * 1024, store.getAllocatedMemory());
+        reference.unstore();
+    }
+
+    @Test(expected = ParsingStoreException.class)
+    public void testStoreOverCapacity_ThrowsParsingStoreException() throws Exception {
+        OffHeapParsingStore store = new OffHeapParsingStore(8 * 1024);
+        store.store(new ByteArrayInputStream(randomBytes(10 * 1024)), "large");
+    }
+
+    @Test
+    public void testStoreOverCapacity_ChunksReturnedToPool() throws Exception {
+        OffHeapParsingStore store = new OffHeapParsingStore(8 * 1024);
+        try {
+            store.store(new ByteArrayInputStream(randomBytes(10 * 1024)), "large");
+        } catch (ParsingStoreException ignore) {
+            // Expected
+        }
+        byte[] content = randomBytes(8 * 1024);
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "fits");
+        assertContent(content, reference);
+        reference.unstore();
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
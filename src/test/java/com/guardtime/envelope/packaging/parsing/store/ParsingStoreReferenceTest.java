@@ -1,15 +1,19 @@
 package com.guardtime.envelope.packaging.parsing.store;
 
 import com.guardtime.envelope.AbstractEnvelopeTest;
+import com.guardtime.ksi.hashing.DataHasher;
+import com.guardtime.ksi.hashing.HashAlgorithm;
 import com.guardtime.ksi.util.Util;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class ParsingStoreReferenceTest extends AbstractEnvelopeTest {
@@ -81,4 +85,21 @@ public class ParsingStoreReferenceTest extends AbstractEnvelopeTest {
         ParsingStoreReference reference = new ParsingStoreReference(UUID.randomUUID(), parsingStore, null);
         UUID.fromString(reference.getKey());
     }
+
+    @Test
+    public void testStoreWithHashAlgorithms_DataHashesCalculatedWhileStoring() throws Exception {
+        byte[] content = "someContent".getBytes();
+        ParsingStoreReference reference;
+        try (ByteArrayInputStream bis = new ByteArrayInputStream(content)) {
+            reference = parsingStore.store(bis, "somePath", Arrays.asList(HashAlgorithm.SHA2_256, HashAlgorithm.SHA2_512));
+        }
+        ParsingStoreReference copy = new ParsingStoreReference(reference);
+        assertEquals(new DataHasher(HashAlgorithm.SHA2_256).addData(content).getHash(),
+                copy.getDataHash(HashAlgorithm.SHA2_256));
+        assertEquals(new DataHasher(HashAlgorithm.SHA2_512).addData(content).getHash(),
+                copy.getDataHash(HashAlgorithm.SHA2_512));
+        assertNull(copy.getDataHash(HashAlgorithm.SHA2_384));
+        reference.unstore();
+        copy.unstore();
+    }
 }
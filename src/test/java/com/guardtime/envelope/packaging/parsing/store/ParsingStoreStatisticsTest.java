@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParsingStoreStatisticsTest {
+
+    private static final List<HashAlgorithm> NO_ALGORITHMS = Collections.emptyList();
+
+    private final MemoryBasedParsingStore store = new MemoryBasedParsingStore();
+
+    @Test
+    public void testStoreReadAndUnstore_Counted() throws Exception {
+        byte[] content = "someContent".getBytes();
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "first");
+        ParsingStoreReference copy = new ParsingStoreReference(reference);
+        ParsingStoreSink sink = store.openSink("second", NO_ALGORITHMS);
+        sink.write(ByteBuffer.wrap(content));
+        ParsingStoreReference written = sink.complete();
+        assertContent(content, copy);
+
+        ParsingStoreStatistics statistics = store.getStatistics();
+        assertEquals(2, statistics.getLiveEntries());
+        assertEquals(2 * content.length, statistics.getLiveBytes());
+        assertEquals(3, statistics.getLiveReferences());
+        assertEquals(2, statistics.getStoreCount());
+        assertEquals(1, statistics.getGetCount());
+        assertEquals(content.length, statistics.getBytesServed());
+
+        reference.unstore();
+        copy.unstore();
+        written.unstore();
+        statistics = store.getStatistics();
+        assertEquals(0, statistics.getLiveEntries());
+        assertEquals(0, statistics.getLiveBytes());
+        assertEquals(0, statistics.getLiveReferences());
+        assertEquals(2, statistics.getPeakEntries());
+        assertEquals(2 * content.length, statistics.getPeakBytes());
+        assertEquals(2, statistics.getClearCount());
+        assertEquals(2 * content.length, statistics.getBytesStored());
+    }
+
+    @Test
+    public void testStoreOverEntryQuota_ThrowsParsingStoreException() throws Exception {
+        store.setQuota(1, ParsingStore.NO_QUOTA);
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(new byte[10]), "first");
+        try {
+            store.store(new ByteArrayInputStream(new byte[10]), "second");
+            fail("Expected quota to be exceeded");
+        } catch (ParsingStoreException e) {
+            assertTrue(e.getMessage().contains("1 entries"));
+        }
+        assertEquals(1, store.getStatistics().getLiveEntries());
+
+        reference.unstore();
+        store.store(new ByteArrayInputStream(new byte[10]), "third");
+    }
+
+    @Test
+    public void testStoreOverByteQuota_ThrowsParsingStoreException() throws Exception {
+        store.setQuota(ParsingStore.NO_QUOTA, 100);
+        store.store(new ByteArrayInputStream(new byte[60]), "first");
+        try {
+            store.store(new ByteArrayInputStream(new byte[60]), "second");
+            fail("Expected quota to be exceeded");
+        } catch (ParsingStoreException e) {
+            assertTrue(e.getMessage().contains("100 bytes"));
+        }
+        try {
+            store.store(new ByteArrayInputStream(new byte[60]), "third", NO_ALGORITHMS, 60);
+            fail("Expected quota to be exceeded");
+        } catch (ParsingStoreException e) {
+            assertTrue(e.getMessage().contains("100 bytes"));
+        }
+        ParsingStoreStatistics statistics = store.getStatistics();
+        assertEquals(1, statistics.getLiveEntries());
+        assertEquals(60, statistics.getLiveBytes());
+    }
+
+    @Test
+    public void testOpenSinkWithMaximumExpectedSizeOverByteQuota_ThrowsParsingStoreException() throws Exception {
+        store.setQuota(ParsingStore.NO_QUOTA, 100);
+        store.store(new ByteArrayInputStream(new byte[60]), "first");
+        try {
+            store.openSink("sink", NO_ALGORITHMS, Long.MAX_VALUE);
+            fail("Expected quota to be exceeded");
+        } catch (ParsingStoreException e) {
+            assertTrue(e.getMessage().contains("100 bytes"));
+        }
+        assertEquals(1, store.getStatistics().getLiveEntries());
+    }
+
+    @Test
+    public void testWriteToSinkOverByteQuota_ThrowsParsingStoreException() throws Exception {
+        store.setQuota(ParsingStore.NO_QUOTA, 100);
+        ParsingStoreSink sink = store.openSink("sink", NO_ALGORITHMS);
+        sink.write(ByteBuffer.wrap(new byte[60]));
+        try {
+            sink.write(ByteBuffer.wrap(new byte[60]));
+            fail("Expected quota to be exceeded");
+        } catch (ParsingStoreException e) {
+            assertEquals(0, store.getStatistics().getLiveEntries());
+            assertEquals(0, store.getStatistics().getLiveBytes());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+
+public class SegmentFileParsingStoreTest {
+
+    private final SegmentFileParsingStore store = new SegmentFileParsingStore(100);
+
+    @Test
+    public void testStoreEntries_SharedSegmentsUsed() throws Exception {
+        List<ParsingStoreReference> references = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            references.add(store.store(new ByteArrayInputStream(content(i, 30)), "entry-" + i));
+        }
+        assertEquals(3, store.getSegmentCount());
+        for (int i = 0; i < 10; i++) {
+            assertContent(content(i, 30), references.get(i));
+        }
+    }
+
+    @Test
+    public void testStoreEntryLargerThanSegment_ContentMatches() throws Exception {
+        ParsingStoreReference small = store.store(new ByteArrayInputStream(content(1, 10)), "small");
+        ParsingStoreReference large = store.store(new ByteArrayInputStream(content(2, 250)), "large");
+        assertContent(content(1, 10), small);
+        assertContent(content(2, 250), large);
+    }
+
+    @Test
+    public void testUnstoreAllEntries_SegmentsReused() throws Exception {
+        List<ParsingStoreReference> references = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            references.add(store.store(new ByteArrayInputStream(content(i, 30)), "entry-" + i));
+        }
+        for (ParsingStoreReference reference : references) {
+            reference.unstore();
+        }
+        references.clear();
+        for (int i = 0; i < 10; i++) {
+            references.add(store.store(new ByteArrayInputStream(content(i + 10, 30)), "entry-" + i));
+        }
+        assertEquals(3, store.getSegmentCount());
+        for (int i = 0; i < 10; i++) {
+            assertContent(content(i + 10, 30), references.get(i));
+        }
+    }
+
+    @Test
+    public void testWriteSinkAndAbortSink_OnlyCompletedContentStored() throws Exception {
+        ParsingStoreSink aborted = store.openSink("aborted", Collections.<HashAlgorithm>emptyList());
+        aborted.write(ByteBuffer.wrap(content(1, 20)));
+        aborted.abort();
+        ParsingStoreSink sink = store.openSink("sink", Collections.<HashAlgorithm>emptyList());
+        sink.write(ByteBuffer.wrap(content(2, 20)));
+        sink.write(ByteBuffer.wrap(content(3, 20)));
+        ParsingStoreReference reference = sink.complete();
+        byte[] expected = new byte[40];
+        System.arraycopy(content(2, 20), 0, expected, 0, 20);
+        System.arraycopy(content(3, 20), 0, expected, 20, 20);
+        assertContent(expected, reference);
+        assertEquals(1, store.getSegmentCount());
+    }
+
+    private byte[] content(int seed, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.util.Util;
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TemporaryFileBasedParsingStoreTest {
+
+    private Path first;
+    private Path second;
+
+    @Before
+    public void setUp() throws IOException {
+        first = Files.createTempDirectory("first");
+        second = Files.createTempDirectory("second");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFileOrDirectory(first);
+        Util.deleteFileOrDirectory(second);
+    }
+
+    @Test
+    public void testStoreInWeightedDirectories_SpreadByWeight() throws Exception {
+        TemporaryFileBasedParsingStore store = new TemporaryFileBasedParsingStore(Arrays.asList(
+                new ParsingStoreDirectory(first, 1),
+                new ParsingStoreDirectory(second, 3)
+        ));
+        for (int i = 0; i < 8; i++) {
+            byte[] content = ("content-" + i).getBytes();
+            ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "entry-" + i);
+            assertContent(content, reference);
+        }
+        List<TemporaryFileManager> fileManagers = store.getFileManagers();
+        assertEquals(2, fileManagers.get(0).getFileCount());
+        assertEquals(6, fileManagers.get(1).getFileCount());
+        store.close();
+    }
+
+    @Test
+    public void testStoreWithExpectedSize_PlacedBySize() throws Exception {
+        TemporaryFileBasedParsingStore store = new TemporaryFileBasedParsingStore(Arrays.asList(
+                new ParsingStoreDirectory(first, 1, 100),
+                new ParsingStoreDirectory(second)
+        ));
+        List<HashAlgorithm> algorithms = Collections.emptyList();
+        store.store(new ByteArrayInputStream(new byte[10]), "small", algorithms, 10);
+        store.store(new ByteArrayInputStream(new byte[100]), "limit", algorithms, 100);
+        store.store(new ByteArrayInputStream(new byte[1000]), "large", algorithms, 1000);
+        store.store(new ByteArrayInputStream(new byte[10]), "unknown", algorithms, ParsingStore.UNKNOWN_SIZE);
+        ParsingStoreSink sink = store.openSink("sink", algorithms, 1000);
+        sink.write(ByteBuffer.wrap(new byte[1000]));
+        sink.complete();
+
+        List<TemporaryFileManager> fileManagers = store.getFileManagers();
+        assertEquals(2, fileManagers.get(0).getFileCount());
+        assertEquals(3, fileManagers.get(1).getFileCount());
+        store.close();
+    }
+
+    @Test
+    public void testStoreLargerThanExpectedSize_MovedToAcceptingDirectory() throws Exception {
+        TemporaryFileBasedParsingStore store = new TemporaryFileBasedParsingStore(Arrays.asList(
+                new ParsingStoreDirectory(first, 1, 100),
+                new ParsingStoreDirectory(second)
+        ));
+        byte[] content = new byte[10000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ParsingStoreReference reference =
+                store.store(new ByteArrayInputStream(content), "entry", Collections.<HashAlgorithm>emptyList(), 10);
+
+        List<TemporaryFileManager> fileManagers = store.getFileManagers();
+        assertEquals(0, fileManagers.get(0).getFileCount());
+        assertEquals(1, fileManagers.get(1).getFileCount());
+        assertContent(content, reference);
+        store.close();
+    }
+
+    @Test
+    public void testStoreOverMaxEntrySizeOfAllDirectories_ThrowsParsingStoreException() throws Exception {
+        TemporaryFileBasedParsingStore store = new TemporaryFileBasedParsingStore(Arrays.asList(
+                new ParsingStoreDirectory(first, 1, 100),
+                new ParsingStoreDirectory(second, 1, 200)
+        ));
+        try {
+            store.store(new ByteArrayInputStream(new byte[300]), "entry", Collections.<HashAlgorithm>emptyList(),
+                    ParsingStore.UNKNOWN_SIZE);
+            fail("Expected storing to fail");
+        } catch (ParsingStoreException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        List<TemporaryFileManager> fileManagers = store.getFileManagers();
+        assertEquals(0, fileManagers.get(0).getFileCount());
+        assertEquals(0, fileManagers.get(1).getFileCount());
+        store.close();
+    }
+}
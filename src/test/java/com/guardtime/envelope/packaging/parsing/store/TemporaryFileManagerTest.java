@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.envelope.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TemporaryFileManagerTest {
+
+    private Path baseDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDirectory = Files.createTempDirectory("store");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Util.deleteFileOrDirectory(baseDirectory);
+    }
+
+    @Test
+    public void testCreateAndDeleteFiles_Tracked() throws Exception {
+        TemporaryFileManager manager = new TemporaryFileManager(baseDirectory);
+        File first = manager.createTempFile();
+        File second = manager.createTempFile();
+        assertEquals(2, manager.getFileCount());
+
+        manager.delete(first);
+        assertFalse(first.exists());
+        assertEquals(1, manager.getFileCount());
+
+        Path directory = manager.getDirectory();
+        manager.close();
+        assertFalse(second.exists());
+        assertFalse(Files.exists(directory));
+        assertEquals(0, manager.getFileCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void testCreateFileAfterClose_ThrowsIOException() throws Exception {
+        TemporaryFileManager manager = new TemporaryFileManager(baseDirectory);
+        manager.close();
+        manager.createTempFile();
+    }
+
+    @Test
+    public void testSweepOrphans_OnlyUnusedDirectoriesRemoved() throws Exception {
+        TemporaryFileManager manager = new TemporaryFileManager(baseDirectory);
+        Path live = manager.getDirectory();
+        Path closed = Files.createDirectory(baseDirectory.resolve(Util.TEMP_DIR_PREFIX + "closed"));
+        Files.createFile(closed.resolve(TemporaryFileManager.LOCK_FILE_NAME));
+        Path fresh = Files.createDirectory(baseDirectory.resolve(Util.TEMP_DIR_PREFIX + "fresh"));
+        Path stale = Files.createDirectory(baseDirectory.resolve(Util.TEMP_DIR_PREFIX + "stale"));
+        Files.createFile(stale.resolve(Util.TEMP_FILE_PREFIX + "1" + Util.TEMP_FILE_SUFFIX));
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+        Path other = Files.createDirectory(baseDirectory.resolve("other"));
+        Files.setLastModifiedTime(other, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+
+        assertEquals(2, TemporaryFileManager.sweepOrphans(baseDirectory));
+        assertTrue(Files.exists(live));
+        assertFalse(Files.exists(closed));
+        assertTrue(Files.exists(fresh));
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(other));
+        manager.close();
+    }
+
+    @Test
+    public void testCloseTemporaryFileBasedParsingStore_FilesDeleted() throws Exception {
+        TemporaryFileBasedParsingStore store = new TemporaryFileBasedParsingStore(baseDirectory);
+        store.store(new ByteArrayInputStream("someContent".getBytes()), "somePath");
+        store.store(new ByteArrayInputStream("otherContent".getBytes()), "otherPath");
+        Path directory = store.getFileManagers().get(0).getDirectory();
+        assertEquals(2, store.getFileManagers().get(0).getFileCount());
+
+        store.close();
+        assertFalse(Files.exists(directory));
+        assertEquals(0, store.getFileManagers().get(0).getFileCount());
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.packaging.parsing.store;
+
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static com.guardtime.envelope.packaging.parsing.store.ParsingStoreTestUtil.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindParsingStoreTest {
+
+    private final QueueingExecutor executor = new QueueingExecutor();
+    private final TemporaryFileBasedParsingStore backingStore = new TemporaryFileBasedParsingStore();
+    private final WriteBehindParsingStore store = new WriteBehindParsingStore(backingStore, 100, executor);
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void testStore_ServedFromBufferUntilWritten() throws Exception {
+        byte[] content = "someContent".getBytes();
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream(content), "somePath");
+
+        assertEquals(content.length, store.getBufferUsed());
+        assertNull(backingStore.getFile(reference.getUuid()));
+        assertContent(content, reference);
+
+        executor.runAll();
+        assertEquals(0, store.getBufferUsed());
+        assertNotNull(backingStore.getFile(reference.getUuid()));
+        assertContent(content, reference);
+
+        reference.unstore();
+        assertNull(backingStore.getFile(reference.getUuid()));
+    }
+
+    @Test
+    public void testUnstoreBeforeWritten_NotWritten() throws Exception {
+        ParsingStoreReference reference = store.store(new ByteArrayInputStream("someContent".getBytes()), "somePath");
+        reference.unstore();
+        assertEquals(0, store.getBufferUsed());
+
+        executor.runAll();
+        assertNull(backingStore.getFile(reference.getUuid()));
+        assertEquals(0, backingStore.getFileManagers().get(0).getFileCount());
+    }
+
+    @Test
+    public void testStoreOverBufferCapacity_WrittenDirectly() throws Exception {
+        byte[] first = new byte[60];
+        byte[] second = new byte[60];
+        ParsingStoreReference buffered = store.store(new ByteArrayInputStream(first), "first");
+        ParsingStoreReference direct = store.store(new ByteArrayInputStream(second), "second");
+        ParsingStoreReference large = store.store(new ByteArrayInputStream(new byte[200]), "large");
+
+        assertEquals(first.length, store.getBufferUsed());
+        assertNull(backingStore.getFile(buffered.getUuid()));
+        assertNotNull(backingStore.getFile(direct.getUuid()));
+        assertNotNull(backingStore.getFile(large.getUuid()));
+        assertContent(second, direct);
+    }
+
+    @Test
+    public void testWriteToSink_WrittenBehind() throws Exception {
+        byte[] content = "someContent".getBytes();
+        ParsingStoreSink sink = store.openSink("somePath", Collections.<HashAlgorithm>emptyList(), content.length);
+        sink.write(ByteBuffer.wrap(content));
+        ParsingStoreReference reference = sink.complete();
+
+        assertEquals(content.length, store.getBufferUsed());
+        executor.runAll();
+        assertNotNull(backingStore.getFile(reference.getUuid()));
+        assertContent(content, reference);
+    }
+
+    @Test
+    public void testWriteToSinkOfUnknownSizeOverBufferCapacity_WrittenDirectly() throws Exception {
+        byte[] content = new byte[150];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ParsingStoreSink sink = store.openSink("somePath", Collections.<HashAlgorithm>emptyList(), -1);
+        sink.write(ByteBuffer.wrap(content, 0, 80));
+        assertEquals(80, store.getBufferUsed());
+        sink.write(ByteBuffer.wrap(content, 80, 70));
+        assertEquals(0, store.getBufferUsed());
+        ParsingStoreReference reference = sink.complete();
+
+        assertEquals(0, store.getBufferUsed());
+        assertNotNull(backingStore.getFile(reference.getUuid()));
+        assertContent(content, reference);
+    }
+
+    @Test
+    public void testOpenSinksWithLargeDeclaredSize_BufferStaysBounded() throws Exception {
+        List<ParsingStoreSink> sinks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sinks.add(store.openSink("entry-" + i, Collections.<HashAlgorithm>emptyList(), 90));
+            assertEquals(90, store.getBufferUsed());
+        }
+        List<ParsingStoreReference> references = new ArrayList<>();
+        for (ParsingStoreSink sink : sinks) {
+            sink.write(ByteBuffer.wrap(new byte[90]));
+            references.add(sink.complete());
+        }
+        assertEquals(90, store.getBufferUsed());
+        assertNull(backingStore.getFile(references.get(0).getUuid()));
+        for (ParsingStoreReference reference : references.subList(1, references.size())) {
+            assertNotNull(backingStore.getFile(reference.getUuid()));
+        }
+    }
+
+    @Test
+    public void testWriteToSinkOverDeclaredSize_BufferGrowsWithinCapacity() throws Exception {
+        byte[] content = new byte[95];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ParsingStoreSink sink = store.openSink("somePath", Collections.<HashAlgorithm>emptyList(), 10);
+        sink.write(ByteBuffer.wrap(content, 0, 10));
+        assertEquals(10, store.getBufferUsed());
+        sink.write(ByteBuffer.wrap(content, 10, 85));
+        assertTrue(store.getBufferUsed() <= 100);
+        ParsingStoreReference reference = sink.complete();
+
+        assertNull(backingStore.getFile(reference.getUuid()));
+        assertContent(content, reference);
+        executor.runAll();
+        assertEquals(0, store.getBufferUsed());
+        assertContent(content, reference);
+    }
+
+    @Test
+    public void testAbortSink_BufferReleased() throws Exception {
+        ParsingStoreSink sink = store.openSink("somePath", Collections.<HashAlgorithm>emptyList(), -1);
+        sink.write(ByteBuffer.wrap(new byte[50]));
+        assertEquals(50, store.getBufferUsed());
+        sink.abort();
+        assertEquals(0, store.getBufferUsed());
+    }
+
+    private static class QueueingExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            Runnable task = tasks.poll();
+            while (task != null) {
+                task.run();
+                task = tasks.poll();
+            }
+        }
+    }
+}
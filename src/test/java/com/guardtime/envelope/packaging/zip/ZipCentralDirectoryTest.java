@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+package com.guardtime.envelope.packaging.zip;
+
+import com.guardtime.envelope.util.ByteBufferChannel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ZipCentralDirectoryTest {
+
+    private static final long MAGIC = 0xFFFFFFFFL;
+    private static final byte[] NAME = {'a'};
+    private static final byte[] DATA = {1, 2, 3};
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void testReadZip64Archive_EntryValuesRead() throws Exception {
+        ZipCentralDirectory directory = read(craft(zip64Extra(24, DATA.length, DATA.length, 0), true, 1, -1, -1));
+        assertEquals(1, directory.getEntries().size());
+        ZipCentralDirectory.Entry entry = directory.getEntries().get(0);
+        assertEquals(DATA.length, entry.getSize());
+        assertEquals(DATA.length, entry.getCompressedSize());
+        assertEquals(0, entry.getLocalHeaderOffset());
+    }
+
+    @Test
+    public void testReadNegativeZip64EntrySize_ThrowsZipException() throws Exception {
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Invalid size or offset of ZIP entry 'a'");
+        read(craft(zip64Extra(24, -1, DATA.length, 0), false, 1, -1, -1));
+    }
+
+    @Test
+    public void testReadNegativeZip64CompressedSize_ThrowsZipException() throws Exception {
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Invalid size or offset of ZIP entry 'a'");
+        read(craft(zip64Extra(24, DATA.length, Long.MIN_VALUE, 0), false, 1, -1, -1));
+    }
+
+    @Test
+    public void testReadOverflowingZip64CompressedSize_ThrowsZipException() throws Exception {
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("ZIP entry 'a' exceeds archive bounds");
+        read(craft(zip64Extra(24, DATA.length, Long.MAX_VALUE - 10, 0), false, 1, -1, -1));
+    }
+
+    @Test
+    public void testReadZip64ExtraFieldShorterThanValues_ThrowsZipException() throws Exception {
+        ByteBuffer extra = ByteBuffer.allocate(4 + 8 + 4 + 16).order(ByteOrder.LITTLE_ENDIAN);
+        extra.putShort((short) 1).putShort((short) 8).putLong(DATA.length);
+        extra.putShort((short) 0x7875).putShort((short) 16).putLong(DATA.length).putLong(0);
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Truncated ZIP64 extra field");
+        read(craft(extra.array(), false, 1, -1, -1));
+    }
+
+    @Test
+    public void testReadExtraFieldExceedingExtraData_ThrowsZipException() throws Exception {
+        byte[] extra = zip64Extra(24, DATA.length, DATA.length, 0);
+        extra[2] = 32;
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Invalid ZIP extra field length");
+        read(craft(extra, false, 1, -1, -1));
+    }
+
+    @Test
+    public void testReadNegativeZip64DirectorySize_ThrowsZipException() throws Exception {
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Invalid ZIP central directory location");
+        read(craft(zip64Extra(24, DATA.length, DATA.length, 0), true, 1, -100, -1));
+    }
+
+    @Test
+    public void testReadOverflowingZip64DirectoryLocation_ThrowsZipException() throws Exception {
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Invalid ZIP central directory location");
+        read(craft(zip64Extra(24, DATA.length, DATA.length, 0), true, 1, -1, Long.MAX_VALUE - 10));
+    }
+
+    @Test
+    public void testReadNegativeZip64EntryCount_ThrowsZipException() throws Exception {
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Invalid ZIP central directory location");
+        read(craft(zip64Extra(24, DATA.length, DATA.length, 0), true, -1, -1, -1));
+    }
+
+    private static ZipCentralDirectory read(byte[] archive) throws Exception {
+        return ZipCentralDirectory.read(new ByteBufferChannel(ByteBuffer.wrap(archive)));
+    }
+
+    static byte[] zip64Extra(int length, long size, long compressedSize, long localHeaderOffset) {
+        return ByteBuffer.allocate(4 + length).order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) 1).putShort((short) length)
+                .putLong(size).putLong(compressedSize).putLong(localHeaderOffset)
+                .array();
+    }
+
+    /**
+     * Crafts an archive with a single stored entry 'a' whose sizes and offset are all taken from the central directory
+     * extra field.
+     *
+     * @param zip64Record     whether ZIP64 end of central directory record is added.
+     * @param entryCount      entry count of ZIP64 end of central directory record.
+     * @param directorySize   directory size of ZIP64 end of central directory record, -1 for actual size.
+     * @param directoryOffset directory offset of ZIP64 end of central directory record, -1 for actual offset.
+     */
+    static byte[] craft(byte[] centralExtra, boolean zip64Record, long entryCount, long directorySize, long directoryOffset) {
+        int localLength = 30 + NAME.length + DATA.length;
+        int centralLength = 46 + NAME.length + centralExtra.length;
+        int zip64Length = zip64Record ? 56 + 20 : 0;
+        ByteBuffer archive = ByteBuffer.allocate(localLength + centralLength + zip64Length + 22).order(ByteOrder.LITTLE_ENDIAN);
+
+        archive.putInt(0x04034b50).putShort((short) 20).putShort((short) 0).putShort((short) 0).putInt(0).putInt(0)
+                .putInt(DATA.length).putInt(DATA.length).putShort((short) NAME.length).putShort((short) 0)
+                .put(NAME).put(DATA);
+
+        archive.putInt(0x02014b50).putShort((short) 45).putShort((short) 45).putShort((short) 0).putShort((short) 0)
+                .putInt(0).putInt(0).putInt((int) MAGIC).putInt((int) MAGIC).putShort((short) NAME.length)
+                .putShort((short) centralExtra.length).putShort((short) 0).putShort((short) 0).putShort((short) 0)
+                .putInt(0).putInt((int) MAGIC).put(NAME).put(centralExtra);
+
+        if (zip64Record) {
+            int recordOffset = archive.position();
+            archive.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                    .putLong(entryCount).putLong(entryCount)
+                    .putLong(directorySize == -1 ? centralLength : directorySize)
+                    .putLong(directoryOffset == -1 ? localLength : directoryOffset);
+            archive.putInt(0x07064b50).putInt(0).putLong(recordOffset).putInt(1);
+        }
+
+        archive.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) 1).putShort((short) 1)
+                .putInt(centralLength).putInt(localLength).putShort((short) 0);
+        return archive.array();
+    }
+}
@@ -20,8 +20,11 @@
 package com.guardtime.envelope.packaging.zip;
 
 import com.guardtime.envelope.AbstractEnvelopeTest;
+import com.guardtime.envelope.EnvelopeElement;
+import com.guardtime.envelope.annotation.Annotation;
 import com.guardtime.envelope.document.Document;
 import com.guardtime.envelope.document.EmptyDocument;
+import com.guardtime.envelope.hash.HashAlgorithmProvider;
 import com.guardtime.envelope.manifest.AnnotationsManifest;
 import com.guardtime.envelope.manifest.EnvelopeManifestFactory;
 import com.guardtime.envelope.manifest.tlv.TlvEnvelopeManifestFactory;
@@ -29,31 +32,76 @@ import com.guardtime.envelope.packaging.Envelope;
 import com.guardtime.envelope.packaging.SignatureContent;
 import com.guardtime.envelope.packaging.exception.EnvelopeReadingException;
 import com.guardtime.envelope.packaging.exception.InvalidEnvelopeException;
+import com.guardtime.envelope.packaging.parsing.EnvelopePushParser;
+import com.guardtime.envelope.packaging.parsing.EnvelopeReadListener;
+import com.guardtime.envelope.packaging.parsing.EnvelopeSummary;
+import com.guardtime.envelope.packaging.parsing.ParsingLimits;
+import com.guardtime.envelope.packaging.parsing.store.MemoryBasedParsingStore;
+import com.guardtime.envelope.packaging.parsing.store.ParsingStore;
 import com.guardtime.envelope.packaging.parsing.store.TemporaryFileBasedParsingStore;
 import com.guardtime.envelope.signature.SignatureException;
 import com.guardtime.envelope.signature.SignatureFactory;
 import com.guardtime.envelope.signature.ksi.KsiSignatureFactory;
 import com.guardtime.ksi.KSI;
 import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.DataHasher;
+import com.guardtime.ksi.hashing.HashAlgorithm;
 import com.guardtime.ksi.unisignature.KSISignature;
+import com.guardtime.ksi.util.Util;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ZipEnvelopeReaderTest extends AbstractEnvelopeTest {
@@ -193,6 +241,48 @@ public class ZipEnvelopeReaderTest extends AbstractEnvelopeTest {
         }
     }
 
+    @Test
+    public void testReadEnvelope_DataHashesCalculatedWhileStoring() throws Exception {
+        final AtomicInteger contentRequests = new AtomicInteger();
+        ParsingStore countingStore = new MemoryBasedParsingStore() {
+            @Override
+            public InputStream getContent(UUID uuid) {
+                contentRequests.incrementAndGet();
+                return super.getContent(uuid);
+            }
+        };
+        TlvEnvelopeManifestFactory manifestFactory = new TlvEnvelopeManifestFactory();
+        HashAlgorithmProvider algorithmProvider = manifestFactory.getHashAlgorithmProvider();
+        ZipEnvelopeReader countingReader =
+                new ZipEnvelopeReader(manifestFactory, new KsiSignatureFactory(mockKsi, mockKsi), countingStore);
+        try (InputStream input = new FileInputStream(loadFile(ENVELOPE_WITH_MULTIPLE_ANNOTATIONS));
+             Envelope readEnvelope = countingReader.read(input)) {
+            for (SignatureContent content : readEnvelope.getSignatureContents()) {
+                assertFalse(content.getDocuments().isEmpty());
+                assertFalse(content.getAnnotations().isEmpty());
+                for (Document document : content.getDocuments().values()) {
+                    for (HashAlgorithm algorithm : algorithmProvider.getDocumentReferenceHashAlgorithms()) {
+                        assertStoredDataHash(document, algorithm, contentRequests);
+                    }
+                }
+                for (Annotation annotation : content.getAnnotations().values()) {
+                    assertStoredDataHash(annotation, algorithmProvider.getAnnotationDataReferenceHashAlgorithm(),
+                            contentRequests);
+                }
+            }
+        }
+    }
+
+    private void assertStoredDataHash(EnvelopeElement element, HashAlgorithm algorithm, AtomicInteger contentRequests)
+            throws Exception {
+        int requests = contentRequests.get();
+        DataHash dataHash = element.getDataHash(algorithm);
+        assertEquals(requests, contentRequests.get());
+        try (InputStream input = element.getInputStream()) {
+            assertEquals(new DataHasher(algorithm).addData(Util.toByteArray(input)).getHash(), dataHash);
+        }
+    }
+
     @Test
     public void testReadEnvelopeFileWithInvalidAnnotationType() throws Exception {
         setUpEnvelope(ENVELOPE_WITH_INVALID_ANNOTATION_TYPE, true);
@@ -277,4 +367,610 @@ public class ZipEnvelopeReaderTest extends AbstractEnvelopeTest {
         assertExceptionsContainMessage("No content stored for entry 'META-INF/annotmanifest-2.tlv'!");
     }
 
+    @Test
+    public void testReadEnvelopeFromChannel_ContentMatchesStreamReading() throws Exception {
+        setUpEnvelope(ENVELOPE_WITH_MULTIPLE_ANNOTATIONS, true);
+        try (SeekableByteChannel channel = Files.newByteChannel(loadFile(ENVELOPE_WITH_MULTIPLE_ANNOTATIONS).toPath());
+             Envelope channelEnvelope = reader.read(channel)) {
+            assertEquals(envelope.getSignatureContents().size(), channelEnvelope.getSignatureContents().size());
+            for (int i = 0; i < envelope.getSignatureContents().size(); i++) {
+                SignatureContent expected = envelope.getSignatureContents().get(i);
+                SignatureContent actual = channelEnvelope.getSignatureContents().get(i);
+                assertEquals(expected.getAnnotations().keySet(), actual.getAnnotations().keySet());
+                assertEquals(expected.getDocuments().keySet(), actual.getDocuments().keySet());
+                for (String name : expected.getDocuments().keySet()) {
+                    try (InputStream expectedStream = expected.getDocuments().get(name).getInputStream();
+                         InputStream actualStream = actual.getDocuments().get(name).getInputStream()) {
+                        assertArrayEquals(Util.toByteArray(expectedStream), Util.toByteArray(actualStream));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadEnvelopeFromChannel_ChannelClosedWithEnvelope() throws Exception {
+        SeekableByteChannel channel = Files.newByteChannel(loadFile(ENVELOPE_WITH_ONE_DOCUMENT).toPath());
+        Envelope channelEnvelope = reader.read(channel);
+        assertTrue(channel.isOpen());
+        channelEnvelope.close();
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testReadEmptyEnvelopeFromChannel_ThrowsInvalidPackageException() throws Exception {
+        SeekableByteChannel channel = Files.newByteChannel(loadFile(EMPTY_ENVELOPE).toPath());
+        try {
+            expectedException.expect(InvalidEnvelopeException.class);
+            expectedException.expectMessage("No parsable MIME type");
+            reader.read(channel);
+        } finally {
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    @Test
+    public void testReadWithListener_ProvidesEachSignatureContentOnce() throws Exception {
+        final List<SignatureContent> provided = new ArrayList<>();
+        try (InputStream input = new FileInputStream(loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES))) {
+            this.envelope = reader.read(input, new EnvelopeReadListener() {
+                @Override
+                public void onSignatureContent(SignatureContent signatureContent) {
+                    provided.add(signatureContent);
+                }
+            });
+        }
+        assertEquals(2, provided.size());
+        assertEquals(envelope.getSignatureContents().size(), provided.size());
+        for (SignatureContent content : envelope.getSignatureContents()) {
+            assertTrue(provided.remove(content));
+        }
+    }
+
+    @Test
+    public void testReadWithListener_SignatureContentProvidedBeforeEndOfStream() throws Exception {
+        byte[] reordered = reorderEntries(ENVELOPE_WITH_MULTIPLE_SIGNATURES, "mimetype", "META-INF/signature-2.ksi");
+        final AtomicBoolean endReached = new AtomicBoolean(false);
+        final List<Boolean> endReachedWhenProvided = new ArrayList<>();
+        InputStream input = new FilterInputStream(new ByteArrayInputStream(reordered)) {
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int count = super.read(bytes, offset, length);
+                if (count == -1 || available() == 0) {
+                    endReached.set(true);
+                }
+                return count;
+            }
+        };
+        this.envelope = reader.read(input, new EnvelopeReadListener() {
+            @Override
+            public void onSignatureContent(SignatureContent signatureContent) {
+                endReachedWhenProvided.add(endReached.get());
+            }
+        });
+        assertEquals(2, endReachedWhenProvided.size());
+        assertFalse(endReachedWhenProvided.get(0));
+    }
+
+    /**
+     * Rewrites ZIP file so that first entry name is first and last entry name last, keeping the order of others.
+     */
+    private byte[] reorderEntries(String path, String first, String last) throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zipInput = new ZipInputStream(new FileInputStream(loadFile(path)))) {
+            ZipEntry entry;
+            while ((entry = zipInput.getNextEntry()) != null) {
+                entries.put(entry.getName(), Util.toByteArray(zipInput));
+            }
+        }
+        List<String> names = new ArrayList<>(entries.keySet());
+        names.remove(first);
+        names.remove(last);
+        names.add(0, first);
+        names.add(last);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutput = new ZipOutputStream(bos)) {
+            for (String name : names) {
+                zipOutput.putNextEntry(new ZipEntry(name));
+                zipOutput.write(entries.get(name));
+                zipOutput.closeEntry();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testReadWithPushParserInSmallChunks_ContentMatchesStreamReading() throws Exception {
+        setUpEnvelope(ENVELOPE_WITH_MULTIPLE_ANNOTATIONS, true);
+        byte[] bytes = Files.readAllBytes(loadFile(ENVELOPE_WITH_MULTIPLE_ANNOTATIONS).toPath());
+        EnvelopePushParser parser = reader.createPushParser();
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            int length = Math.min(7, bytes.length - offset);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(length);
+            chunk.put(bytes, offset, length).flip();
+            parser.feed(chunk);
+            assertFalse(chunk.hasRemaining());
+        }
+        try (Envelope pushedEnvelope = parser.finish()) {
+            assertEquals(envelope.getSignatureContents().size(), pushedEnvelope.getSignatureContents().size());
+            for (SignatureContent content : envelope.getSignatureContents()) {
+                assertTrue(pushedEnvelope.getSignatureContents().contains(content));
+            }
+        }
+    }
+
+    @Test
+    public void testFinishPushParserWithTruncatedData_ThrowsZipException() throws Exception {
+        byte[] bytes = Files.readAllBytes(loadFile(ENVELOPE_WITH_ONE_DOCUMENT).toPath());
+        EnvelopePushParser parser = reader.createPushParser();
+        parser.feed(ByteBuffer.wrap(bytes, 0, 100));
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Unexpected end of ZIP data");
+        parser.finish();
+    }
+
+    @Test
+    public void testReadWithSignatureContentExecutor_ContentMatchesSequentialReading() throws Exception {
+        setUpEnvelope(ENVELOPE_WITH_MULTIPLE_SIGNATURES, true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ZipEnvelopeReader concurrentReader = new ZipEnvelopeReader(
+                    new TlvEnvelopeManifestFactory(),
+                    new KsiSignatureFactory(mockKsi, mockKsi),
+                    new TemporaryFileBasedParsingStore(),
+                    executor
+            );
+            try (InputStream input = new FileInputStream(loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES));
+                 Envelope concurrentEnvelope = concurrentReader.read(input)) {
+                assertEquals(envelope.getSignatureContents().size(), concurrentEnvelope.getSignatureContents().size());
+                for (SignatureContent content : envelope.getSignatureContents()) {
+                    assertTrue(concurrentEnvelope.getSignatureContents().contains(content));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadInvalidEnvelopeWithSignatureContentExecutor_ProducesMultipleExceptions() throws Exception {
+        when(mockKsi.read(any(InputStream.class))).thenThrow(SignatureException.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            this.reader = new ZipEnvelopeReader(
+                    new TlvEnvelopeManifestFactory(),
+                    new KsiSignatureFactory(mockKsi, mockKsi),
+                    new TemporaryFileBasedParsingStore(),
+                    executor
+            );
+            setUpEnvelope(ENVELOPE_WITH_BROKEN_SIGNATURE_CONTENT, false);
+            assertExceptionsContainMessage("Failed to parse content of stream as EnvelopeSignature.");
+            assertExceptionsContainMessage("No content stored for entry 'META-INF/annotmanifest-2.tlv'!");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadWithFailingSignatureContentExecutor_ComposedContentsClosed() throws Exception {
+        KSISignature mockKsiSignature = mock(KSISignature.class);
+        when(mockKsiSignature.getAggregationTime()).thenReturn(mock(Date.class));
+        when(mockKsi.read(any(InputStream.class)))
+                .thenReturn(mockKsiSignature)
+                .thenThrow(new IllegalStateException("Signature reading failed"));
+        Executor inlineExecutor = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                task.run();
+            }
+        };
+        ParsingStore store = new MemoryBasedParsingStore();
+        ZipEnvelopeReader concurrentReader = new ZipEnvelopeReader(
+                new TlvEnvelopeManifestFactory(),
+                new KsiSignatureFactory(mockKsi, mockKsi),
+                store,
+                inlineExecutor
+        );
+        try (InputStream input = new FileInputStream(loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES))) {
+            concurrentReader.read(input);
+            fail("Expected composing a SignatureContent to fail");
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+        assertEquals(0, store.getStatistics().getLiveReferences());
+    }
+
+    @Test
+    public void testInspectEnvelope_DataEntriesNotStored() throws Exception {
+        setUpEnvelope(ENVELOPE_WITH_MULTIPLE_ANNOTATIONS, true);
+        ParsingStore spyStore = spy(new MemoryBasedParsingStore());
+        ZipEnvelopeReader inspectingReader =
+                new ZipEnvelopeReader(new TlvEnvelopeManifestFactory(), new KsiSignatureFactory(mockKsi, mockKsi), spyStore);
+        EnvelopeSummary summary;
+        try (InputStream input = new FileInputStream(loadFile(ENVELOPE_WITH_MULTIPLE_ANNOTATIONS))) {
+            summary = inspectingReader.inspect(input);
+        }
+        assertTrue(summary.getExceptions().isEmpty());
+        assertEquals(envelope.getSignatureContents().size(), summary.getSignatureContents().size());
+        EnvelopeSummary.SignatureContentSummary contentSummary = summary.getSignatureContents().get(0);
+        SignatureContent content = envelope.getSignatureContents().get(0);
+        assertEquals(content.getDocuments().size(), contentSummary.getDocumentReferences().size());
+        assertEquals(content.getAnnotations().size(), contentSummary.getAnnotationDomains().size());
+        assertNotNull(contentSummary.getSignature());
+
+        ArgumentCaptor<String> storedNames = ArgumentCaptor.forClass(String.class);
+        verify(spyStore, atLeastOnce())
+                .store(any(InputStream.class), storedNames.capture(), anyCollectionOf(HashAlgorithm.class), anyLong());
+        for (String name : storedNames.getAllValues()) {
+            assertTrue(name.equals("mimetype") || (name.startsWith("META-INF/") && !name.endsWith(".dat")));
+        }
+    }
+
+    @Test
+    public void testInspectEnvelopeWithMissingSingleAnnotationManifest_ExceptionReported() throws Exception {
+        EnvelopeSummary summary;
+        try (InputStream input = new FileInputStream(loadFile(ENVELOPE_WITH_MISSING_ANNOTATION))) {
+            summary = reader.inspect(input);
+        }
+        assertEquals(1, summary.getSignatureContents().size());
+        assertTrue(summary.getSignatureContents().get(0).getSingleAnnotationManifests().isEmpty());
+        assertFalse(summary.getExceptions().isEmpty());
+    }
+
+    @Test
+    public void testInspectEnvelopeFromChannel_ChannelClosed() throws Exception {
+        SeekableByteChannel channel = Files.newByteChannel(loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES).toPath());
+        EnvelopeSummary summary = reader.inspect(channel);
+        assertFalse(channel.isOpen());
+        assertEquals(2, summary.getSignatureContents().size());
+        for (EnvelopeSummary.SignatureContentSummary contentSummary : summary.getSignatureContents()) {
+            assertNotNull(contentSummary.getManifest());
+            assertNotNull(contentSummary.getDocumentsManifest());
+        }
+    }
+
+    @Test
+    public void testExtractDocumentFromChannel_ContentMatchesAndChannelClosed() throws Exception {
+        byte[] expected;
+        try (ZipFile zipFile = new ZipFile(loadFile(ENVELOPE_WITH_ONE_DOCUMENT))) {
+            expected = Util.toByteArray(zipFile.getInputStream(zipFile.getEntry("test.txt")));
+        }
+        SeekableByteChannel channel = Files.newByteChannel(loadFile(ENVELOPE_WITH_ONE_DOCUMENT).toPath());
+        try (InputStream input = reader.extractDocument(channel, "test.txt", true)) {
+            assertArrayEquals(expected, Util.toByteArray(input));
+            assertTrue(channel.isOpen());
+        }
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testSkipNonPositiveCountInExtractedDocument_NothingSkipped() throws Exception {
+        byte[] expected;
+        try (ZipFile zipFile = new ZipFile(loadFile(ENVELOPE_WITH_ONE_DOCUMENT))) {
+            expected = Util.toByteArray(zipFile.getInputStream(zipFile.getEntry("test.txt")));
+        }
+        SeekableByteChannel channel = Files.newByteChannel(loadFile(ENVELOPE_WITH_ONE_DOCUMENT).toPath());
+        try (InputStream input = reader.extractDocument(channel, "test.txt", true)) {
+            assertEquals(0, input.skip(-1));
+            assertEquals(0, input.skip(0));
+            assertArrayEquals(expected, Util.toByteArray(input));
+        }
+    }
+
+    @Test
+    public void testExtractChangedDocumentWithHashVerification_ThrowsIOException() throws Exception {
+        SeekableByteChannel channel = Files.newByteChannel(loadFile(ENVELOPE_WITH_CHANGED_DOCUMENT).toPath());
+        try (InputStream input = reader.extractDocument(channel, "test.txt", true)) {
+            expectedException.expect(IOException.class);
+            expectedException.expectMessage("Content of document 'test.txt' does not match its hash in documents manifest!");
+            Util.toByteArray(input);
+        }
+    }
+
+    @Test
+    public void testExtractNotReferencedDocument_ThrowsInvalidEnvelopeException() throws Exception {
+        SeekableByteChannel channel = Files.newByteChannel(loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES).toPath());
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("No document 'someRandomness' referenced in envelope!");
+        try {
+            reader.extractDocument(channel, "someRandomness", false);
+        } finally {
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    @Test
+    public void testPreValidateValidEnvelopes() throws Exception {
+        try (SeekableByteChannel channel = Files.newByteChannel(loadFile(ENVELOPE_WITH_ONE_DOCUMENT).toPath())) {
+            reader.preValidate(channel);
+            assertTrue(channel.isOpen());
+        }
+        preValidate(reorderEntries(ENVELOPE_WITH_MULTIPLE_SIGNATURES, "mimetype", "test.txt"));
+    }
+
+    @Test
+    public void testPreValidateEnvelopeWithMissingMimeType_ThrowsInvalidEnvelopeException() throws Exception {
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("Parsed Envelope has invalid MIME type. Can't process it!");
+        preValidate(Files.readAllBytes(loadFile(ENVELOPE_WITH_MISSING_MIMETYPE).toPath()));
+    }
+
+    @Test
+    public void testPreValidateEnvelopeWithMissingManifest_ThrowsInvalidEnvelopeException() throws Exception {
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("No manifest found in envelope!");
+        preValidate(Files.readAllBytes(loadFile(ENVELOPE_WITH_MISSING_MANIFEST).toPath()));
+    }
+
+    @Test
+    public void testPreValidateEnvelopeWithMissingSignature_ThrowsInvalidEnvelopeException() throws Exception {
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("refers to missing entry 'META-INF/signature-1.ksi'");
+        preValidate(Files.readAllBytes(loadFile(ENVELOPE_WITH_MISSING_SIGNATURE).toPath()));
+    }
+
+    @Test
+    public void testPreValidateEnvelopeWithMissingAnnotationsManifest_ThrowsInvalidEnvelopeException() throws Exception {
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("refers to missing entry 'META-INF/annotmanifest-1.tlv'");
+        preValidate(Files.readAllBytes(loadFile(ENVELOPE_WITH_MISSING_ANNOTATIONS_MANIFEST).toPath()));
+    }
+
+    @Test
+    public void testPreValidateEnvelopeWithMissingSingleAnnotationManifest_ThrowsInvalidEnvelopeException() throws Exception {
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("Manifest 'META-INF/annotmanifest-1.tlv' refers to missing entry");
+        preValidate(reorderEntries(ENVELOPE_WITH_MISSING_ANNOTATION, "mimetype", "META-INF/signature-1.ksi"));
+    }
+
+    @Test
+    public void testPreValidateEnvelopeWithMimeTypeNotFirst_ThrowsInvalidEnvelopeException() throws Exception {
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("MIME type is not the first entry of the envelope!");
+        preValidate(reorderEntries(ENVELOPE_WITH_ONE_DOCUMENT, "META-INF/manifest-1.tlv", "mimetype"));
+    }
+
+    @Test
+    public void testPreValidateTruncatedEnvelope_ThrowsInvalidEnvelopeException() throws Exception {
+        byte[] bytes = Files.readAllBytes(loadFile(ENVELOPE_WITH_ONE_DOCUMENT).toPath());
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("Envelope is not a readable ZIP archive!");
+        preValidate(Arrays.copyOf(bytes, bytes.length - 10));
+    }
+
+    @Test
+    public void testPreValidateEnvelopeWithNegativeZip64Size_ThrowsInvalidEnvelopeException() throws Exception {
+        byte[] extra = ZipCentralDirectoryTest.zip64Extra(24, 3, Long.MIN_VALUE, 0);
+        byte[] archive = ZipCentralDirectoryTest.craft(extra, true, 1, -1, -1);
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("Envelope is not a readable ZIP archive!");
+        preValidate(archive);
+    }
+
+    @Test
+    public void testPreValidateEnvelopeWithNegativeZip64DirectorySize_ThrowsInvalidEnvelopeException() throws Exception {
+        byte[] archive = ZipCentralDirectoryTest.craft(ZipCentralDirectoryTest.zip64Extra(24, 3, 3, 0), true, 1, -100, -1);
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("Envelope is not a readable ZIP archive!");
+        preValidate(archive);
+    }
+
+    private void preValidate(byte[] bytes) throws Exception {
+        Path file = Files.createTempFile("envelope", ".ksie");
+        try {
+            Files.write(file, bytes);
+            try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+                reader.preValidate(channel);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testReadEnvelopeExceedingEntryCount_ThrowsInvalidEnvelopeException() throws Exception {
+        ZipEnvelopeReader limitedReader = createLimitedReader(new ParsingLimits.Builder().withMaxEntryCount(3).build());
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("Envelope exceeds parsing limits!");
+        try (InputStream input = new FileInputStream(loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES))) {
+            limitedReader.read(input);
+        }
+    }
+
+    @Test
+    public void testPushParseEnvelopeExceedingEntrySize_ThrowsInvalidEnvelopeException() throws Exception {
+        ZipEnvelopeReader limitedReader = createLimitedReader(new ParsingLimits.Builder().withMaxEntrySize(100).build());
+        EnvelopePushParser parser = limitedReader.createPushParser();
+        parser.feed(ByteBuffer.wrap(Files.readAllBytes(loadFile(ENVELOPE_WITH_ONE_DOCUMENT).toPath())));
+        expectedException.expect(InvalidEnvelopeException.class);
+        expectedException.expectMessage("Envelope exceeds parsing limits!");
+        parser.finish();
+    }
+
+    @Test
+    public void testReadEnvelopeExceedingCompressionRatio_ThrowsInvalidEnvelopeException() throws Exception {
+        ZipEnvelopeReader limitedReader = createLimitedReader(new ParsingLimits.Builder().withMaxCompressionRatio(50).build());
+        try {
+            limitedReader.read(new ByteArrayInputStream(createHighlyCompressedArchive()));
+        } catch (InvalidEnvelopeException e) {
+            assertEquals("Envelope exceeds parsing limits!", e.getMessage());
+            assertTrue(e.getCause().getMessage().startsWith("Envelope exceeds maximum compression ratio"));
+            return;
+        }
+        fail("Expected InvalidEnvelopeException");
+    }
+
+    @Test
+    public void testReadEnvelopeFromChannelExceedingCompressionRatio_ThrowsInvalidEnvelopeException() throws Exception {
+        ZipEnvelopeReader limitedReader = createLimitedReader(new ParsingLimits.Builder().withMaxCompressionRatio(50).build());
+        Path file = Files.createTempFile("envelope", ".ksie");
+        try {
+            Files.write(file, createHighlyCompressedArchive());
+            try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+                limitedReader.read(channel);
+            }
+        } catch (InvalidEnvelopeException e) {
+            assertEquals("Envelope exceeds parsing limits!", e.getMessage());
+            assertTrue(e.getCause().getMessage().startsWith("Envelope exceeds maximum compression ratio"));
+            return;
+        } finally {
+            Files.delete(file);
+        }
+        fail("Expected InvalidEnvelopeException");
+    }
+
+    @Test
+    public void testReadEnvelopeFromChannelExceedingEntrySize_ThrowsInvalidEnvelopeException() throws Exception {
+        ZipEnvelopeReader limitedReader = createLimitedReader(new ParsingLimits.Builder().withMaxEntrySize(1024).build());
+        Path file = Files.createTempFile("envelope", ".ksie");
+        try {
+            Files.write(file, createHighlyCompressedArchive());
+            try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+                limitedReader.read(channel);
+            }
+        } catch (InvalidEnvelopeException e) {
+            assertEquals("Envelope exceeds parsing limits!", e.getMessage());
+            assertTrue(e.getCause().getMessage().startsWith("Entry 'zeros.bin' exceeds maximum size"));
+            return;
+        } finally {
+            Files.delete(file);
+        }
+        fail("Expected InvalidEnvelopeException");
+    }
+
+    private byte[] createHighlyCompressedArchive() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutput = new ZipOutputStream(bos)) {
+            zipOutput.putNextEntry(new ZipEntry("mimetype"));
+            zipOutput.write(ZipEnvelopePackagingFactoryBuilder.MIME_TYPE.getBytes("UTF-8"));
+            zipOutput.putNextEntry(new ZipEntry("zeros.bin"));
+            zipOutput.write(new byte[4 * 1024 * 1024]);
+        }
+        return bos.toByteArray();
+    }
+
+    private ZipEnvelopeReader createLimitedReader(ParsingLimits limits) {
+        return new ZipEnvelopeReader(
+                new TlvEnvelopeManifestFactory(),
+                new KsiSignatureFactory(mockKsi, mockKsi),
+                new TemporaryFileBasedParsingStore(),
+                null,
+                limits
+        );
+    }
+
+    @Test
+    public void testReadEnvelopeFromBuffer_ContentMatchesStreamReading() throws Exception {
+        setUpEnvelope(ENVELOPE_WITH_MULTIPLE_SIGNATURES, true);
+        byte[] bytes = Files.readAllBytes(loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES).toPath());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 10);
+        buffer.position(10);
+        buffer.put(bytes);
+        buffer.position(10);
+        try (Envelope bufferedEnvelope = reader.read(buffer)) {
+            assertEquals(10, buffer.position());
+            assertEquals(envelope.getSignatureContents().size(), bufferedEnvelope.getSignatureContents().size());
+            for (SignatureContent content : envelope.getSignatureContents()) {
+                assertTrue(bufferedEnvelope.getSignatureContents().contains(content));
+            }
+        }
+    }
+
+    @Test
+    public void testReadEnvelopeFromBuffer_StoredEntriesNotCopied() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipInputStream zipInput = new ZipInputStream(new FileInputStream(loadFile(ENVELOPE_WITH_ONE_DOCUMENT)));
+             ZipOutputStream zipOutput = new ZipOutputStream(bos)) {
+            ZipEntry entry;
+            while ((entry = zipInput.getNextEntry()) != null) {
+                byte[] content = Util.toByteArray(zipInput);
+                ZipEntry copy = new ZipEntry(entry.getName());
+                if (entry.getName().equals("test.txt")) {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    copy.setMethod(ZipEntry.STORED);
+                    copy.setSize(content.length);
+                    copy.setCrc(crc.getValue());
+                }
+                zipOutput.putNextEntry(copy);
+                zipOutput.write(content);
+            }
+        }
+        ParsingStore spyStore = spy(new MemoryBasedParsingStore());
+        ZipEnvelopeReader bufferReader =
+                new ZipEnvelopeReader(new TlvEnvelopeManifestFactory(), new KsiSignatureFactory(mockKsi, mockKsi), spyStore);
+        try (Envelope bufferedEnvelope = bufferReader.read(ByteBuffer.wrap(bos.toByteArray()))) {
+            Document document = bufferedEnvelope.getSignatureContents().get(0).getDocuments().get("test.txt");
+            assertNotNull(document);
+            try (InputStream input = document.getInputStream()) {
+                assertTrue(Util.toByteArray(input).length > 0);
+            }
+        }
+        verify(spyStore, never()).store(any(InputStream.class), eq("test.txt"), anyCollectionOf(HashAlgorithm.class), anyLong());
+    }
+
+    @Test
+    public void testReadEnvelopeFromFileWithEntryInflationExecutor_AllEntriesStoredConcurrently() throws Exception {
+        setUpEnvelope(ENVELOPE_WITH_MULTIPLE_SIGNATURES, true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ParsingStore spyStore = spy(new TemporaryFileBasedParsingStore());
+            ZipEnvelopeReader concurrentReader = new ZipEnvelopeReader(
+                    new TlvEnvelopeManifestFactory(),
+                    new KsiSignatureFactory(mockKsi, mockKsi),
+                    spyStore,
+                    null,
+                    ParsingLimits.UNLIMITED,
+                    executor
+            );
+            Path path = loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES).toPath();
+            try (Envelope concurrentEnvelope = concurrentReader.read(Files.newByteChannel(path))) {
+                assertEquals(envelope.getSignatureContents().size(), concurrentEnvelope.getSignatureContents().size());
+                for (SignatureContent content : envelope.getSignatureContents()) {
+                    assertTrue(concurrentEnvelope.getSignatureContents().contains(content));
+                }
+            }
+            try (ZipFile zipFile = new ZipFile(path.toFile())) {
+                verify(spyStore, atLeast(zipFile.size()))
+                        .store(any(InputStream.class), any(String.class), anyCollectionOf(HashAlgorithm.class), anyLong());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadEnvelopeWithRejectingEntryInflationExecutor_QueuedEntriesNotStored() throws Exception {
+        final List<Runnable> queued = new ArrayList<>();
+        Executor rejectingExecutor = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                if (!queued.isEmpty()) {
+                    throw new RejectedExecutionException("Queue is full");
+                }
+                queued.add(task);
+            }
+        };
+        ParsingStore store = new MemoryBasedParsingStore();
+        ZipEnvelopeReader concurrentReader = new ZipEnvelopeReader(
+                new TlvEnvelopeManifestFactory(),
+                new KsiSignatureFactory(mockKsi, mockKsi),
+                store,
+                null,
+                ParsingLimits.UNLIMITED,
+                rejectingExecutor
+        );
+        Path path = loadFile(ENVELOPE_WITH_MULTIPLE_SIGNATURES).toPath();
+        try {
+            concurrentReader.read(Files.newByteChannel(path));
+            fail("Expected the executor to reject entries");
+        } catch (RejectedExecutionException expected) {
+            // Expected
+        }
+        for (Runnable task : queued) {
+            task.run();
+        }
+        assertEquals(0, store.getStatistics().getStoreCount());
+    }
+
 }
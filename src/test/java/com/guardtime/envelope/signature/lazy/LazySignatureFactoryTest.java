@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013-2018 Guardtime, Inc.
+ *
+ * This file is part of the Guardtime client SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES, CONDITIONS, OR OTHER LICENSES OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * "Guardtime" and "KSI" are trademarks or registered trademarks of
+ * Guardtime, Inc., and no license to trademarks is granted; Guardtime
+ * reserves and retains all trademark rights.
+ */
+
+package com.guardtime.envelope.signature.lazy;
+
+import com.guardtime.envelope.AbstractEnvelopeTest;
+import com.guardtime.envelope.extending.ExtendingPolicy;
+import com.guardtime.envelope.signature.EnvelopeSignature;
+import com.guardtime.envelope.signature.SignatureException;
+import com.guardtime.ksi.hashing.DataHash;
+import com.guardtime.ksi.hashing.HashAlgorithm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LazySignatureFactoryTest extends AbstractEnvelopeTest {
+
+    private static final byte[] SIGNATURE_BYTES = new byte[] {1, 2, 3, 4, 5};
+    private static final DataHash DATA_HASH = new DataHash(HashAlgorithm.SHA2_256, new byte[HashAlgorithm.SHA2_256.getLength()]);
+
+    @Test
+    public void testCreateLazyFactoryWithLazyFactory() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Provided SignatureFactory may not be LazySignatureFactory");
+        new LazySignatureFactory(new LazySignatureFactory(mockedSignatureFactory));
+    }
+
+    @Test
+    public void testWritingUndecodedSignature_OriginalBytesWritten() throws Exception {
+        LazySignatureFactory factory = new LazySignatureFactory(mockedSignatureFactory);
+        EnvelopeSignature signature = factory.read(new ByteArrayInputStream(SIGNATURE_BYTES));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        signature.writeTo(output);
+        assertArrayEquals(SIGNATURE_BYTES, output.toByteArray());
+        signature.getCopy().writeTo(output);
+        verify(mockedSignatureFactory, never()).read(any(InputStream.class));
+    }
+
+    @Test
+    public void testGettingSignedDataHash_DecodesOnce() throws Exception {
+        EnvelopeSignature decoded = mockDecodedSignature();
+        LazySignatureFactory factory = new LazySignatureFactory(mockedSignatureFactory);
+        EnvelopeSignature signature = factory.read(new ByteArrayInputStream(SIGNATURE_BYTES));
+        assertEquals(DATA_HASH, signature.getSignedDataHash());
+        assertEquals(DATA_HASH, signature.getSignedDataHash());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        signature.writeTo(output);
+        assertArrayEquals(SIGNATURE_BYTES, output.toByteArray());
+        verify(mockedSignatureFactory, times(1)).read(any(InputStream.class));
+        verify(decoded, never()).writeTo(output);
+    }
+
+    @Test
+    public void testExtending_DecodedSignatureExtendedAndWritten() throws Exception {
+        EnvelopeSignature decoded = mockDecodedSignature();
+        LazySignatureFactory factory = new LazySignatureFactory(mockedSignatureFactory);
+        EnvelopeSignature signature = factory.read(new ByteArrayInputStream(SIGNATURE_BYTES));
+        ExtendingPolicy policy = mock(ExtendingPolicy.class);
+        factory.extend(signature, policy);
+        verify(mockedSignatureFactory, times(1)).extend(decoded, policy);
+
+        when(decoded.getSignature()).thenReturn(new Object());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        signature.writeTo(output);
+        verify(decoded, times(1)).writeTo(output);
+    }
+
+    @Test
+    public void testDecodingInvalidSignature_ThrowsIllegalStateException() throws Exception {
+        when(mockedSignatureFactory.read(any(InputStream.class))).thenThrow(new SignatureException("Invalid signature"));
+        LazySignatureFactory factory = new LazySignatureFactory(mockedSignatureFactory);
+        EnvelopeSignature signature = factory.read(new ByteArrayInputStream(SIGNATURE_BYTES));
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("Failed to decode signature!");
+        signature.getSignature();
+    }
+
+    @Test
+    public void testSignatureFactoryType_FromProvidedFactory() {
+        assertSame(mockedSignatureFactoryType, new LazySignatureFactory(mockedSignatureFactory).getSignatureFactoryType());
+    }
+
+    private EnvelopeSignature mockDecodedSignature() throws SignatureException {
+        EnvelopeSignature decoded = mock(EnvelopeSignature.class);
+        when(decoded.getSignedDataHash()).thenReturn(DATA_HASH);
+        when(decoded.getSignature()).thenReturn(new Object());
+        when(mockedSignatureFactory.read(any(InputStream.class))).thenReturn(decoded);
+        return decoded;
+    }
+
+}